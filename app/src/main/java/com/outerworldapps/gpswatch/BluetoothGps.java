@@ -0,0 +1,277 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+import android.location.Location;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+
+/**
+ * Use an external Bluetooth GPS receiver that sends NMEA 0183 over the serial port profile.
+ * Reading and parsing happen on a separate thread, the latest fix and satellite status
+ * are handed to the ingest thread, coalescing any that arrive faster than the ingest thread runs.
+ * Each reader thread has its own socket and parser, and stopSensor () waits for the thread
+ * to finish, so a quick stop and start never has two threads sharing either.
+ */
+public class BluetoothGps implements LocationSource, NmeaParser.Listener {
+    private final static UUID SPP_UUID = UUID.fromString ("00001101-0000-1000-8000-00805F9B34FB");
+    private final static int RETRYMS = 5000;
+
+    private boolean fixPosted;
+    private boolean satsPosted;
+    private BluetoothSocket socket;      // current reader thread's socket, so stopSensor () can close it
+    private Handler ingestHandler;
+    private LocationSource.Listener statusListener;
+    private Location pendingFix;
+    private MainActivity mainActivity;
+    private SatSnapshot pendingSats = new SatSnapshot (64);
+    private SatSnapshot uiSats      = new SatSnapshot (64);
+    private String address;
+    private volatile Thread readerThread;
+
+    /**
+     * @param ma = activity
+     * @param ingest = handler of thread the listener is called on
+     * @param address = Bluetooth MAC address of paired receiver
+     */
+    public BluetoothGps (MainActivity ma, Handler ingest, String address)
+    {
+        mainActivity = ma;
+        ingestHandler = ingest;
+        this.address = address;
+    }
+
+    @Override  // LocationSource
+    public boolean startSensor ()
+    {
+        BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter ();
+        if ((adapter == null) || ! adapter.isEnabled ()) {
+            mainActivity.showToastLong ("bluetooth not enabled");
+            return false;
+        }
+        if (readerThread == null) {
+            readerThread = new Thread ("BluetoothGps") {
+                @Override
+                public void run ()
+                {
+                    readerLoop (this);
+                }
+            };
+            readerThread.start ();
+        }
+        return true;
+    }
+
+    @Override  // LocationSource
+    public void stopSensor ()
+    {
+        Thread t = readerThread;
+        BluetoothSocket s;
+        synchronized (this) {
+            readerThread = null;
+            s = socket;
+            socket = null;
+        }
+        if (t != null) {
+            // closing the socket breaks the thread out of connect () or read ()
+            t.interrupt ();
+            closeQuietly (s);
+            boolean interrupted = false;
+            while (t.isAlive ()) {
+                try {
+                    t.join ();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread ().interrupt ();
+        }
+        ingestHandler.post (deliverStopped);
+    }
+
+    @Override  // LocationSource
+    public void setStatusListener (final LocationSource.Listener listener)
+    {
+        ingestHandler.post (new Runnable () {
+            @Override
+            public void run ()
+            {
+                statusListener = listener;
+            }
+        });
+    }
+
+    @Override  // LocationSource
+    public boolean suppliesSensors ()
+    {
+        return false;
+    }
+
+    @Override  // LocationSource
+    public void setAmbient (boolean ambient)
+    { }
+
+    @Override  // LocationSource
+    public void setScreenOn (boolean on)
+    { }
+
+    /**
+     * Connect to receiver and read from it until stopped, reconnecting on errors.
+     * Each connection gets a fresh parser so nothing carries over from a broken stream.
+     */
+    private void readerLoop (Thread me)
+    {
+        byte[] buf = new byte[4096];
+        while (readerThread == me) {
+            BluetoothSocket s = null;
+            try {
+                BluetoothDevice device = BluetoothAdapter.getDefaultAdapter ().getRemoteDevice (address);
+                s = device.createRfcommSocketToServiceRecord (SPP_UUID);
+                synchronized (this) {
+                    if (readerThread != me) break;
+                    socket = s;
+                }
+                s.connect ();
+                NmeaParser parser = new NmeaParser (this);
+                InputStream is = s.getInputStream ();
+                for (int rc; (rc = is.read (buf)) > 0;) {
+                    parser.feed (buf, 0, rc);
+                }
+                throw new IOException ("end of stream");
+            } catch (Exception e) {
+                if (readerThread != me) break;
+                Log.w (MainActivity.TAG, "bluetooth gps " + address + " error", e);
+                releaseSocket (s);
+                try {
+                    Thread.sleep (RETRYMS);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            } finally {
+                releaseSocket (s);
+            }
+        }
+    }
+
+    /**
+     * Close a reader thread's own socket, forgetting it if it is still the current one.
+     */
+    private void releaseSocket (BluetoothSocket s)
+    {
+        synchronized (this) {
+            if (socket == s) socket = null;
+        }
+        closeQuietly (s);
+    }
+
+    private static void closeQuietly (BluetoothSocket s)
+    {
+        if (s != null) {
+            try { s.close (); } catch (IOException ignored) { }
+        }
+    }
+
+    /**
+     * Parser got a fix (reader thread), pass it to the ingest thread.
+     */
+    @Override  // NmeaParser.Listener
+    public void onNmeaFix (NmeaParser p)
+    {
+        Location loc = new Location ("bluetooth");
+        loc.setTime (p.fixTime);
+        loc.setElapsedRealtimeNanos (SystemClock.elapsedRealtimeNanos ());
+        loc.setLatitude (p.fixLat);
+        loc.setLongitude (p.fixLon);
+        // Location altitude is above the WGS84 ellipsoid, not MSL
+        if (! Float.isNaN (p.fixAlt))    loc.setAltitude (p.fixAlt);
+        if (! Float.isNaN (p.fixSpeed))  loc.setSpeed (p.fixSpeed);
+        if (! Float.isNaN (p.fixCourse)) loc.setBearing (p.fixCourse);
+        // rough accuracy estimate from HDOP, assuming 5m user range error
+        if (! Float.isNaN (p.fixHdop))   loc.setAccuracy (p.fixHdop * 5.0F);
+        synchronized (this) {
+            pendingFix = loc;
+            if (fixPosted) return;
+            fixPosted = true;
+        }
+        ingestHandler.post (deliverFix);
+    }
+
+    /**
+     * Parser got satellite status (reader thread), pass it to the ingest thread.
+     */
+    @Override  // NmeaParser.Listener
+    public void onNmeaSatellites (SatSnapshot sats)
+    {
+        synchronized (this) {
+            pendingSats.copyFrom (sats);
+            if (satsPosted) return;
+            satsPosted = true;
+        }
+        ingestHandler.post (deliverSats);
+    }
+
+    private final Runnable deliverFix = new Runnable () {
+        @Override
+        public void run ()
+        {
+            Location loc;
+            synchronized (BluetoothGps.this) {
+                loc = pendingFix;
+                fixPosted = false;
+            }
+            if ((statusListener != null) && (readerThread != null)) {
+                statusListener.onLocationReceived (loc);
+            }
+        }
+    };
+
+    private final Runnable deliverStopped = new Runnable () {
+        @Override
+        public void run ()
+        {
+            if (statusListener != null) {
+                statusListener.onSatellitesReceived (null);
+            }
+        }
+    };
+
+    private final Runnable deliverSats = new Runnable () {
+        @Override
+        public void run ()
+        {
+            synchronized (BluetoothGps.this) {
+                uiSats.copyFrom (pendingSats);
+                satsPosted = false;
+            }
+            if ((statusListener != null) && (readerThread != null)) {
+                statusListener.onSatellitesReceived (uiSats);
+            }
+        }
+    };
+}
@@ -0,0 +1,446 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Draws the GPS status instrument (compass dial, track triangle, satellite sky plot)
+ * from a DisplayState onto a canvas.  Has no idea what thread it is running on,
+ * so it can be used from View.onDraw () or from a SurfaceView render thread,
+ * but must only be used from one thread at a time.
+ *
+ * In ambient mode it draws a north-up outline-only version in white with no
+ * sky trails, without anti-aliasing on low-bit displays, shifted around a few
+ * pixels each ambient update on displays that need burn-in protection.
+ *
+ * A fix or satellites from the warm start file (not live yet) are drawn in gray.
+ *
+ * The time and heading strings are only reformatted when the caller says they changed.
+ */
+public class DialRenderer {
+    private final static String[] compDirs = new String[] { "N", "E", "S", "W" };
+    private final static int BURNINPX = 6;   // max burn-in shift, pixels
+    private final static int[] burnInDX = new int[] { 0, 1, 1, 1, 0, -1, -1, -1 };
+    private final static int[] burnInDY = new int[] { -1, -1, 0, 1, 1, 1, 0, -1 };
+
+    private static volatile boolean usefulFrameDrawn;   // startup time recorded
+
+    // sky track trail colors indexed by GnssStatus.CONSTELLATION_*
+    private final static int[] trailColors = new int[] {
+            Color.WHITE,    // unknown
+            Color.GREEN,    // GPS
+            Color.GRAY,     // SBAS
+            Color.RED,      // GLONASS
+            Color.YELLOW,   // QZSS
+            Color.rgb (255, 128, 0),  // BEIDOU
+            Color.BLUE,     // GALILEO
+            Color.MAGENTA   // IRNSS
+    };
+
+    private boolean ambient;
+    private boolean lowBit;
+    private Bitmap dialBitmap;  // rings and N/E/S/W letters, rebuilt on size change
+    private char[] cmpHdgChars = new char[4];
+    private char[] gpsHdgChars = new char[4];
+    private char[] timeChars   = new char[8];
+    private char[] wptChars    = new char[DisplayState.WPTNAMELEN+6];
+    private float circleCenterX;
+    private float circleCenterY;
+    private float circleRadius;
+    private int burnInX;
+    private int burnInY;
+    private int cmpHdgLen;
+    private int gpsHdgLen;
+    private int height;
+    private int textDirty = ~0; // RenderScheduler.DIRTY_* bits of strings needing reformatting
+    private int timeLen;
+    private int trailVersion;   // DisplayState.trailVersion the trail paths were built from
+    private int width;
+    private long lastFixElapsedMs;
+    private Paint ambientPaint      = new Paint ();
+    private Paint ambientTextPaint  = new Paint ();
+    private Paint dialPaint         = new Paint ();
+    private Paint ignoredSpotsPaint = new Paint ();
+    private Paint ringsPaint        = new Paint ();
+    private Paint staleSpotsPaint   = new Paint ();
+    private Paint staleTextPaint    = new Paint ();
+    private Paint textPaint         = new Paint ();
+    private Paint trianglePaint     = new Paint ();
+    private Paint usedSpotsPaint    = new Paint ();
+    private Paint wptPaint          = new Paint ();
+    private Paint wptTextPaint      = new Paint ();
+    private Paint[] trailPaints     = new Paint[trailColors.length];
+    private Path  trianglePath      = new Path ();
+    private Path[] trailPaths       = new Path[trailColors.length];
+
+    public DialRenderer ()
+    {
+        ringsPaint.setColor (Color.YELLOW);
+        ringsPaint.setStyle (Paint.Style.STROKE);
+        ringsPaint.setStrokeWidth (2);
+
+        trianglePaint.setColor (Color.MAGENTA);
+        trianglePaint.setStyle (Paint.Style.FILL_AND_STROKE);
+        trianglePaint.setTextAlign (Paint.Align.CENTER);
+        trianglePaint.setTextSize (24.0F);
+
+        usedSpotsPaint.setColor (Color.GREEN);
+        usedSpotsPaint.setStyle (Paint.Style.FILL);
+
+        ignoredSpotsPaint.setColor (Color.CYAN);
+        ignoredSpotsPaint.setStyle (Paint.Style.STROKE);
+
+        staleTextPaint.setColor (Color.GRAY);
+        staleTextPaint.setStyle (Paint.Style.FILL_AND_STROKE);
+        staleTextPaint.setTextAlign (Paint.Align.CENTER);
+        staleTextPaint.setTextSize (24.0F);
+
+        staleSpotsPaint.setColor (Color.GRAY);
+        staleSpotsPaint.setStyle (Paint.Style.STROKE);
+
+        wptPaint.setColor (Color.CYAN);
+        wptPaint.setStyle (Paint.Style.FILL);
+
+        wptTextPaint.setColor (Color.CYAN);
+        wptTextPaint.setTextAlign (Paint.Align.CENTER);
+        wptTextPaint.setTextSize (18.0F);
+
+        textPaint.setColor (Color.WHITE);
+        textPaint.setStrokeWidth (3);
+        textPaint.setTextAlign (Paint.Align.CENTER);
+        textPaint.setTextSize (24.0F);
+
+        dialPaint.setFilterBitmap (true);
+
+        ambientPaint.setColor (Color.WHITE);
+        ambientPaint.setStyle (Paint.Style.STROKE);
+        ambientPaint.setStrokeWidth (1);
+
+        ambientTextPaint.setColor (Color.WHITE);
+        ambientTextPaint.setStyle (Paint.Style.STROKE);
+        ambientTextPaint.setStrokeWidth (1);
+        ambientTextPaint.setTextAlign (Paint.Align.CENTER);
+        ambientTextPaint.setTextSize (24.0F);
+
+        for (int i = 0; i < trailColors.length; i ++) {
+            Paint p = new Paint ();
+            p.setColor (trailColors[i]);
+            p.setAlpha (128);
+            p.setStyle (Paint.Style.STROKE);
+            p.setStrokeWidth (1);
+            trailPaints[i] = p;
+            trailPaths[i]  = new Path ();
+        }
+    }
+
+    /**
+     * Select ambient style.
+     * @param amb = draw ambient rather than interactive version
+     * @param lowbit = display has few bits per pixel, don't anti-alias
+     * @param burnin = display needs burn-in protection, shift by step
+     * @param step = incremented each ambient update
+     */
+    public void setAmbient (boolean amb, boolean lowbit, boolean burnin, int step)
+    {
+        ambient = amb;
+        if (lowBit != lowbit) {
+            lowBit = lowbit;
+            ambientPaint.setAntiAlias (! lowbit);
+            ambientTextPaint.setAntiAlias (! lowbit);
+        }
+        burnInX = burnin ? burnInDX[step&7] * BURNINPX : 0;
+        burnInY = burnin ? burnInDY[step&7] * BURNINPX : 0;
+    }
+
+    /**
+     * Compute dial geometry for the given size.
+     */
+    private void setGeometry (int w, int h)
+    {
+        release ();
+        width  = w;
+        height = h;
+
+        float textHeight = textPaint.getTextSize ();
+        circleCenterX = w / 2.0F;
+        circleCenterY = h / 2.0F;
+        circleRadius  = Math.min (circleCenterX, circleCenterY) - textHeight * 2.0F;
+
+        trianglePath.rewind ();
+        trianglePath.moveTo (circleCenterX, circleCenterY-circleRadius*9.0F/8.0F);
+        trianglePath.lineTo (circleCenterX - circleRadius / 16.0F, circleCenterY-circleRadius * 7.0F / 8.0F);
+        trianglePath.lineTo (circleCenterX + circleRadius / 16.0F, circleCenterY-circleRadius * 7.0F / 8.0F);
+        trianglePath.lineTo (circleCenterX, circleCenterY-circleRadius*9.0F/8.0F);
+
+        // trails are in pixels so they need rebuilding too
+        trailVersion = ~ trailVersion;
+        textDirty = ~0;
+    }
+
+    /**
+     * Draw the unchanging part of the dial (outer ring and N/E/S/W letters)
+     * into a bitmap so it doesn't get redrawn every frame.
+     */
+    private void buildDial ()
+    {
+        dialBitmap = Bitmap.createBitmap (width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas (dialBitmap);
+
+        // draw N S E W letters
+        for (String compDir : compDirs) {
+            canvas.drawText (compDir, circleCenterX, circleCenterY - circleRadius, textPaint);
+            canvas.rotate (90.0F, circleCenterX, circleCenterY);
+        }
+
+        canvas.drawCircle (circleCenterX, circleCenterY, circleRadius * 90 / 90, ringsPaint);
+    }
+
+    /**
+     * Rebuild the satellite sky track trails, one path per constellation.
+     */
+    private void buildTrails (DisplayState state)
+    {
+        for (Path path : trailPaths) path.rewind ();
+        int ntrails = state.trailCount;
+        for (int t = 0; t < ntrails; t ++) {
+            int constel = state.trailConstel[t];
+            if (constel >= trailPaths.length) constel = 0;
+            Path path = trailPaths[constel];
+            int p = state.trailStart[t];
+            int e = p + state.trailLen[t];
+            path.moveTo (circleCenterX + state.trailX[p] * circleRadius,
+                    circleCenterY - state.trailY[p] * circleRadius);
+            while (++ p < e) {
+                path.lineTo (circleCenterX + state.trailX[p] * circleRadius,
+                        circleCenterY - state.trailY[p] * circleRadius);
+            }
+        }
+        trailVersion = state.trailVersion;
+    }
+
+    /**
+     * Draw the instrument.
+     * Does not allocate anything unless the size changed.
+     * @param dirty = RenderScheduler.DIRTY_* bits of what changed since the last draw
+     */
+    public void draw (Canvas canvas, int w, int h, DisplayState state, int dirty)
+    {
+        if ((w <= 0) || (h <= 0)) return;
+        if ((width != w) || (height != h)) setGeometry (w, h);
+        textDirty |= dirty;
+
+        // startup is measured to the first frame showing a fix or satellites (warm start or live)
+        if (! usefulFrameDrawn && (state.haveFix || state.haveSats)) {
+            usefulFrameDrawn = true;
+            long ms = SystemClock.elapsedRealtime () - Process.getStartElapsedRealtime ();
+            Metrics.startupMs.record (ms);
+            Log.i (MainActivity.TAG, "process start to useful frame " + ms + " ms");
+        }
+        if (ambient) {
+            drawAmbient (canvas, state);
+            return;
+        }
+
+        long started = System.nanoTime ();
+        if (dialBitmap == null) buildDial ();
+        if (trailVersion != state.trailVersion) buildTrails (state);
+
+        // how stale is a new fix by the time it gets drawn
+        if (state.haveFix && ! state.staleFix && (lastFixElapsedMs != state.fixElapsedMs)) {
+            lastFixElapsedMs = state.fixElapsedMs;
+            Metrics.fixAgeMs.record (SystemClock.elapsedRealtime () - state.fixElapsedMs);
+        }
+
+        float textHeight = textPaint.getTextSize ();
+
+        canvas.save ();
+        try {
+
+            // display GPS time at bottom
+            Paint fixPaint = state.staleFix ? staleTextPaint : trianglePaint;
+            if (state.haveFix) {
+                formatTime (state);
+                canvas.drawText (timeChars, 0, timeLen, circleCenterX, circleCenterY * 2.0F, fixPaint);
+            }
+
+            // draw compass heading string at top then rotate remainder of drawing by compass heading
+            float compRotDeg = state.compRotDeg;
+            if (! Float.isNaN (compRotDeg)) {
+                if ((textDirty & RenderScheduler.DIRTY_HEADING) != 0) {
+                    cmpHdgLen = CharFormat.formatHeading (cmpHdgChars, CharFormat.normHeading (- compRotDeg));
+                    textDirty &= ~ RenderScheduler.DIRTY_HEADING;
+                }
+                canvas.drawText (cmpHdgChars, 0, cmpHdgLen, circleCenterX, textHeight, textPaint);
+                canvas.drawPath (trianglePath, textPaint);
+                canvas.rotate (compRotDeg, circleCenterX, circleCenterY);
+            }
+
+            // draw N S E W letters and outer ring
+            canvas.drawBitmap (dialBitmap, 0, 0, dialPaint);
+
+            // draw circles for satellites
+            if (state.haveSats) {
+                canvas.drawCircle (circleCenterX, circleCenterY, circleRadius * 30 / 90, ringsPaint);
+                canvas.drawCircle (circleCenterX, circleCenterY, circleRadius * 60 / 90, ringsPaint);
+            }
+
+            // draw triangle showing travel direction
+            if (state.haveFix) {
+                float magbearing = state.trackMag;
+                canvas.save ();
+                canvas.rotate (magbearing, circleCenterX, circleCenterY);
+                canvas.drawPath (trianglePath, fixPaint);
+                formatTrack (state);
+                canvas.drawText (gpsHdgChars, 0, gpsHdgLen, circleCenterX, circleCenterY-circleRadius*9.0F/8.0F, fixPaint);
+                canvas.restore ();
+            }
+
+            // draw waypoints on the ring with name and distance just inside
+            int nwpts = state.wptCount;
+            for (int i = 0; i < nwpts; i ++) {
+                canvas.save ();
+                canvas.rotate (state.wptBearingMag[i], circleCenterX, circleCenterY);
+                canvas.drawCircle (circleCenterX, circleCenterY - circleRadius, 5.0F, wptPaint);
+                int n = state.wptNameLen[i];
+                System.arraycopy (state.wptNames, i * DisplayState.WPTNAMELEN, wptChars, 0, n);
+                wptChars[n++] = ' ';
+                n += CharFormat.formatNm (wptChars, n, state.wptDistance[i]);
+                canvas.drawText (wptChars, 0, n, circleCenterX, circleCenterY - circleRadius * 0.8F, wptTextPaint);
+                canvas.restore ();
+            }
+
+            // draw trails and dots for satellites
+            if (state.haveSats) {
+                for (int i = 0; i < trailPaths.length; i ++) {
+                    canvas.drawPath (trailPaths[i], trailPaints[i]);
+                }
+
+                SatSnapshot sats = state.sats;
+                int n = sats.count;
+                for (int i = 0; i < n; i ++) {
+                    // cn0 in range 0..30 approx
+                    float size = sats.cn0[i] / 3;
+                    Paint paint = state.staleSats ? staleSpotsPaint : sats.used[i] ? usedSpotsPaint : ignoredSpotsPaint;
+                    canvas.drawCircle (circleCenterX + sats.skyX[i] * circleRadius,
+                            circleCenterY - sats.skyY[i] * circleRadius, size, paint);
+                }
+            }
+        } finally {
+            canvas.restore ();
+            Metrics.drawTimeUs.record ((System.nanoTime () - started) / 1000);
+            Metrics.redraws.mark (SystemClock.elapsedRealtime ());
+        }
+    }
+
+    /**
+     * Draw the ambient version, north up, outlines only, shifted for burn-in protection.
+     */
+    private void drawAmbient (Canvas canvas, DisplayState state)
+    {
+        long started = System.nanoTime ();
+        canvas.save ();
+        try {
+            canvas.translate (burnInX, burnInY);
+
+            if (state.haveFix) {
+                formatTime (state);
+                canvas.drawText (timeChars, 0, timeLen, circleCenterX, circleCenterY * 2.0F, ambientTextPaint);
+            }
+
+            canvas.save ();
+            for (String compDir : compDirs) {
+                canvas.drawText (compDir, circleCenterX, circleCenterY - circleRadius, ambientTextPaint);
+                canvas.rotate (90.0F, circleCenterX, circleCenterY);
+            }
+            canvas.restore ();
+            canvas.drawCircle (circleCenterX, circleCenterY, circleRadius, ambientPaint);
+
+            if (state.haveFix) {
+                float magbearing = state.trackMag;
+                canvas.save ();
+                canvas.rotate (magbearing, circleCenterX, circleCenterY);
+                canvas.drawPath (trianglePath, ambientPaint);
+                formatTrack (state);
+                canvas.drawText (gpsHdgChars, 0, gpsHdgLen, circleCenterX, circleCenterY-circleRadius*9.0F/8.0F, ambientTextPaint);
+                canvas.restore ();
+            }
+
+            // just small outlines for satellites used in the fix
+            if (state.haveSats) {
+                SatSnapshot sats = state.sats;
+                int n = sats.count;
+                for (int i = 0; i < n; i ++) {
+                    if (sats.used[i]) {
+                        canvas.drawCircle (circleCenterX + sats.skyX[i] * circleRadius,
+                                circleCenterY - sats.skyY[i] * circleRadius, 3.0F, ambientPaint);
+                    }
+                }
+            }
+        } finally {
+            canvas.restore ();
+            long now = SystemClock.elapsedRealtime ();
+            Metrics.drawTimeUs.record ((System.nanoTime () - started) / 1000);
+            Metrics.redraws.mark (now);
+            Metrics.ambientDraws.mark (now);
+        }
+    }
+
+    /**
+     * Reformat the GPS time string if it changed.
+     */
+    private void formatTime (DisplayState state)
+    {
+        if ((textDirty & RenderScheduler.DIRTY_TIME) != 0) {
+            timeLen = CharFormat.formatTime (timeChars, state.timeMs);
+            textDirty &= ~ RenderScheduler.DIRTY_TIME;
+        }
+    }
+
+    /**
+     * Reformat the GPS track string if it changed.
+     */
+    private void formatTrack (DisplayState state)
+    {
+        if ((textDirty & RenderScheduler.DIRTY_TRACK) != 0) {
+            gpsHdgLen = CharFormat.formatHeading (gpsHdgChars, CharFormat.normHeading (state.trackMag));
+            textDirty &= ~ RenderScheduler.DIRTY_TRACK;
+        }
+    }
+
+    /**
+     * Free the dial bitmap, it will be rebuilt on the next draw.
+     */
+    public void release ()
+    {
+        if (dialBitmap != null) {
+            dialBitmap.recycle ();
+            dialBitmap = null;
+        }
+    }
+}
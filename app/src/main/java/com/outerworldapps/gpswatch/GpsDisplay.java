@@ -0,0 +1,51 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Something that draws the GPS status instrument from published DisplayStates.
+ */
+public interface GpsDisplay {
+
+    /**
+     * Where to get the latest state from, display is the reader.
+     */
+    void setStates (TripleBuffer<DisplayState> states);
+
+    /**
+     * A new state was published, called on the ingest thread.
+     * @param bits = RenderScheduler.DIRTY_* bits of what changed
+     */
+    void markDirty (int bits);
+
+    /**
+     * Select interactive or ambient rendering, called on the UI thread.
+     * @param lowBit = display has few bits per pixel in ambient
+     * @param burnIn = display needs burn-in protection in ambient
+     */
+    void setAmbient (boolean ambient, boolean lowBit, boolean burnIn);
+
+    /**
+     * Ambient update (about once a minute), called on the UI thread.
+     * Shifts the burn-in offset, the model publishes the redraw.
+     */
+    void updateAmbient ();
+}
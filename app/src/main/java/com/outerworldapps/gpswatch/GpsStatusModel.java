@@ -0,0 +1,638 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Turns location, satellite and compass readings into what the GPS status
+ * instrument displays, and publishes it to a GpsDisplay as DisplayStates.
+ * All the processing (filtering, declination, sky plot, dead reckoning) runs
+ * on the ingest thread, so the UI thread only ever sees ready-to-draw states.
+ *
+ * The compass sensors are batched in the sensor hub and sampled slowly while the
+ * heading is steady, and are unregistered while the dial isn't visible
+ * (see CompassRatePolicy).
+ *
+ * The last fix, declination and satellites are kept in a warm start file
+ * and shown as stale at startup until live data arrives.
+ *
+ * If a waypoint file is open, each fix also updates the nearest waypoints
+ * (or the chosen one) incrementally.  Each fix also updates the trip computer,
+ * whose copies are published separately for the trip page, and the breadcrumb
+ * track, which is published with the filtered position for the moving map.
+ */
+public class GpsStatusModel
+        implements LocationSource.Listener, Runnable, SensorEventListener {
+
+    private final static boolean USECOMPASS = true;
+    private final static boolean USEROTVEC  = true;   // use TYPE_ROTATION_VECTOR if available
+    private final static float COMPALPHA  = 0.08F;    // compass low-pass filter weight
+    private final static float COMPTHRESH = 1.0F;     // compass redraw threshold (degrees)
+    private final static long WARMSAVEMS = 300000;    // save warm start file this often while getting fixes
+    private final static double WPTMARGIN = 2000.0;   // metres moved before re-collecting nearby waypoints
+    private final static long SENSORWAKEMS = 5;       // sensor callbacks closer than this are one batch
+    private final static double CRUMBTOL = 5.0;       // breadcrumb initial tolerance, metres
+    private final static int CRUMBWINDOW = 64;        // breadcrumb most fixes between kept points
+    private final static long TRIPMAXGAP = 120000;    // trip gaps longer than this use average speed (2x screen-off fix interval)
+
+    private boolean ambient;
+    private boolean haveLiveFix;
+    private boolean realSensors;
+    private boolean sensorsRegistered;
+    private CompassFilter compassFilter = new CompassFilter (COMPALPHA, COMPTHRESH);
+    private CompassRatePolicy compassPolicy = new CompassRatePolicy ();
+    private Context context;
+    private DeclinationCache declinationCache = new DeclinationCache (
+            new GeomagDeclinationModel (), 0.25, 1000.0, 86400000L);
+    private File warmFile;
+    private DisplayState current = new DisplayState ();   // latest state, copied to back buffer to publish
+    private float magvariation;
+    private GpsDisplay display;
+    private Handler handler;   // ingest thread
+    private int lastGpsHdg;    // GPS heading last marked for display
+    private long lastGpsSec;   // GPS time (seconds) last marked for display
+    private long lastSensorMs; // elapsedRealtime of last sensor callback
+    private long lastWarmSave; // elapsedRealtime warm start file last saved
+    private char[] wptNameBuf = new char[DisplayState.WPTNAMELEN];
+    private Location location;
+    private NearestWaypoints nearestWaypoints;
+    private PositionEstimator positionEstimator = new PositionEstimator (1.0, 0.5F, 60000);
+    private SignalStats signalStats = new SignalStats (60000, 10);
+    private SkyTrackHistory skyTrackHistory = new SkyTrackHistory (256, 60, 60000, 900000);
+    private WarmStart warmStart = new WarmStart ();
+    private TrackSimplifier breadcrumbs = new TrackSimplifier (MapState.BREADCRUMBS, CRUMBTOL, CRUMBWINDOW);
+    private TripComputer trip = new TripComputer (0.5, 5.0, TRIPMAXGAP);
+    private TripleBuffer<SignalStats> signalStates = new TripleBuffer<> (
+            new SignalStats (60000, 10), new SignalStats (60000, 10), new SignalStats (60000, 10));
+    private TripleBuffer<TripComputer> tripStates = new TripleBuffer<> (
+            new TripComputer (0.5, 5.0, TRIPMAXGAP), new TripComputer (0.5, 5.0, TRIPMAXGAP), new TripComputer (0.5, 5.0, TRIPMAXGAP));
+    private TripleBuffer<MapState> mapStates = new TripleBuffer<> (
+            new MapState (), new MapState (), new MapState ());
+    private TripleBuffer<DisplayState> states = new TripleBuffer<> (
+            new DisplayState (), new DisplayState (), new DisplayState ());
+
+    /**
+     * @param ctx = context for getting the sensor manager
+     * @param ingest = handler of thread everything is processed on
+     */
+    public GpsStatusModel (Context ctx, Handler ingest)
+    {
+        context = ctx;
+        handler = ingest;
+    }
+
+    /**
+     * Start up the compass, called on the UI thread once the location source is known.
+     * @param realSensors = register for the watch's compass sensors
+     *                      (false if the location source supplies sensor samples)
+     */
+    public void Startup (final boolean realSensors)
+    {
+        handler.post (new Runnable () {
+            @Override
+            public void run ()
+            {
+                GpsStatusModel.this.realSensors = realSensors;
+                updateSensors ();
+            }
+        });
+    }
+
+    /**
+     * Activity is going away, close files, called on the UI thread.
+     * Runs before the ingest thread quits as long as it is called before quitSafely ().
+     */
+    public void Shutdown ()
+    {
+        handler.post (new Runnable () {
+            @Override
+            public void run ()
+            {
+                closeWaypoints ();
+            }
+        });
+    }
+
+    /**
+     * Compass dial became visible or invisible (other page showing or activity stopped).
+     * Called on the UI thread.
+     */
+    public void setVisible (final boolean visible)
+    {
+        handler.post (new Runnable () {
+            @Override
+            public void run ()
+            {
+                if (compassPolicy.setVisible (visible)) updateSensors ();
+            }
+        });
+    }
+
+    /**
+     * (Re-)register for compass sensors with the rate policy's current settings,
+     * or unregister them, if we use the watch's sensors.
+     */
+    private void updateSensors ()
+    {
+        if (! USECOMPASS || ! realSensors) return;
+        SensorManager instrSM = context.getSystemService (SensorManager.class);
+        if (sensorsRegistered) {
+            instrSM.unregisterListener (this);
+            sensorsRegistered = false;
+        }
+        Log.d (MainActivity.TAG, "compass rate " + compassPolicy.getStateName () +
+                " sampling " + compassPolicy.getSamplingUs () + " latency " + compassPolicy.getMaxLatencyUs ());
+        if (! compassPolicy.isActive ()) {
+            current.compRotDeg = Float.NaN;
+            positionEstimator.setHeading (Float.NaN);
+            compassFilter.reset ();
+            publish (RenderScheduler.DIRTY_HEADING);
+            return;
+        }
+        int sampling = compassPolicy.getSamplingUs ();
+        int latency  = compassPolicy.getMaxLatencyUs ();
+        Sensor srv = USEROTVEC ? instrSM.getDefaultSensor (Sensor.TYPE_ROTATION_VECTOR) : null;
+        if (srv != null) {
+            instrSM.registerListener (this, srv, sampling, latency, handler);
+        } else {
+            Sensor smf = instrSM.getDefaultSensor (Sensor.TYPE_MAGNETIC_FIELD);
+            Sensor sac = instrSM.getDefaultSensor (Sensor.TYPE_ACCELEROMETER);
+            instrSM.registerListener (this, smf, sampling, latency, handler);
+            instrSM.registerListener (this, sac, sampling, latency, handler);
+        }
+        sensorsRegistered = true;
+    }
+
+    /**
+     * Set what draws the published states.
+     * Called on the UI thread, the display is only published to from the ingest thread.
+     */
+    public void setDisplay (final GpsDisplay disp)
+    {
+        disp.setStates (states);
+        handler.post (new Runnable () {
+            @Override
+            public void run ()
+            {
+                display = disp;
+                publish (RenderScheduler.DIRTY_HEADING | RenderScheduler.DIRTY_SKY |
+                        RenderScheduler.DIRTY_TRACK | RenderScheduler.DIRTY_TIME);
+            }
+        });
+    }
+
+    /**
+     * Load the warm start file and display it as stale until live data arrives.
+     * Called on the UI thread, the file is read on the ingest thread.
+     */
+    public void loadWarmStart (File file)
+    {
+        warmFile = file;
+        handler.post (new Runnable () {
+            @Override
+            public void run ()
+            {
+                WarmStart ws = warmStart;
+                try {
+                    if (! ws.load (warmFile)) return;
+                } catch (IOException ioe) {
+                    Log.w (MainActivity.TAG, "error reading " + warmFile, ioe);
+                    return;
+                }
+                int dirty = 0;
+                if (! haveLiveFix) {
+                    magvariation = - ws.declination;
+                    current.haveFix  = true;
+                    current.staleFix = true;
+                    current.timeMs   = ws.time;
+                    current.trackMag = (Float.isNaN (ws.bearing) ? 0.0F : ws.bearing) + magvariation;
+                    dirty |= RenderScheduler.DIRTY_TIME | RenderScheduler.DIRTY_TRACK;
+                }
+                if (! current.haveSats && (ws.sats.count > 0)) {
+                    current.haveSats  = true;
+                    current.staleSats = true;
+                    current.sats.copyFrom (ws.sats);
+                    dirty |= RenderScheduler.DIRTY_SKY;
+                }
+                publish (dirty);
+            }
+        });
+    }
+
+    /**
+     * Get latest GNSS signal statistics, read by one UI thread reader.
+     */
+    public TripleBuffer<SignalStats> getSignalStates ()
+    {
+        return signalStates;
+    }
+
+    /**
+     * Get latest filtered position, read by one UI thread reader.
+     */
+    public TripleBuffer<MapState> getMapStates ()
+    {
+        return mapStates;
+    }
+
+    /**
+     * Get latest trip statistics, read by one UI thread reader.
+     */
+    public TripleBuffer<TripComputer> getTripStates ()
+    {
+        return tripStates;
+    }
+
+    /**
+     * Start a new trip, also clearing the breadcrumbs.
+     * Called on the UI thread.
+     */
+    public void resetTrip ()
+    {
+        handler.post (new Runnable () {
+            @Override
+            public void run ()
+            {
+                trip.reset ();
+                breadcrumbs.reset ();
+                publishTrip ();
+            }
+        });
+    }
+
+    private void publishTrip ()
+    {
+        tripStates.getBack ().copyFrom (trip);
+        tripStates.publish ();
+    }
+
+    /**
+     * Open a waypoint file and show the nearest few waypoints, or a chosen one.
+     * Called on the UI thread, the file is opened on the ingest thread.
+     * Any previously opened waypoint file is closed.
+     * @param file = file written by WaypointDb.build ()
+     * @param n = number of nearest waypoints to show
+     * @param target = name of chosen waypoint or "" for nearest
+     */
+    public void openWaypoints (final File file, final int n, final String target)
+    {
+        handler.post (new Runnable () {
+            @Override
+            public void run ()
+            {
+                closeWaypoints ();
+                try {
+                    WaypointDb db = new WaypointDb (file);
+                    NearestWaypoints nw = new NearestWaypoints (db, Math.min (n, DisplayState.MAXWPTS), WPTMARGIN);
+                    if (! target.isEmpty ()) {
+                        int wpt = db.find (target);
+                        if (wpt < 0) Log.w (MainActivity.TAG, "waypoint " + target + " not found");
+                        nw.setTarget (wpt);
+                    }
+                    nearestWaypoints = nw;
+                } catch (IOException ioe) {
+                    Log.w (MainActivity.TAG, "error opening " + file, ioe);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop showing waypoints and close the waypoint file, if any.
+     */
+    private void closeWaypoints ()
+    {
+        NearestWaypoints nw = nearestWaypoints;
+        if (nw == null) return;
+        nearestWaypoints = null;
+        current.wptCount = 0;
+        try {
+            nw.getDb ().close ();
+        } catch (IOException ioe) {
+            Log.w (MainActivity.TAG, "error closing waypoints", ioe);
+        }
+    }
+
+    /**
+     * Update waypoint bearings and distances for a new fix.
+     */
+    private void updateWaypoints (Location loc)
+    {
+        NearestWaypoints nw = nearestWaypoints;
+        nw.update (loc.getLatitude (), loc.getLongitude ());
+        WaypointDb db = nw.getDb ();
+        int n = nw.count;
+        for (int i = 0; i < n; i ++) {
+            current.wptBearingMag[i] = nw.bearing[i] + magvariation;
+            current.wptDistance[i]   = nw.distance[i];
+            int len = db.getName (nw.index[i], wptNameBuf);
+            System.arraycopy (wptNameBuf, 0, current.wptNames, i * DisplayState.WPTNAMELEN, len);
+            current.wptNameLen[i] = len;
+        }
+        current.wptCount = n;
+    }
+
+    /**
+     * Save the latest live fix and satellites to the warm start file.
+     * Called on the UI thread, the file is written on the ingest thread.
+     */
+    public void saveWarmStart ()
+    {
+        handler.post (warmSaver);
+    }
+
+    private final Runnable warmSaver = new Runnable () {
+        @Override
+        public void run ()
+        {
+            if (! haveLiveFix || (warmFile == null)) return;
+            WarmStart ws = warmStart;
+            Location loc = location;
+            ws.time        = loc.getTime ();
+            ws.lat         = loc.getLatitude ();
+            ws.lon         = loc.getLongitude ();
+            ws.alt         = loc.hasAltitude () ? (float) loc.getAltitude () : Float.NaN;
+            ws.speed       = loc.hasSpeed ()    ? loc.getSpeed ()    : Float.NaN;
+            ws.bearing     = loc.hasBearing ()  ? loc.getBearing ()  : Float.NaN;
+            ws.accuracy    = loc.hasAccuracy () ? loc.getAccuracy () : Float.NaN;
+            ws.declination = - magvariation;
+            if (current.haveSats && ! current.staleSats) ws.sats.copyFrom (current.sats);
+            try {
+                ws.save (warmFile);
+            } catch (IOException ioe) {
+                Log.w (MainActivity.TAG, "error writing " + warmFile, ioe);
+            }
+            lastWarmSave = SystemClock.elapsedRealtime ();
+        }
+    };
+
+    /**
+     * Select interactive or ambient mode.
+     * Called on the UI thread.
+     * Ambient mode turns the compass off and only redraws on new fixes and ambient updates.
+     */
+    public void setAmbient (final boolean amb)
+    {
+        handler.post (new Runnable () {
+            @Override
+            public void run ()
+            {
+                if (ambient == amb) return;
+                ambient = amb;
+                handler.removeCallbacks (GpsStatusModel.this);
+                if (compassPolicy.setAmbient (amb)) updateSensors ();
+                if (amb) {
+                    current.compRotDeg = Float.NaN;
+                    publish (0);
+                } else {
+                    if (location != null) handler.post (GpsStatusModel.this);
+                }
+            }
+        });
+    }
+
+    /**
+     * Ambient update (about once a minute), bring the displayed time up to date and redraw.
+     * Called on the UI thread.
+     */
+    public void updateAmbient ()
+    {
+        handler.post (ambientUpdater);
+    }
+
+    private final Runnable ambientUpdater = new Runnable () {
+        @Override
+        public void run ()
+        {
+            int dirty = RenderScheduler.DIRTY_TIME;
+            if (location != null) dirty |= updateDisplayed (SystemClock.elapsedRealtime ());
+            publish (dirty);
+        }
+    };
+
+    /**
+     * Got a compass reading.
+     */
+    @Override  // SensorEventListener
+    public void onSensorChanged (SensorEvent event)
+    {
+        onSensorSample (event.sensor.getType (), event.values, event.timestamp);
+    }
+
+    /**
+     * Got a compass reading from the sensors or the location source.
+     * The filter copies the values so it's ok that the framework reuses event.values.
+     * Only redraw if the filtered heading changed enough to notice.
+     * Callbacks arriving together are counted as one wake-up (a batch from the sensor hub).
+     */
+    @Override  // LocationSource.Listener
+    public void onSensorSample (int type, float[] values, long timestamp)
+    {
+        long now = SystemClock.elapsedRealtime ();
+        Metrics.sensorEvents.mark (now);
+        if (now - lastSensorMs > SENSORWAKEMS) Metrics.sensorWakeups.mark (now);
+        lastSensorMs = now;
+        if (ambient) return;
+        boolean changed;
+        switch (type) {
+            case Sensor.TYPE_MAGNETIC_FIELD: {
+                changed = compassFilter.onMagnetometer (values);
+                break;
+            }
+            case Sensor.TYPE_ACCELEROMETER: {
+                changed = compassFilter.onAccelerometer (values);
+                break;
+            }
+            case Sensor.TYPE_ROTATION_VECTOR: {
+                changed = compassFilter.onRotationVector (values);
+                break;
+            }
+            default: return;
+        }
+
+        if (changed) {
+            current.compRotDeg = - compassFilter.getHeading ();
+            positionEstimator.setHeading ((location == null) ? Float.NaN : compassFilter.getHeading () - magvariation);
+            publish (RenderScheduler.DIRTY_HEADING);
+        }
+        if (realSensors && compassPolicy.onSample (changed, now)) updateSensors ();
+    }
+
+    @Override  // SensorEventListener
+    public void onAccuracyChanged (Sensor sensor, int accuracy)
+    { }
+
+    /**
+     * Got a GPS satellite status reading.
+     */
+    @Override  // LocationSource.Listener
+    public void onSatellitesReceived (SatSnapshot sats)
+    {
+        Metrics.gnssStatuses.mark (SystemClock.elapsedRealtime ());
+        current.haveSats  = sats != null;
+        current.staleSats = false;
+        if (sats != null) {
+            current.sats.copyFrom (sats);
+            long now = SystemClock.elapsedRealtime ();
+            boolean trailsChanged = skyTrackHistory.update (sats, now);
+            signalStats.update (sats, now);
+            publishSignal ();
+            if (trailsChanged) current.setTrails (skyTrackHistory);
+        }
+        publish (RenderScheduler.DIRTY_SKY);
+    }
+
+    /**
+     * Receiver reported its time to first fix.
+     */
+    @Override  // LocationSource.Listener
+    public void onFirstFix (int ttffMs)
+    {
+        signalStats.recordTtff (ttffMs);
+        publishSignal ();
+    }
+
+    private void publishSignal ()
+    {
+        signalStates.getBack ().copyFrom (signalStats);
+        signalStates.publish ();
+    }
+
+    /**
+     * Got a GPS location reading.
+     */
+    @Override  // LocationSource.Listener
+    public void onLocationReceived (Location loc)
+    {
+        long now = SystemClock.elapsedRealtime ();
+        Metrics.locations.mark (now);
+        if (! haveLiveFix) {
+            haveLiveFix = true;
+            current.staleFix = false;
+            Metrics.firstFixMs.record (now - Process.getStartElapsedRealtime ());
+        }
+        location = loc;
+        magvariation = - declinationCache.getDeclination (
+                location.getLatitude (), location.getLongitude (),
+                location.getAltitude (), location.getTime ());
+
+        positionEstimator.update (loc.getElapsedRealtimeNanos () / 1000000,
+                loc.getLatitude (), loc.getLongitude (),
+                loc.hasAccuracy () ? loc.getAccuracy () : Float.NaN,
+                loc.hasSpeed ()    ? loc.getSpeed ()    : Float.NaN,
+                loc.hasBearing ()  ? loc.getBearing ()  : Float.NaN);
+        current.fixElapsedMs = loc.getElapsedRealtimeNanos () / 1000000;
+        trip.update (loc.getTime (), loc.getLatitude (), loc.getLongitude (),
+                loc.hasAltitude () ? loc.getAltitude () : Double.NaN,
+                loc.hasSpeed () ? loc.getSpeed () : Float.NaN);
+        publishTrip ();
+        breadcrumbs.add (loc.getLatitude (), loc.getLongitude ());
+        int dirty = RenderScheduler.DIRTY_TIME;
+        if (nearestWaypoints != null) {
+            updateWaypoints (loc);
+            dirty |= RenderScheduler.DIRTY_WPTS;
+        }
+        publish (updateDisplayed (now) | dirty);
+        if ((lastWarmSave == 0) || (now - lastWarmSave >= WARMSAVEMS)) warmSaver.run ();
+
+        // keep time and track moving between fixes
+        if (! ambient) {
+            handler.removeCallbacks (this);
+            handler.postDelayed (this, 1000);
+        }
+    }
+
+    /**
+     * Once a second between fixes, dead-reckon the displayed time and track.
+     */
+    @Override  // Runnable
+    public void run ()
+    {
+        if ((location != null) && ! ambient) {
+            int dirty = updateDisplayed (SystemClock.elapsedRealtime ());
+            if (dirty != 0) publish (dirty);
+            handler.postDelayed (this, 1000);
+        }
+    }
+
+    /**
+     * Update displayed GPS time and track to the given time.
+     * @param now = SystemClock.elapsedRealtime ()
+     * @return RenderScheduler.DIRTY_* bits of what displayed values changed
+     */
+    private int updateDisplayed (long now)
+    {
+        if (! positionEstimator.predict (now)) return 0;
+        float truetrack = Float.isNaN (positionEstimator.track) ? location.getBearing () : positionEstimator.track;
+        current.haveFix  = true;
+        current.timeMs   = location.getTime () + now - current.fixElapsedMs;
+        current.trackMag = truetrack + magvariation;
+
+        MapState ms = mapStates.getBack ();
+        ms.haveFix   = true;
+        ms.lat       = positionEstimator.lat;
+        ms.lon       = positionEstimator.lon;
+        ms.speed     = positionEstimator.speed;
+        ms.track     = positionEstimator.track;
+        ms.elapsedMs = now;
+        ms.breadcrumbs.copyFrom (breadcrumbs);
+        mapStates.publish ();
+
+        int dirty = 0;
+        long gpssec = current.timeMs / 1000;
+        if (lastGpsSec != gpssec) {
+            lastGpsSec = gpssec;
+            dirty |= RenderScheduler.DIRTY_TIME;
+        }
+        int gpshdg = CharFormat.normHeading (current.trackMag);
+        if (lastGpsHdg != gpshdg) {
+            lastGpsHdg = gpshdg;
+            dirty |= RenderScheduler.DIRTY_TRACK;
+        }
+        return dirty;
+    }
+
+    /**
+     * Hand a copy of the current state to the display.
+     * In ambient mode, only a new fix or an ambient update causes a redraw.
+     * @param dirty = RenderScheduler.DIRTY_* bits of what changed
+     */
+    private void publish (int dirty)
+    {
+        states.getBack ().copyFrom (current);
+        states.publish ();
+        if (ambient) dirty &= RenderScheduler.DIRTY_TIME | RenderScheduler.DIRTY_TRACK;
+        if ((display != null) && (dirty != 0)) display.markDirty (dirty);
+    }
+}
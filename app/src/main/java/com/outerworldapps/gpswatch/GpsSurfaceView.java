@@ -0,0 +1,204 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Build;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Alternate GPS status panel that draws on its own render thread into a surface,
+ * so drawing never competes with sensor, GNSS and toast callbacks on the UI thread.
+ * Publishers never block: they set dirty bits and unpark the render thread, which
+ * draws the latest published DisplayState at most once per frame interval, so a
+ * burst of updates just collapses into the next frame.
+ */
+public class GpsSurfaceView extends SurfaceView implements GpsDisplay, Runnable, SurfaceHolder.Callback {
+    private final static long AMBIENT_NS     = 1000000000L;   // 1 fps in ambient
+    private final static long INTERACTIVE_NS = 1000000000L / 30;
+    private final static int  MAXERRORS      = 10;            // frames failing in a row before giving up
+
+    private AtomicInteger dirty = new AtomicInteger ();
+    private DialRenderer dialRenderer = new DialRenderer ();
+    private DisplayState emptyState = new DisplayState ();
+    private volatile boolean ambient;
+    private volatile boolean burnIn;
+    private volatile boolean lowBit;
+    private volatile int burnInStep;
+    private volatile int surfaceHeight;
+    private volatile int surfaceWidth;
+    private volatile Thread renderThread;
+    private volatile TripleBuffer<DisplayState> states;
+
+    public GpsSurfaceView (Context ctx, AttributeSet attrs)
+    {
+        super (ctx, attrs);
+        getHolder ().addCallback (this);
+    }
+
+    public GpsSurfaceView (Context ctx)
+    {
+        super (ctx);
+        getHolder ().addCallback (this);
+    }
+
+    @Override  // GpsDisplay
+    public void setStates (TripleBuffer<DisplayState> states)
+    {
+        this.states = states;
+    }
+
+    /**
+     * Can be called from any thread, never blocks.
+     */
+    @Override  // GpsDisplay
+    public void markDirty (int bits)
+    {
+        int old;
+        do old = dirty.get ();
+        while (! dirty.compareAndSet (old, old | bits));
+        Thread t = renderThread;
+        if (t != null) LockSupport.unpark (t);
+    }
+
+    @Override  // GpsDisplay
+    public void setAmbient (boolean amb, boolean lowbit, boolean burnin)
+    {
+        lowBit  = lowbit;
+        burnIn  = burnin;
+        ambient = amb;
+        markDirty (RenderScheduler.DIRTY_HEADING);
+    }
+
+    @Override  // GpsDisplay
+    public void updateAmbient ()
+    {
+        burnInStep ++;
+    }
+
+    @Override  // SurfaceHolder.Callback
+    public void surfaceCreated (SurfaceHolder holder)
+    {
+        Thread t = new Thread (this, "GpsSurfaceView");
+        renderThread = t;
+        t.start ();
+    }
+
+    @Override  // SurfaceHolder.Callback
+    public void surfaceChanged (SurfaceHolder holder, int format, int width, int height)
+    {
+        surfaceWidth  = width;
+        surfaceHeight = height;
+        markDirty (RenderScheduler.DIRTY_HEADING | RenderScheduler.DIRTY_SKY |
+                RenderScheduler.DIRTY_TRACK | RenderScheduler.DIRTY_TIME);
+    }
+
+    /**
+     * Surface is going away, the render thread must be done with it before we return.
+     */
+    @Override  // SurfaceHolder.Callback
+    public void surfaceDestroyed (SurfaceHolder holder)
+    {
+        Thread t = renderThread;
+        renderThread = null;
+        if (t != null) {
+            LockSupport.unpark (t);
+            boolean interrupted = false;
+            while (t.isAlive ()) {
+                try {
+                    t.join ();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread ().interrupt ();
+        }
+    }
+
+    /**
+     * Render thread, draw whenever something is dirty, paced by the frame rate cap
+     * and by unlockCanvasAndPost () waiting for a free buffer.
+     * A frame that throws is logged and retried, MAXERRORS in a row are rethrown.
+     */
+    @Override  // Runnable
+    public void run ()
+    {
+        Thread me = Thread.currentThread ();
+        SurfaceHolder holder = getHolder ();
+        long lastDrawNs = System.nanoTime () - AMBIENT_NS;
+        int errors = 0;
+        try {
+            while (renderThread == me) {
+                if (dirty.get () == 0) {
+                    LockSupport.park (this);
+                    continue;
+                }
+                long wait = lastDrawNs + (ambient ? AMBIENT_NS : INTERACTIVE_NS) - System.nanoTime ();
+                if (wait > 0) {
+                    LockSupport.parkNanos (this, wait);
+                    continue;
+                }
+                int bits = dirty.getAndSet (0);
+                lastDrawNs = System.nanoTime ();
+
+                DisplayState state = emptyState;
+                TripleBuffer<DisplayState> sts = states;
+                if (sts != null) {
+                    sts.update ();
+                    state = sts.getFront ();
+                }
+
+                // hardware canvas needs API 26
+                Canvas canvas = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) ?
+                        holder.lockHardwareCanvas () : holder.lockCanvas ();
+                if (canvas == null) {
+                    // surface not ready, try again next frame
+                    markDirty (bits);
+                    continue;
+                }
+                try {
+                    canvas.drawColor (Color.BLACK);
+                    dialRenderer.setAmbient (ambient, lowBit, burnIn, burnInStep);
+                    dialRenderer.draw (canvas, surfaceWidth, surfaceHeight, state, bits);
+                    errors = 0;
+                } catch (RuntimeException re) {
+                    // one bad frame mustn't freeze the display, try it again next frame,
+                    // but if it keeps failing let it crash so it gets reported
+                    Log.e (MainActivity.TAG, "error rendering", re);
+                    if (++ errors >= MAXERRORS) throw re;
+                    markDirty (bits);
+                } finally {
+                    holder.unlockCanvasAndPost (canvas);
+                }
+            }
+        } finally {
+            dialRenderer.release ();
+        }
+    }
+}
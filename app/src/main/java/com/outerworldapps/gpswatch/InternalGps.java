@@ -27,31 +27,88 @@ import android.location.GnssStatus;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.util.Log;
 
 import androidx.core.app.ActivityCompat;
 
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.GoogleApiAvailability;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
 /**
  * Use internal GPS receiver to determine location.
+ * Location and GNSS status callbacks, the power policy and the track recorder
+ * all run on the ingest thread, control calls from the UI thread are posted there.
+ *
+ * Fixes are requested through the fused location provider so the power policy's batch
+ * latency can be applied, letting the receiver hold fixes while the display is ambient
+ * or off.  Without Play Services, falls back to the LocationManager GPS provider unbatched.
  */
-public class InternalGps implements LocationListener {
-    private final static int rate_amb = 20000;
-    private final static int rate_nor =  1000;
+public class InternalGps implements LocationListener, LocationSource {
+    private final static int TRACKCAP = 86400;  // keep at least 24 hours at 1 fix/sec
 
     private boolean running;
-    private GpsStatusView statusListener;
+    private FusedLocationProviderClient fusedClient;
+    private GpsPowerPolicy powerPolicy = new GpsPowerPolicy ();
+    private Handler ingestHandler;
     private LocationManager locationManager;
+    private LocationSource.Listener statusListener;
     private MainActivity mainActivity;
+    private SatSnapshot gnssSats = new SatSnapshot (64);
+    private TrackRecorder trackRecorder;
 
-    public InternalGps (MainActivity ma)
+    /**
+     * @param ma = activity
+     * @param ingest = handler of thread the callbacks are delivered on
+     */
+    public InternalGps (MainActivity ma, Handler ingest)
     {
         mainActivity = ma;
+        ingestHandler = ingest;
         locationManager = mainActivity.getSystemService (LocationManager.class);
         if (locationManager == null) {
             mainActivity.showToastLong ("no location manager");
         }
+        if (GoogleApiAvailability.getInstance ().isGooglePlayServicesAvailable (mainActivity) == ConnectionResult.SUCCESS) {
+            fusedClient = LocationServices.getFusedLocationProviderClient (mainActivity);
+        } else {
+            Log.w (MainActivity.TAG, "no play services, GPS fixes will not be batched");
+        }
+
+        // opening the track file scans the whole ring, keep it off the UI thread
+        final File trackFile = new File (mainActivity.getFilesDir (), "track.bin");
+        ingestHandler.post (new Runnable () {
+            @Override
+            public void run ()
+            {
+                try {
+                    trackRecorder = new TrackRecorder (trackFile, TRACKCAP);
+                } catch (IOException ioe) {
+                    Log.w (MainActivity.TAG, "error opening track file", ioe);
+                    mainActivity.runOnUiThread (new Runnable () {
+                        @Override
+                        public void run ()
+                        {
+                            mainActivity.showToastLong ("error opening track file");
+                        }
+                    });
+                }
+            }
+        });
     }
 
+    @Override  // LocationSource
     public boolean startSensor ()
     {
         if (ActivityCompat.checkSelfPermission (mainActivity, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
@@ -61,40 +118,172 @@ public class InternalGps implements LocationListener {
             return false;
         }
 
-        int rate = mainActivity.isAmbient () ? rate_amb : rate_nor;
-        locationManager.requestLocationUpdates (LocationManager.GPS_PROVIDER, rate, 0.0F, this);
-        if (statusListener != null) {
-            locationManager.registerGnssStatusCallback (gnssStatusCallback);
-        }
-        running = true;
+        final boolean ambient = mainActivity.isAmbient ();
+        ingestHandler.post (new Runnable () {
+            @SuppressLint("MissingPermission")
+            @Override
+            public void run ()
+            {
+                powerPolicy.setAmbient (ambient);
+                requestUpdates ();
+                if (statusListener != null) {
+                    locationManager.registerGnssStatusCallback (gnssStatusCallback, ingestHandler);
+                }
+                running = true;
+            }
+        });
         return true;
     }
 
+    @Override  // LocationSource
     public void stopSensor ()
     {
-        running = false;
-        locationManager.removeUpdates (this);
-        locationManager.unregisterGnssStatusCallback (gnssStatusCallback);
-        if (statusListener != null) {
-            statusListener.onStatusReceived (null);
+        ingestHandler.post (new Runnable () {
+            @Override
+            public void run ()
+            {
+                running = false;
+                removeUpdates ();
+                locationManager.unregisterGnssStatusCallback (gnssStatusCallback);
+                if (trackRecorder != null) {
+                    trackRecorder.flush ();
+                }
+                if (statusListener != null) {
+                    statusListener.onSatellitesReceived (null);
+                }
+            }
+        });
+    }
+
+    @Override  // LocationSource
+    public boolean suppliesSensors ()
+    {
+        return false;
+    }
+
+    /**
+     * Entering or leaving ambient mode, maybe change fix rate.
+     */
+    @Override  // LocationSource
+    public void setAmbient (final boolean ambient)
+    {
+        ingestHandler.post (new Runnable () {
+            @Override
+            public void run ()
+            {
+                if (powerPolicy.setAmbient (ambient)) reRequestUpdates ();
+            }
+        });
+    }
+
+    /**
+     * Screen (or at least our activity) became visible or invisible, maybe change fix rate.
+     */
+    @Override  // LocationSource
+    public void setScreenOn (final boolean on)
+    {
+        ingestHandler.post (new Runnable () {
+            @Override
+            public void run ()
+            {
+                if (powerPolicy.setScreenOn (on)) reRequestUpdates ();
+            }
+        });
+    }
+
+    /**
+     * Power policy changed its mind, re-register with the new settings if running.
+     */
+    private void reRequestUpdates ()
+    {
+        if (running) {
+            removeUpdates ();
+            requestUpdates ();
         }
     }
 
+    /**
+     * Register for location updates with the power policy's current settings.
+     * LocationManager has no public batching request below API 31, so the batch
+     * latency only applies when going through the fused provider.
+     */
     @SuppressLint("MissingPermission")
-    public void setStatusListener (GpsStatusView gsl)
+    private void requestUpdates ()
     {
-        statusListener = gsl;
-        if (gsl == null) {
-            locationManager.unregisterGnssStatusCallback (gnssStatusCallback);
-        } else if (running) {
-            locationManager.registerGnssStatusCallback (gnssStatusCallback);
+        Log.d (MainActivity.TAG, "GPS power state " + powerPolicy.getStateName () +
+                " interval " + powerPolicy.getIntervalMs () + " mindist " + powerPolicy.getMinDistance () +
+                " batch " + powerPolicy.getBatchLatencyMs ());
+        if (fusedClient != null) {
+            LocationRequest request = LocationRequest.create ()
+                    .setPriority (LocationRequest.PRIORITY_HIGH_ACCURACY)
+                    .setInterval (powerPolicy.getIntervalMs ())
+                    .setFastestInterval (powerPolicy.getIntervalMs ())
+                    .setSmallestDisplacement (powerPolicy.getMinDistance ())
+                    .setMaxWaitTime (powerPolicy.getBatchLatencyMs ());
+            fusedClient.requestLocationUpdates (request, fusedCallback, ingestHandler.getLooper ());
+        } else {
+            locationManager.requestLocationUpdates (LocationManager.GPS_PROVIDER,
+                    powerPolicy.getIntervalMs (), powerPolicy.getMinDistance (), this,
+                    ingestHandler.getLooper ());
         }
     }
 
+    private void removeUpdates ()
+    {
+        if (fusedClient != null) {
+            fusedClient.removeLocationUpdates (fusedCallback);
+        } else {
+            locationManager.removeUpdates (this);
+        }
+    }
+
+    /**
+     * Fused provider delivers a batch of one or more fixes, oldest first.
+     */
+    private final LocationCallback fusedCallback = new LocationCallback () {
+        @Override
+        public void onLocationResult (LocationResult result)
+        {
+            List<Location> locs = result.getLocations ();
+            int n = locs.size ();
+            for (int i = 0; i < n; i ++) {
+                onLocationChanged (locs.get (i));
+            }
+        }
+    };
+
+    @Override  // LocationSource
+    public void setStatusListener (final LocationSource.Listener gsl)
+    {
+        ingestHandler.post (new Runnable () {
+            @SuppressLint("MissingPermission")
+            @Override
+            public void run ()
+            {
+                statusListener = gsl;
+                if (gsl == null) {
+                    locationManager.unregisterGnssStatusCallback (gnssStatusCallback);
+                } else if (running) {
+                    locationManager.registerGnssStatusCallback (gnssStatusCallback, ingestHandler);
+                }
+            }
+        });
+    }
+
     @Override  // LocationListener
     public void onLocationChanged (Location location)
     {
         statusListener.onLocationReceived (location);
+        if (trackRecorder != null) {
+            trackRecorder.append (location.getTime (), location.getLatitude (), location.getLongitude (),
+                    location.hasAltitude () ? location.getAltitude () : Double.NaN,
+                    location.hasSpeed () ? location.getSpeed () : Float.NaN,
+                    location.hasBearing () ? location.getBearing () : Float.NaN,
+                    location.hasAccuracy () ? location.getAccuracy () : Float.NaN);
+        }
+        if (location.hasSpeed () && powerPolicy.onSpeed (location.getSpeed (), location.getTime ())) {
+            reRequestUpdates ();
+        }
     }
 
     @Override  // LocationListener
@@ -113,7 +302,25 @@ public class InternalGps implements LocationListener {
         @Override
         public void onSatelliteStatusChanged (GnssStatus status)
         {
-            statusListener.onStatusReceived (status);
+            SatSnapshot sats = gnssSats;
+            sats.clear ();
+            boolean hasCarrier = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
+            int n = status.getSatelliteCount ();
+            for (int i = 0; i < n; i ++) {
+                // hasAlmanac() and hasEphemeris() seem to always return false
+                float carrier = (hasCarrier && status.hasCarrierFrequencyHz (i)) ?
+                        status.getCarrierFrequencyHz (i) : 0.0F;
+                sats.add (status.getConstellationType (i), status.getSvid (i),
+                        status.getCn0DbHz (i), status.getElevationDegrees (i),
+                        status.getAzimuthDegrees (i), status.usedInFix (i), carrier);
+            }
+            statusListener.onSatellitesReceived (sats);
+        }
+
+        @Override
+        public void onFirstFix (int ttffMillis)
+        {
+            statusListener.onFirstFix (ttffMillis);
         }
     };
 }
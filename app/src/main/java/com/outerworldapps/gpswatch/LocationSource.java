@@ -0,0 +1,81 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import android.location.Location;
+
+/**
+ * Something that supplies location fixes, satellite status and possibly compass sensor samples.
+ * The methods here are called on the UI thread, the listener is called on the ingest thread.
+ */
+public interface LocationSource {
+
+    /**
+     * Receives what the source produces, always called on the ingest thread.
+     */
+    interface Listener {
+        void onLocationReceived (Location loc);
+
+        /**
+         * @param sats = satellite status, only valid during the call, null if source stopped
+         */
+        void onSatellitesReceived (SatSnapshot sats);
+
+        /**
+         * Receiver got its first fix since starting (only if the source knows).
+         * @param ttffMs = time to first fix, ms
+         */
+        void onFirstFix (int ttffMs);
+
+        /**
+         * @param type = Sensor.TYPE_*
+         * @param values = sensor values, only valid during the call
+         * @param timestamp = sample time, ns
+         */
+        void onSensorSample (int type, float[] values, long timestamp);
+    }
+
+    /**
+     * Start producing data.
+     * @return false if it can't start yet (eg, waiting for permission)
+     */
+    boolean startSensor ();
+
+    void stopSensor ();
+
+    void setStatusListener (Listener listener);
+
+    /**
+     * Whether this source supplies compass sensor samples
+     * so the real sensors should not be used.
+     */
+    boolean suppliesSensors ();
+
+    /**
+     * Entering or leaving ambient mode.
+     */
+    void setAmbient (boolean ambient);
+
+    /**
+     * Screen (or at least our activity) became visible or invisible.
+     */
+    void setScreenOn (boolean on);
+}
@@ -22,14 +22,20 @@ package com.outerworldapps.gpswatch;
 
 import android.annotation.SuppressLint;
 import android.content.SharedPreferences;
+import android.graphics.Color;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.support.wearable.activity.WearableActivity;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.Toast;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.LinkedList;
 
 import androidx.annotation.NonNull;
@@ -38,10 +44,21 @@ public class MainActivity extends WearableActivity {
     public final static String TAG = "GPSWatch";
 
     private final static int agreeDays = 60;  // agreement good for this many days
+    private final static int nearestWpts = 3; // number of nearest waypoints shown
+    private final static int npages = 5;      // sats, map, trip, signal, metrics
 
+    private boolean firstFrameDrawn;
     private boolean gpsEnabled;
+    private boolean started;
+    private GpsDisplay gpsDisplay;
+    private GpsStatusModel gpsStatusModel;
+    private HandlerThread ingestThread;
+    private int currentPage;
+    private View satsPageView;
+    private View[] pageViews;
+    public  Handler ingestHandler;  // GPS and sensor callbacks and their processing
     public  Handler myHandler;
-    public  InternalGps internalGps;
+    public  LocationSource locationSource;
 
     @Override
     protected void onCreate (Bundle savedInstanceState)
@@ -83,7 +100,10 @@ public class MainActivity extends WearableActivity {
     {
         myHandler = new Handler ();
 
-        internalGps = new InternalGps (this);
+        // GPS, satellite status and compass callbacks all get processed on this thread
+        ingestThread = new HandlerThread ("GpsIngest");
+        ingestThread.start ();
+        ingestHandler = new Handler (ingestThread.getLooper ());
 
         // enables Always-on
         setAmbientEnabled ();
@@ -92,28 +112,213 @@ public class MainActivity extends WearableActivity {
         finishInitializing ();
     }
 
+    /**
+     * Use the internal GPS unless there is a replay.txt file in the external files directory,
+     * in which case play it back at replaySpeed times real time,
+     * or a Bluetooth receiver address has been set in the btGpsAddress preference.
+     */
+    private LocationSource createLocationSource ()
+    {
+        SharedPreferences prefs = getPreferences (MODE_PRIVATE);
+        File dir = getExternalFilesDir (null);
+        if (dir != null) {
+            File replay = new File (dir, "replay.txt");
+            if (replay.exists ()) {
+                float speed = prefs.getFloat ("replaySpeed", 1.0F);
+                try {
+                    LocationSource ls = new ReplaySource (replay, ingestHandler, speed, true);
+                    showToast ("replaying " + replay.getName ());
+                    return ls;
+                } catch (IOException ioe) {
+                    Log.w (TAG, "error reading " + replay, ioe);
+                    showToastLong ("error reading " + replay.getName ());
+                }
+            }
+        }
+        String btaddr = prefs.getString ("btGpsAddress", "");
+        if ((btaddr != null) && ! btaddr.isEmpty ()) {
+            return new BluetoothGps (this, ingestHandler, btaddr);
+        }
+        return new InternalGps (this, ingestHandler);
+    }
+
     @Override
     public void onDestroy ()
     {
         deactivateGPS ();
+        if (gpsStatusModel != null) gpsStatusModel.Shutdown ();
+        if (ingestThread != null) ingestThread.quitSafely ();
         super.onDestroy ();
     }
 
     /**
-     * Finish initializing everything.
+     * Finish initializing enough to draw the first frame,
+     * showing the warm start fix and satellites as stale.
+     * The location source and sensors are started after the first frame.
      */
+    @SuppressLint("InflateParams")
     public void finishInitializing ()
     {
+        // renderThread preference selects drawing on a separate thread via SurfaceView
+        boolean renderThread = getPreferences (MODE_PRIVATE).getBoolean ("renderThread", false);
         LayoutInflater layoutInflater = getLayoutInflater ();
-        @SuppressLint("InflateParams")
-        View satsPageView = layoutInflater.inflate (R.layout.sats_page, null);
-        GpsStatusView gpsStatusView = satsPageView.findViewById (R.id.gpsStatusView);
+        satsPageView = layoutInflater.inflate (renderThread ? R.layout.sats_page_surface : R.layout.sats_page, null);
+        gpsDisplay = satsPageView.findViewById (R.id.gpsStatusView);
+
+        gpsStatusModel = new GpsStatusModel (this, ingestHandler);
+        gpsStatusModel.setDisplay (gpsDisplay);
+        gpsStatusModel.loadWarmStart (new File (getFilesDir (), "warmstart.bin"));
 
-        gpsStatusView.Startup ();
-        internalGps.setStatusListener (gpsStatusView);
-        setContentView (satsPageView);
+        // only the sats page is built now, the others when first shown
+        pageViews = new View[npages];
+        pageViews[0] = satsPageView;
+        satsPageView.setOnClickListener (nextPageClick);
+        showPage (0);
 
-        activateGPS ();
+        getWindow ().getDecorView ().getViewTreeObserver ().addOnDrawListener (firstDrawListener);
+    }
+
+    /**
+     * Start everything else once the first frame is drawn.
+     * Startup time is recorded by DialRenderer when it first draws the warm start state,
+     * this first frame may still be blank.
+     * Listeners can't be removed while being called so do that in startSensors.
+     */
+    private final ViewTreeObserver.OnDrawListener firstDrawListener = new ViewTreeObserver.OnDrawListener () {
+        @Override
+        public void onDraw ()
+        {
+            if (firstFrameDrawn) return;
+            firstFrameDrawn = true;
+            myHandler.post (startSensors);
+        }
+    };
+
+    /**
+     * First frame is up, start the location source and compass.
+     */
+    private final Runnable startSensors = new Runnable () {
+        @Override
+        public void run ()
+        {
+            getWindow ().getDecorView ().getViewTreeObserver ().removeOnDrawListener (firstDrawListener);
+            locationSource = createLocationSource ();
+            gpsStatusModel.Startup (! locationSource.suppliesSensors ());
+            locationSource.setStatusListener (gpsStatusModel);
+            openWaypoints ();
+            activateGPS ();
+        }
+    };
+
+    /**
+     * Show nearest waypoints if there is a waypoints.bin file in the external files directory.
+     * If the waypointTarget preference is set, show just that waypoint.
+     */
+    private void openWaypoints ()
+    {
+        File dir = getExternalFilesDir (null);
+        if (dir == null) return;
+        File file = new File (dir, "waypoints.bin");
+        if (! file.exists ()) return;
+        String target = getPreferences (MODE_PRIVATE).getString ("waypointTarget", "");
+        gpsStatusModel.openWaypoints (file, nearestWpts, (target == null) ? "" : target.trim ());
+    }
+
+    /**
+     * Tapping a page goes on to the next page.
+     */
+    private final View.OnClickListener nextPageClick = new View.OnClickListener () {
+        @Override
+        public void onClick (View v)
+        {
+            showPage (currentPage + 1);
+        }
+    };
+
+    /**
+     * Display the given page, wrapping around at the end.
+     * Pages other than the sats page are built the first time they are shown.
+     */
+    private void showPage (int page)
+    {
+        currentPage = page % npages;
+        View pageView = pageViews[currentPage];
+        if (pageView == null) {
+            switch (currentPage) {
+                case 1:  pageView = new MapView (this, gpsStatusModel); break;
+                case 2:  pageView = new TripView (this, gpsStatusModel); break;
+                case 3:  pageView = new SignalView (this, gpsStatusModel); break;
+                default: pageView = new MetricsView (this); break;
+            }
+            pageView.setOnClickListener (nextPageClick);
+            pageViews[currentPage] = pageView;
+        }
+        setContentView (pageView);
+        updateCompassVisible ();
+    }
+
+    /**
+     * Compass only needs to run while the sky plot page is showing.
+     */
+    private void updateCompassVisible ()
+    {
+        if (gpsStatusModel != null) gpsStatusModel.setVisible (started && (currentPage == 0));
+    }
+
+    @Override
+    protected void onStart ()
+    {
+        super.onStart ();
+        started = true;
+        updateCompassVisible ();
+        if (locationSource != null) locationSource.setScreenOn (true);
+    }
+
+    @Override
+    protected void onStop ()
+    {
+        started = false;
+        updateCompassVisible ();
+        if (gpsStatusModel != null) gpsStatusModel.saveWarmStart ();
+        if (locationSource != null) locationSource.setScreenOn (false);
+        super.onStop ();
+    }
+
+    @Override  // WearableActivity
+    public void onEnterAmbient (Bundle ambientDetails)
+    {
+        super.onEnterAmbient (ambientDetails);
+        if (gpsDisplay != null) {
+            boolean lowBit = ambientDetails.getBoolean (EXTRA_LOWBIT_AMBIENT, false);
+            boolean burnIn = ambientDetails.getBoolean (EXTRA_BURN_IN_PROTECTION, false);
+            gpsDisplay.setAmbient (true, lowBit, burnIn);
+            satsPageView.setBackgroundColor (Color.BLACK);
+        }
+        if (gpsStatusModel != null) gpsStatusModel.setAmbient (true);
+        if (locationSource != null) locationSource.setAmbient (true);
+    }
+
+    /**
+     * About once a minute while in ambient mode.
+     */
+    @Override  // WearableActivity
+    public void onUpdateAmbient ()
+    {
+        super.onUpdateAmbient ();
+        if (gpsDisplay != null) gpsDisplay.updateAmbient ();
+        if (gpsStatusModel != null) gpsStatusModel.updateAmbient ();
+    }
+
+    @Override  // WearableActivity
+    public void onExitAmbient ()
+    {
+        super.onExitAmbient ();
+        if (gpsDisplay != null) {
+            gpsDisplay.setAmbient (false, false, false);
+            satsPageView.setBackgroundResource (R.color.dark_grey);
+        }
+        if (gpsStatusModel != null) gpsStatusModel.setAmbient (false);
+        if (locationSource != null) locationSource.setAmbient (false);
     }
 
     /**
@@ -122,8 +327,8 @@ public class MainActivity extends WearableActivity {
      */
     private void activateGPS ()
     {
-        if (! gpsEnabled) {
-            if (! internalGps.startSensor ()) return;
+        if (! gpsEnabled && (locationSource != null)) {
+            if (! locationSource.startSensor ()) return;
             showToast ("turned GPS on");
             gpsEnabled = true;
         }
@@ -136,7 +341,7 @@ public class MainActivity extends WearableActivity {
     {
         if (gpsEnabled) {
             showToast ("turning GPS off");
-            internalGps.stopSensor ();
+            locationSource.stopSensor ();
             gpsEnabled = false;
         }
     }
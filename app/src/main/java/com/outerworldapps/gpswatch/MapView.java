@@ -0,0 +1,280 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Moving map page, north up and centred on the current position.
+ * Tiles come from tiles.pack (see TilePack) in the app's external files directory,
+ * without it the breadcrumbs and own position are drawn on a blank background.
+ * The pack, tile cache and loader thread only exist while the page is showing.
+ * The position is extrapolated along the track to each frame so the map pans smoothly
+ * between fixes.  The breadcrumb track is drawn from a path that is only rebuilt
+ * when the track or zoom changes, panning just translates it.
+ * Long-press steps the zoom level.
+ */
+public class MapView
+        extends View
+        implements Runnable, View.OnLongClickListener {
+    private final static long MAXEXTRAP = 10000;     // don't extrapolate past this many ms after fix
+    private final static float MOVINGSPEED = 0.5F;   // m/s, redraw often when faster than this
+    private final static double M_PER_DEG = 6371000.0 * Math.PI / 180.0;
+    private final static int NOPACKTILESIZE = 256;   // scale breadcrumbs as if tiles this size when no pack
+
+    private double crumbOriginX;    // world pixel of first breadcrumb, crumbPath is relative to it
+    private double crumbOriginY;
+    private int crumbTileSize;      // tile size crumbPath was built for
+    private int crumbVersion = -1;  // breadcrumbs version crumbPath was built from
+    private int crumbZoom = -1;     // zoom crumbPath was built for
+    private int zoom;
+    private MainActivity mainActivity;
+    private Paint crumbPaint = new Paint ();
+    private Paint shipPaint = new Paint ();
+    private Paint textPaint = new Paint ();
+    private Path crumbPath = new Path ();
+    private Path shipPath = new Path ();
+    private TileCache tileCache;
+    private TileLoader tileLoader;
+    private TilePack tilePack;
+    private TripleBuffer<MapState> mapStates;
+
+    public MapView (MainActivity ma, GpsStatusModel gsm)
+    {
+        super (ma);
+        mainActivity = ma;
+        mapStates = gsm.getMapStates ();
+        zoom = ma.getPreferences (MainActivity.MODE_PRIVATE).getInt ("mapZoom", 15);
+        setBackgroundColor (Color.BLACK);
+        textPaint.setColor (Color.WHITE);
+        textPaint.setTextSize (20.0F);
+        textPaint.setTextAlign (Paint.Align.CENTER);
+        crumbPaint.setColor (Color.RED);
+        crumbPaint.setStyle (Paint.Style.STROKE);
+        crumbPaint.setStrokeWidth (3.0F);
+        crumbPaint.setStrokeJoin (Paint.Join.ROUND);
+        shipPaint.setColor (Color.MAGENTA);
+        shipPaint.setStyle (Paint.Style.FILL_AND_STROKE);
+        shipPaint.setStrokeWidth (2.0F);
+        shipPath.moveTo (0.0F, -16.0F);
+        shipPath.lineTo (9.0F, 12.0F);
+        shipPath.lineTo (0.0F, 6.0F);
+        shipPath.lineTo (-9.0F, 12.0F);
+        shipPath.close ();
+        setOnLongClickListener (this);
+    }
+
+    @Override
+    protected void onAttachedToWindow ()
+    {
+        super.onAttachedToWindow ();
+        openPack ();
+        post (this);
+    }
+
+    @Override
+    protected void onDetachedFromWindow ()
+    {
+        removeCallbacks (this);
+        closePack ();
+        super.onDetachedFromWindow ();
+    }
+
+    private void openPack ()
+    {
+        File dir = mainActivity.getExternalFilesDir (null);
+        if (dir == null) return;
+        File file = new File (dir, "tiles.pack");
+        if (! file.exists ()) return;
+        try {
+            tilePack = new TilePack (file);
+        } catch (IOException ioe) {
+            Log.w (MainActivity.TAG, "error opening " + file, ioe);
+            mainActivity.showToastLong ("error opening " + file.getName ());
+            return;
+        }
+        zoom = Math.max (tilePack.getMinZoom (), Math.min (tilePack.getMaxZoom (), zoom));
+        tileCache  = new TileCache (TileCache.slotsForHeap (tilePack.getTileSize (), 16, 48));
+        tileLoader = new TileLoader (tilePack, tileCache, this);
+    }
+
+    private void closePack ()
+    {
+        // loader must be done reading before the pack is closed under it
+        if (tileLoader != null) tileLoader.quit ();
+        if (tilePack != null) {
+            try {
+                tilePack.close ();
+            } catch (IOException ignored) {
+            }
+        }
+        tileLoader = null;
+        tileCache  = null;
+        tilePack   = null;
+    }
+
+    /**
+     * Refresh often while moving so the map pans smoothly, else once a second.
+     */
+    @Override  // Runnable
+    public void run ()
+    {
+        invalidate ();
+        boolean moving = mapStates.getFront ().speed > MOVINGSPEED;
+        postDelayed (this, mainActivity.isAmbient () ? 60000 : moving ? 100 : 1000);
+    }
+
+    @Override
+    protected void onDraw (Canvas canvas)
+    {
+        int width  = getWidth ();
+        int height = getHeight ();
+        mapStates.update ();
+        MapState ms = mapStates.getFront ();
+        if (! ms.haveFix) {
+            canvas.drawText ("waiting for fix", width / 2.0F, height / 2.0F, textPaint);
+            return;
+        }
+
+        // extrapolate along track to now
+        double lat = ms.lat;
+        double lon = ms.lon;
+        float track = ms.track;
+        if (! Float.isNaN (track) && (ms.speed > 0.0F)) {
+            long dt = Math.min (SystemClock.elapsedRealtime () - ms.elapsedMs, MAXEXTRAP);
+            double dist = ms.speed * Math.max (dt, 0) / 1000.0;
+            double rad = Math.toRadians (track);
+            lat += dist * Math.cos (rad) / M_PER_DEG;
+            lon += dist * Math.sin (rad) / (M_PER_DEG * Math.max (Math.cos (Math.toRadians (lat)), 0.01));
+        }
+        int tileSize = (tilePack == null) ? NOPACKTILESIZE : tilePack.getTileSize ();
+        double cx = TilePack.lonToTileX (lon, zoom) * tileSize;
+        double cy = TilePack.latToTileY (lat, zoom) * tileSize;
+        if (tilePack != null) {
+            tileLoader.setView (lat, lon, zoom, width, height, track, ms.speed);
+            drawTiles (canvas, cx, cy, tileSize, width, height);
+        } else {
+            canvas.drawText ("no tiles.pack", width / 2.0F, height - textPaint.getTextSize () * 2.0F, textPaint);
+        }
+
+        // breadcrumbs, then on to the latest fix
+        TrackSimplifier bc = ms.breadcrumbs;
+        int ncrumbs = bc.getCount ();
+        if (ncrumbs > 0) {
+            if ((bc.getVersion () != crumbVersion) || (zoom != crumbZoom) || (tileSize != crumbTileSize)) {
+                buildCrumbPath (bc, tileSize);
+            }
+            canvas.save ();
+            canvas.translate ((float) (crumbOriginX - cx + width / 2.0), (float) (crumbOriginY - cy + height / 2.0));
+            canvas.drawPath (crumbPath, crumbPaint);
+            canvas.restore ();
+            float ex = (float) (TilePack.lonToTileX (bc.getLon (ncrumbs - 1), zoom) * tileSize - cx + width / 2.0);
+            float ey = (float) (TilePack.latToTileY (bc.getLat (ncrumbs - 1), zoom) * tileSize - cy + height / 2.0);
+            float lx = (float) (TilePack.lonToTileX (bc.getLastLon (), zoom) * tileSize - cx + width / 2.0);
+            float ly = (float) (TilePack.latToTileY (bc.getLastLat (), zoom) * tileSize - cy + height / 2.0);
+            canvas.drawLine (ex, ey, lx, ly, crumbPaint);
+        }
+
+        // own position pointing along track
+        canvas.save ();
+        canvas.translate (width / 2.0F, height / 2.0F);
+        if (! Float.isNaN (track)) canvas.rotate (track);
+        canvas.drawPath (shipPath, shipPaint);
+        canvas.restore ();
+    }
+
+    /**
+     * Draw the tiles covering the view.
+     * @param cx = world pixel at centre of view
+     * @param cy = world pixel at centre of view
+     */
+    private void drawTiles (Canvas canvas, double cx, double cy, int tileSize, int width, int height)
+    {
+        int ntiles = 1 << zoom;
+        int x0 = (int) Math.floor ((cx - width  / 2.0) / tileSize);
+        int x1 = (int) Math.floor ((cx + width  / 2.0) / tileSize);
+        int y0 = (int) Math.max (0, Math.floor ((cy - height / 2.0) / tileSize));
+        int y1 = (int) Math.min (ntiles - 1, Math.floor ((cy + height / 2.0) / tileSize));
+        int lookups = 0;
+        int hits = 0;
+        tileCache.newFrame ();
+        for (int ty = y0; ty <= y1; ty ++) {
+            float top = (float) (ty * (double) tileSize - cy + height / 2.0);
+            for (int tx = x0; tx <= x1; tx ++) {
+                lookups ++;
+                Bitmap bm = tileCache.get (TilePack.key (zoom, tx & (ntiles - 1), ty));
+                if (bm == null) continue;
+                hits ++;
+                float left = (float) (tx * (double) tileSize - cx + width / 2.0);
+                canvas.drawBitmap (bm, left, top, null);
+            }
+        }
+        if (lookups > 0) Metrics.tileHitPct.record (hits * 100 / lookups);
+    }
+
+    /**
+     * Rebuild the breadcrumb path in world pixels relative to its first point,
+     * which keeps the coordinates small enough for float precision.
+     */
+    private void buildCrumbPath (TrackSimplifier bc, int tileSize)
+    {
+        crumbPath.rewind ();
+        crumbOriginX = TilePack.lonToTileX (bc.getLon (0), zoom) * tileSize;
+        crumbOriginY = TilePack.latToTileY (bc.getLat (0), zoom) * tileSize;
+        int n = bc.getCount ();
+        for (int i = 0; i < n; i ++) {
+            float x = (float) (TilePack.lonToTileX (bc.getLon (i), zoom) * tileSize - crumbOriginX);
+            float y = (float) (TilePack.latToTileY (bc.getLat (i), zoom) * tileSize - crumbOriginY);
+            if (i == 0) crumbPath.moveTo (x, y);
+            else crumbPath.lineTo (x, y);
+        }
+        crumbVersion = bc.getVersion ();
+        crumbZoom = zoom;
+        crumbTileSize = tileSize;
+    }
+
+    /**
+     * Step to next zoom level, wrapping around to the pack's minimum.
+     */
+    @Override  // OnLongClickListener
+    public boolean onLongClick (View v)
+    {
+        if (tilePack == null) return false;
+        zoom = (zoom < tilePack.getMaxZoom ()) ? zoom + 1 : tilePack.getMinZoom ();
+        SharedPreferences.Editor editor = mainActivity.getPreferences (MainActivity.MODE_PRIVATE).edit ();
+        editor.putInt ("mapZoom", zoom);
+        editor.apply ();
+        mainActivity.showToast ("zoom " + zoom);
+        invalidate ();
+        return true;
+    }
+}
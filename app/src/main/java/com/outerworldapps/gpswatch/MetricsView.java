@@ -0,0 +1,77 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import android.graphics.Canvas;
+import android.view.View;
+
+import java.io.PrintWriter;
+
+/**
+ * Debug page showing the performance metrics.
+ * Long-press dumps them to logcat and to metrics.txt in the app's external files directory.
+ */
+public class MetricsView extends PageView {
+
+    public MetricsView (MainActivity ma)
+    {
+        super (ma, 13.0F);
+    }
+
+    @Override
+    protected void onDraw (Canvas canvas)
+    {
+        // text is too long for the screen, so split each summary at its spaces
+        float textHeight = textPaint.getTextSize ();
+        float x = getWidth () / 8.0F;
+        float y = getHeight () / 8.0F + textHeight;
+        int n = Metrics.getLineCount ();
+        for (int i = 0; i < n; i ++) {
+            line.setLength (0);
+            Metrics.appendLine (line, i);
+            int len = line.length ();
+            int brk = line.indexOf (" p50=");
+            if (brk < 0) brk = len;
+            canvas.drawText (line, 0, brk, x, y, textPaint);
+            y += textHeight;
+            if (brk < len) {
+                canvas.drawText (line, brk + 1, len, x + textHeight, y, textPaint);
+                y += textHeight;
+            }
+        }
+    }
+
+    /**
+     * Dump metrics to logcat and file.
+     */
+    @Override  // OnLongClickListener
+    public boolean onLongClick (View v)
+    {
+        dumpToFile ("metrics", "metrics at " + System.currentTimeMillis ());
+        return true;
+    }
+
+    @Override  // PageView
+    protected void dump (PrintWriter pw)
+    {
+        Metrics.dump (pw);
+    }
+}
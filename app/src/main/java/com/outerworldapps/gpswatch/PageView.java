@@ -0,0 +1,128 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.Log;
+import android.view.View;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Base for the text pages (trip, signal, metrics).
+ * White text on black, redrawn once a second while attached, long-press handled by the page.
+ */
+public abstract class PageView
+        extends View
+        implements Runnable, View.OnLongClickListener {
+
+    protected MainActivity mainActivity;
+    protected Paint textPaint = new Paint ();
+    protected StringBuilder line = new StringBuilder ();
+
+    /**
+     * @param ma = activity
+     * @param textSize = text size, pixels
+     */
+    protected PageView (MainActivity ma, float textSize)
+    {
+        super (ma);
+        mainActivity = ma;
+        setBackgroundColor (Color.BLACK);
+        textPaint.setColor (Color.WHITE);
+        textPaint.setTextSize (textSize);
+        textPaint.setTextAlign (Paint.Align.LEFT);
+        setOnLongClickListener (this);
+    }
+
+    @Override
+    protected void onAttachedToWindow ()
+    {
+        super.onAttachedToWindow ();
+        post (this);
+    }
+
+    @Override
+    protected void onDetachedFromWindow ()
+    {
+        removeCallbacks (this);
+        super.onDetachedFromWindow ();
+    }
+
+    /**
+     * Refresh once a second while showing.
+     */
+    @Override  // Runnable
+    public void run ()
+    {
+        invalidate ();
+        postDelayed (this, 1000);
+    }
+
+    /**
+     * Draw the line being built and clear it for the next one.
+     * @return y of the next line
+     */
+    protected float drawLine (Canvas canvas, float x, float y)
+    {
+        canvas.drawText (line, 0, line.length (), x, y, textPaint);
+        line.setLength (0);
+        return y + textPaint.getTextSize ();
+    }
+
+    /**
+     * Write everything the page knows for dumpToFile (), pages that can be dumped override this.
+     */
+    protected void dump (PrintWriter pw)
+    { }
+
+    /**
+     * Dump the page to logcat and append it to <name>.txt in the app's external files directory.
+     * @param name = logcat tag, file name and toast text
+     * @param header = line written to the file before the dump
+     */
+    protected void dumpToFile (String name, String header)
+    {
+        StringWriter sw = new StringWriter ();
+        dump (new PrintWriter (sw));
+        for (String s : sw.toString ().split ("\n")) {
+            Log.i (MainActivity.TAG, name + ": " + s);
+        }
+
+        File dir = mainActivity.getExternalFilesDir (null);
+        if (dir == null) dir = mainActivity.getFilesDir ();
+        File file = new File (dir, name + ".txt");
+        try (PrintWriter pw = new PrintWriter (new FileWriter (file, true))) {
+            pw.println (header);
+            dump (pw);
+            mainActivity.showToast (name + " dumped to " + file.getName ());
+        } catch (IOException ioe) {
+            Log.w (MainActivity.TAG, "error writing " + file, ioe);
+            mainActivity.showToastLong ("error writing " + file.getName ());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import android.view.Choreographer;
+import android.view.View;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coalesce redraw requests for a view so it is drawn at most once per vsync,
+ * and no more often than the frame rate cap for the current (interactive or ambient) mode.
+ * Callers mark what part of the display changed, the view takes the dirty bits when it draws.
+ * Changes can be marked from any thread, the view is always invalidated on its UI thread.
+ */
+public class RenderScheduler implements Choreographer.FrameCallback {
+    public final static int DIRTY_HEADING = 1;   // compass heading
+    public final static int DIRTY_SKY     = 2;   // satellite sky plot
+    public final static int DIRTY_TRACK   = 4;   // GPS track triangle
+    public final static int DIRTY_TIME    = 8;   // GPS time string
+    public final static int DIRTY_WPTS    = 16;  // waypoint bearings and distances
+
+    private AtomicBoolean posted = new AtomicBoolean ();
+    private AtomicInteger dirty = new AtomicInteger ();
+    private Choreographer choreographer;
+    private volatile boolean ambient;
+    private long ambientIntervalNs;
+    private long interactiveIntervalNs;
+    private long lastDrawNs;
+    private View view;
+
+    /**
+     * Must be created on the view's UI thread.
+     */
+    public RenderScheduler (View view)
+    {
+        this.view = view;
+        choreographer = Choreographer.getInstance ();
+        setFrameRateCaps (30.0F, 1.0F);
+    }
+
+    /**
+     * Set maximum frames per second for each mode.
+     */
+    public void setFrameRateCaps (float interactiveHz, float ambientHz)
+    {
+        interactiveIntervalNs = (long) (1.0E9 / interactiveHz);
+        ambientIntervalNs     = (long) (1.0E9 / ambientHz);
+    }
+
+    public void setAmbient (boolean amb)
+    {
+        ambient = amb;
+    }
+
+    /**
+     * Something visible changed, schedule a redraw.
+     * @param bits = DIRTY_* bits of what changed
+     */
+    public void markDirty (int bits)
+    {
+        int old;
+        do old = dirty.get ();
+        while (! dirty.compareAndSet (old, old | bits));
+        if (posted.compareAndSet (false, true)) {
+            choreographer.postFrameCallback (this);
+        }
+    }
+
+    /**
+     * View is drawing, get what changed since last draw and clear it.
+     */
+    public int takeDirty ()
+    {
+        return dirty.getAndSet (0);
+    }
+
+    /**
+     * Vsync, invalidate the view if something changed and the cap allows it.
+     * Otherwise wait for the remainder of the frame interval.
+     */
+    @Override  // FrameCallback
+    public void doFrame (long frameTimeNanos)
+    {
+        posted.set (false);
+        if (dirty.get () == 0) return;
+        long interval = ambient ? ambientIntervalNs : interactiveIntervalNs;
+        long remaining = lastDrawNs + interval - frameTimeNanos;
+        if (remaining > 0) {
+            if (posted.compareAndSet (false, true)) {
+                choreographer.postFrameCallbackDelayed (this, remaining / 1000000);
+            }
+            return;
+        }
+        lastDrawNs = frameTimeNanos;
+        view.invalidate ();
+    }
+}
@@ -0,0 +1,311 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import android.hardware.Sensor;
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Replay recorded fixes, satellite status and compass samples from a file,
+ * in real time or at a multiple of real time.
+ *
+ * File format, one event per line, times ascending:
+ *   # comment
+ *   <ms> L <lat> <lon> [<alt> [<speed> [<bearing> [<accuracy>]]]]
+ *   <ms> S <constellation>,<svid>,<cn0>,<elevation>,<azimuth>,<used> ...
+ *   <ms> A <x> <y> <z>            accelerometer
+ *   <ms> M <x> <y> <z>            magnetometer
+ *   <ms> R <x> <y> <z> [<w>]      rotation vector
+ *
+ * Location values after lat/lon may be left off or given as - or nan if not available.
+ * When looping, each pass's location times carry on from the end of the previous pass.
+ *
+ * The whole file is parsed into primitive arrays up front so playback doesn't parse or allocate
+ * (other than the Location objects handed to the listener, same as the real thing).
+ */
+public class ReplaySource implements LocationSource, Runnable {
+    private final static int LOCFIELDS = 6;
+    private final static int SATFIELDS = 6;
+    private final static long LOOPGAP  = 1000;  // ms between end of one pass and start of next
+
+    private boolean loop;
+    private volatile boolean running;
+    private byte[] evTypes;          // 'L', 'S', 'A', 'M', 'R'
+    private double speedup;          // 1.0 = real time
+    private double[] evData;         // all events' values, NaN if not available
+    private Handler handler;
+    private int evCount;
+    private int nextEvent;           // next event to be delivered
+    private int[] evDataIdx;         // index in evData of each event's values
+    private int[] evDataLen;         // number of values for each event
+    private LocationSource.Listener statusListener;
+    private long baseUptime;         // uptime corresponding to baseEvTime
+    private long baseEvTime;         // event time corresponding to baseUptime
+    private long passOffset;         // added to location times so they keep going forward on each pass
+    private long[] evTimes;          // event time, ms
+    private SatSnapshot sats = new SatSnapshot (64);
+    private float[] sensorValues3 = new float[3];
+    private float[] sensorValues4 = new float[4];
+
+    /**
+     * @param file = recorded events
+     * @param ingest = handler of thread events are played back on
+     * @param speedup = playback speed, 1.0 = real time
+     * @param loop = start over at end of file
+     */
+    public ReplaySource (File file, Handler ingest, double speedup, boolean loop)
+            throws IOException
+    {
+        this.speedup = speedup;
+        this.loop    = loop;
+        handler      = ingest;
+        load (file);
+    }
+
+    private void load (File file)
+            throws IOException
+    {
+        int capev = 1024;
+        int capdata = 8192;
+        evTypes   = new byte[capev];
+        evTimes   = new long[capev];
+        evDataIdx = new int[capev];
+        evDataLen = new int[capev];
+        evData    = new double[capdata];
+        int ndata = 0;
+
+        try (BufferedReader br = new BufferedReader (new FileReader (file))) {
+            int lineno = 0;
+            for (String line; (line = br.readLine ()) != null;) {
+                lineno ++;
+                line = line.trim ();
+                if (line.isEmpty () || line.startsWith ("#")) continue;
+                String[] parts = line.split ("[\\s,]+");
+                if ((parts.length < 3) || (parts[1].length () != 1)) {
+                    throw new IOException (file.getName () + ":" + lineno + ": bad line");
+                }
+                char type = parts[1].charAt (0);
+                int nvals = parts.length - 2;
+                switch (type) {
+                    case 'L': if ((nvals < 2) || (nvals > LOCFIELDS)) nvals = -1; break;
+                    case 'S': if (nvals % SATFIELDS != 0) nvals = -1; break;
+                    case 'A':
+                    case 'M': if (nvals != 3) nvals = -1; break;
+                    case 'R': if ((nvals != 3) && (nvals != 4)) nvals = -1; break;
+                    default: nvals = -1; break;
+                }
+                if (nvals < 0) throw new IOException (file.getName () + ":" + lineno + ": bad event");
+
+                if (evCount == evTypes.length) {
+                    int newcap = evCount * 2;
+                    evTypes   = Arrays.copyOf (evTypes,   newcap);
+                    evTimes   = Arrays.copyOf (evTimes,   newcap);
+                    evDataIdx = Arrays.copyOf (evDataIdx, newcap);
+                    evDataLen = Arrays.copyOf (evDataLen, newcap);
+                }
+                while (ndata + nvals > evData.length) {
+                    evData = Arrays.copyOf (evData, evData.length * 2);
+                }
+                try {
+                    evTimes[evCount] = Long.parseLong (parts[0]);
+                    for (int i = 0; i < nvals; i ++) {
+                        evData[ndata+i] = parseValue (parts[i+2], (type == 'L') && (i >= 2));
+                    }
+                } catch (NumberFormatException nfe) {
+                    throw new IOException (file.getName () + ":" + lineno + ": bad number", nfe);
+                }
+                evTypes[evCount]   = (byte) type;
+                evDataIdx[evCount] = ndata;
+                evDataLen[evCount] = nvals;
+                evCount ++;
+                ndata += nvals;
+            }
+        }
+        if (evCount == 0) throw new IOException (file.getName () + ": no events");
+    }
+
+    /**
+     * Parse a number from the file.
+     * @param optional = value may be given as - or nan meaning not available
+     */
+    private static double parseValue (String str, boolean optional)
+    {
+        if (optional && (str.equals ("-") || str.equalsIgnoreCase ("nan"))) return Double.NaN;
+        double val = Double.parseDouble (str);
+        if (Double.isNaN (val) || Double.isInfinite (val)) throw new NumberFormatException (str);
+        return val;
+    }
+
+    @Override  // LocationSource
+    public boolean startSensor ()
+    {
+        if (! running) {
+            running = true;
+            handler.post (starter);
+        }
+        return true;
+    }
+
+    @Override  // LocationSource
+    public void stopSensor ()
+    {
+        running = false;
+        handler.removeCallbacks (starter);
+        handler.removeCallbacks (this);
+        handler.post (stopper);
+    }
+
+    @Override  // LocationSource
+    public void setStatusListener (final LocationSource.Listener listener)
+    {
+        handler.post (new Runnable () {
+            @Override
+            public void run ()
+            {
+                statusListener = listener;
+            }
+        });
+    }
+
+    private final Runnable starter = new Runnable () {
+        @Override
+        public void run ()
+        {
+            restart (0);
+        }
+    };
+
+    private final Runnable stopper = new Runnable () {
+        @Override
+        public void run ()
+        {
+            if (statusListener != null) {
+                statusListener.onSatellitesReceived (null);
+            }
+        }
+    };
+
+    @Override  // LocationSource
+    public boolean suppliesSensors ()
+    {
+        return true;
+    }
+
+    @Override  // LocationSource
+    public void setAmbient (boolean ambient)
+    { }
+
+    @Override  // LocationSource
+    public void setScreenOn (boolean on)
+    { }
+
+    /**
+     * Start playing from the given event.
+     */
+    private void restart (int ev)
+    {
+        // anything already played, shift this pass past the end of it
+        long gap = 0;
+        if (nextEvent > 0) {
+            passOffset += evTimes[evCount-1] - evTimes[0] + LOOPGAP;
+            gap = (long) (LOOPGAP / speedup);
+        }
+        nextEvent  = ev;
+        baseEvTime = evTimes[ev];
+        baseUptime = SystemClock.uptimeMillis () + gap;
+        handler.removeCallbacks (this);
+        handler.post (this);
+    }
+
+    /**
+     * Deliver all events that are due then schedule for the next one.
+     */
+    @Override  // Runnable
+    public void run ()
+    {
+        if (! running) return;
+        long now = SystemClock.uptimeMillis ();
+        while (true) {
+            if (nextEvent >= evCount) {
+                if (loop) restart (0);
+                return;
+            }
+            long due = baseUptime + (long) ((evTimes[nextEvent] - baseEvTime) / speedup);
+            if (due > now) {
+                handler.postAtTime (this, due);
+                return;
+            }
+            if (statusListener != null) deliver (nextEvent);
+            nextEvent ++;
+        }
+    }
+
+    private void deliver (int ev)
+    {
+        int idx = evDataIdx[ev];
+        int len = evDataLen[ev];
+        double[] d = evData;
+        switch (evTypes[ev]) {
+            case 'L': {
+                Location loc = new Location (LocationManager.GPS_PROVIDER);
+                loc.setTime (evTimes[ev] + passOffset);
+                loc.setElapsedRealtimeNanos (SystemClock.elapsedRealtimeNanos ());
+                loc.setLatitude (d[idx]);
+                loc.setLongitude (d[idx+1]);
+                if ((len > 2) && ! Double.isNaN (d[idx+2])) loc.setAltitude (d[idx+2]);
+                if ((len > 3) && ! Double.isNaN (d[idx+3])) loc.setSpeed ((float) d[idx+3]);
+                if ((len > 4) && ! Double.isNaN (d[idx+4])) loc.setBearing ((float) d[idx+4]);
+                if ((len > 5) && ! Double.isNaN (d[idx+5])) loc.setAccuracy ((float) d[idx+5]);
+                statusListener.onLocationReceived (loc);
+                break;
+            }
+            case 'S': {
+                sats.clear ();
+                for (int i = idx; i < idx + len; i += SATFIELDS) {
+                    sats.add ((int) d[i], (int) d[i+1], (float) d[i+2], (float) d[i+3], (float) d[i+4], d[i+5] != 0.0);
+                }
+                statusListener.onSatellitesReceived (sats);
+                break;
+            }
+            default: {
+                int type;
+                switch (evTypes[ev]) {
+                    case 'A': type = Sensor.TYPE_ACCELEROMETER; break;
+                    case 'M': type = Sensor.TYPE_MAGNETIC_FIELD; break;
+                    default:  type = Sensor.TYPE_ROTATION_VECTOR; break;
+                }
+                float[] values = (len == 4) ? sensorValues4 : sensorValues3;
+                for (int i = 0; i < len; i ++) values[i] = (float) d[idx+i];
+                statusListener.onSensorSample (type, values, SystemClock.elapsedRealtimeNanos ());
+                break;
+            }
+        }
+    }
+}
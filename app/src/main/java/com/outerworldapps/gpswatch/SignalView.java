@@ -0,0 +1,89 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import android.graphics.Canvas;
+import android.os.Build;
+import android.view.View;
+
+import java.io.PrintWriter;
+
+/**
+ * GNSS signal quality page, C/N0 summary per constellation and band over the last few minutes.
+ * Long-press dumps the full histograms to logcat and to signal.txt in the app's external files
+ * directory, tagged with the watch model so receivers can be compared.
+ */
+public class SignalView extends PageView {
+
+    private TripleBuffer<SignalStats> signalStates;
+
+    public SignalView (MainActivity ma, GpsStatusModel gsm)
+    {
+        super (ma, 13.0F);
+        signalStates = gsm.getSignalStates ();
+    }
+
+    @Override
+    protected void onDraw (Canvas canvas)
+    {
+        signalStates.update ();
+        SignalStats ss = signalStates.getFront ();
+        float textHeight = textPaint.getTextSize ();
+        float x = getWidth () / 8.0F;
+        float y = getHeight () / 8.0F + textHeight;
+
+        line.setLength (0);
+        line.append ("ttff ms ");
+        int ttff = ss.getLastTtffMs ();
+        if (ttff < 0) line.append ('-');
+        else line.append (ttff);
+        line.append (" (").append (ss.getWindowMs () / 60000).append (" min C/N0)");
+        y = drawLine (canvas, x, y);
+
+        for (int c = 0; c < SignalStats.NCONSTELS; c ++) {
+            if (ss.getConstellationCount (c) == 0) continue;
+            ss.appendConstellation (line, c);
+            y = drawLine (canvas, x, y);
+        }
+        for (int b = 0; b < SignalStats.NBANDS; b ++) {
+            if (ss.getBandCount (b) == 0) continue;
+            ss.appendBand (line, b);
+            y = drawLine (canvas, x, y);
+        }
+    }
+
+    /**
+     * Dump signal statistics to logcat and file.
+     */
+    @Override  // OnLongClickListener
+    public boolean onLongClick (View v)
+    {
+        dumpToFile ("signal", "signal at " + System.currentTimeMillis () + " on " +
+                Build.MANUFACTURER + " " + Build.MODEL + " " + Build.FINGERPRINT);
+        return true;
+    }
+
+    @Override  // PageView
+    protected void dump (PrintWriter pw)
+    {
+        signalStates.getFront ().dump (pw);
+    }
+}
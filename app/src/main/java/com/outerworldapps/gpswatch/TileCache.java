@@ -0,0 +1,143 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * Size-bounded cache of decoded map tiles, shared by the map view (drawing)
+ * and the tile loader thread (decoding).
+ * A fixed number of slots each hold one bitmap.  A new tile is decoded into the
+ * bitmap of the slot it evicts (inBitmap), so once the cache has filled,
+ * panning around doesn't allocate bitmap memory at all.
+ */
+public class TileCache {
+    private Bitmap[] bitmaps;
+    private BitmapFactory.Options options = new BitmapFactory.Options ();  // loader thread only
+    private TileLru lru;
+
+    public TileCache (int nslots)
+    {
+        bitmaps = new Bitmap[nslots];
+        lru = new TileLru (nslots);
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;  // tiles are opaque, half the memory of ARGB
+    }
+
+    /**
+     * Get number of slots that fit in a fraction of the heap.
+     * @param tileSize = tile size, pixels
+     */
+    public static int slotsForHeap (int tileSize, int minSlots, int maxSlots)
+    {
+        long budget = Runtime.getRuntime ().maxMemory () / 8;
+        long perTile = (long) tileSize * tileSize * 2;
+        return (int) Math.max (minSlots, Math.min (maxSlots, budget / perTile));
+    }
+
+    public int capacity ()
+    {
+        return lru.capacity ();
+    }
+
+    /**
+     * View: starting to draw a frame.
+     */
+    public synchronized void newFrame ()
+    {
+        lru.newFrame ();
+    }
+
+    /**
+     * View: get a tile to draw.
+     * The bitmap stays valid through the next frame.
+     * @return bitmap or null if not loaded
+     */
+    public synchronized Bitmap get (long key)
+    {
+        int slot = lru.get (key);
+        return (slot < 0) ? null : bitmaps[slot];
+    }
+
+    public synchronized long getHits ()
+    {
+        return lru.getHits ();
+    }
+
+    public synchronized long getMisses ()
+    {
+        return lru.getMisses ();
+    }
+
+    /**
+     * Loader: see if a tile is loaded or being loaded.
+     */
+    public synchronized boolean contains (long key)
+    {
+        return lru.contains (key);
+    }
+
+    /**
+     * Loader: reserve a slot to decode a tile into.
+     * @return slot or -1 if cache is full of recently drawn tiles
+     */
+    public synchronized int reserve (long key)
+    {
+        return lru.reserve (key);
+    }
+
+    /**
+     * Loader: decode a reserved tile.
+     * Not synchronized, the view can't see a slot while it is being loaded.
+     * @return false if the image couldn't be decoded
+     */
+    public boolean decode (int slot, byte[] data, int len)
+    {
+        Bitmap bm;
+        options.inBitmap = bitmaps[slot];
+        try {
+            bm = BitmapFactory.decodeByteArray (data, 0, len, options);
+        } catch (IllegalArgumentException iae) {
+            // old bitmap can't be reused for this image (different size), allocate a new one
+            options.inBitmap = null;
+            bm = BitmapFactory.decodeByteArray (data, 0, len, options);
+        }
+        options.inBitmap = null;
+        synchronized (this) {
+            if (bm == null) {
+                lru.abandon (slot);
+                return false;
+            }
+            bitmaps[slot] = bm;
+            lru.ready (slot);
+            return true;
+        }
+    }
+
+    /**
+     * Loader: give up on a reserved tile.
+     */
+    public synchronized void abandon (int slot)
+    {
+        lru.abandon (slot);
+    }
+}
@@ -0,0 +1,145 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reads and decodes map tiles on a background thread.
+ * The map view tells it what it is showing each frame, it loads the visible tiles
+ * first then the ones coming up along the direction of travel, and redraws the
+ * view when a visible tile arrives.
+ */
+public class TileLoader implements Runnable {
+    private final static float AHEADSECS = 60.0F;   // prefetch this far ahead along the track
+
+    private AtomicBoolean posted = new AtomicBoolean ();
+    private ByteBuffer readBuf;
+    private Handler handler;
+    private HandlerThread thread;
+    private TileCache cache;
+    private TilePack pack;
+    private TilePlanner planner;
+    private View view;
+    private volatile boolean quitting;
+
+    // latest view requested by the UI thread, guarded by this
+    private double reqLat;
+    private double reqLon;
+    private float reqSpeed;
+    private float reqTrack;
+    private int reqHeight;
+    private int reqWidth;
+    private int reqZoom;
+
+    public TileLoader (TilePack pack, TileCache cache, View view)
+    {
+        this.pack  = pack;
+        this.cache = cache;
+        this.view  = view;
+        readBuf = ByteBuffer.allocate (pack.getMaxLength ());
+        planner = new TilePlanner (cache.capacity () * 3 / 4);
+        thread  = new HandlerThread ("TileLoader");
+        thread.start ();
+        handler = new Handler (thread.getLooper ());
+    }
+
+    /**
+     * Stop the thread and wait for it, it finishes the tile it is on.
+     * Once this returns the pack is no longer being read and can be closed.
+     */
+    public void quit ()
+    {
+        quitting = true;
+        thread.quitSafely ();
+        boolean interrupted = false;
+        while (thread.isAlive ()) {
+            try {
+                thread.join ();
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread ().interrupt ();
+    }
+
+    /**
+     * View: this is what is being shown now.
+     * Called on the UI thread each frame.
+     */
+    public void setView (double lat, double lon, int zoom, int width, int height, float track, float speed)
+    {
+        synchronized (this) {
+            reqLat    = lat;
+            reqLon    = lon;
+            reqZoom   = zoom;
+            reqWidth  = width;
+            reqHeight = height;
+            reqTrack  = track;
+            reqSpeed  = speed;
+        }
+        if (posted.compareAndSet (false, true)) handler.post (this);
+    }
+
+    /**
+     * Load whatever is wanted for the latest view and isn't already cached.
+     * If the view changes meanwhile, this runs again with the new view.
+     */
+    @Override  // Runnable
+    public void run ()
+    {
+        posted.set (false);
+        synchronized (this) {
+            planner.plan (reqLat, reqLon, reqZoom, pack.getTileSize (), reqWidth, reqHeight,
+                    reqTrack, reqSpeed, AHEADSECS);
+        }
+        int n = planner.count;
+        for (int i = 0; (i < n) && ! posted.get () && ! quitting; i ++) {
+            long key = planner.getWanted (i);
+            if (cache.contains (key) || (pack.find (key) < 0)) continue;
+            int slot = cache.reserve (key);
+            if (slot < 0) break;
+            int len;
+            try {
+                len = pack.read (key, readBuf);
+            } catch (IOException ioe) {
+                Log.w (MainActivity.TAG, "error reading tile", ioe);
+                len = -1;
+            }
+            if (len < 0) {
+                cache.abandon (slot);
+                continue;
+            }
+            if (cache.decode (slot, readBuf.array (), len)) {
+                Metrics.tileLoads.mark (SystemClock.elapsedRealtime ());
+                if (i < planner.visibleCount) view.postInvalidate ();
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import android.graphics.Canvas;
+import android.view.View;
+
+/**
+ * Trip statistics page.
+ * Long-press starts a new trip.
+ */
+public class TripView extends PageView {
+    private final static double KT_PER_MPS = 3600.0 / 1852.0;
+    private final static double FT_PER_M   = 1.0 / 0.3048;
+
+    private GpsStatusModel gpsStatusModel;
+    private TripleBuffer<TripComputer> tripStates;
+
+    public TripView (MainActivity ma, GpsStatusModel gsm)
+    {
+        super (ma, 20.0F);
+        gpsStatusModel = gsm;
+        tripStates     = gsm.getTripStates ();
+    }
+
+    @Override
+    protected void onDraw (Canvas canvas)
+    {
+        tripStates.update ();
+        TripComputer trip = tripStates.getFront ();
+
+        float textHeight = textPaint.getTextSize ();
+        float x = getWidth () / 6.0F;
+        float y = getHeight () / 6.0F + textHeight;
+        if (! trip.isStarted ()) {
+            canvas.drawText ("waiting for fix", x, y, textPaint);
+            return;
+        }
+
+        line.setLength (0);
+        line.append ("to last fix ");
+        appendHMS (line, trip.getTimeToLastFix ());
+        y = drawLine (canvas, x, y);
+
+        line.append ("moving ");
+        appendHMS (line, trip.getMovingTime ());
+        y = drawLine (canvas, x, y);
+
+        line.append ("dist ");
+        appendTenths (line, trip.getDistance () / 1852.0);
+        line.append (" nm");
+        y = drawLine (canvas, x, y);
+
+        line.append ("avg ");
+        appendTenths (line, trip.getAvgSpeed () * KT_PER_MPS);
+        line.append (" max ");
+        appendTenths (line, trip.getMaxSpeed () * KT_PER_MPS);
+        line.append (" kt");
+        y = drawLine (canvas, x, y);
+
+        line.append ("sd ");
+        appendTenths (line, trip.getSpeedStdDev () * KT_PER_MPS);
+        line.append (" kt");
+        y = drawLine (canvas, x, y);
+
+        line.append ("vs ").append (Math.round (trip.getVertSpeed () * FT_PER_M * 60.0)).append (" fpm");
+        y = drawLine (canvas, x, y);
+
+        line.append ("up ").append (Math.round (trip.getAscent () * FT_PER_M));
+        line.append (" dn ").append (Math.round (trip.getDescent () * FT_PER_M)).append (" ft");
+        drawLine (canvas, x, y);
+    }
+
+    private static void appendHMS (StringBuilder sb, long ms)
+    {
+        long secs = ms / 1000;
+        sb.append (secs / 3600).append (':');
+        long mm = secs / 60 % 60;
+        if (mm < 10) sb.append ('0');
+        sb.append (mm).append (':');
+        long ss = secs % 60;
+        if (ss < 10) sb.append ('0');
+        sb.append (ss);
+    }
+
+    private static void appendTenths (StringBuilder sb, double val)
+    {
+        long tenths = Math.round (val * 10.0);
+        if (tenths < 0) {
+            sb.append ('-');
+            tenths = - tenths;
+        }
+        sb.append (tenths / 10).append ('.').append (tenths % 10);
+    }
+
+    /**
+     * Start a new trip.
+     */
+    @Override  // OnLongClickListener
+    public boolean onLongClick (View v)
+    {
+        gpsStatusModel.resetTrip ();
+        mainActivity.showToast ("new trip started");
+        return true;
+    }
+}
@@ -0,0 +1,171 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Count draws per minute in ambient mode.
+ * A replay with a 100Hz turning compass, 1Hz satellite status and a fix every 20s
+ * (the ambient GPS rate) drives the real model into a real RenderScheduler,
+ * whose view invalidations are the draws.
+ */
+@RunWith (RobolectricTestRunner.class)
+@Config (sdk = 28)
+public class AmbientDrawRateTest {
+    private final static int MINUTES = 5;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder ();
+
+    private int draws;
+
+    /**
+     * Stands in for GpsStatusView, draws whenever the scheduler invalidates it.
+     */
+    private class CountingDisplay implements GpsDisplay {
+        private RenderScheduler scheduler;
+
+        CountingDisplay ()
+        {
+            View view = new View (RuntimeEnvironment.application) {
+                @Override
+                public void invalidate ()
+                {
+                    draws ++;
+                    scheduler.takeDirty ();
+                }
+            };
+            scheduler = new RenderScheduler (view);
+        }
+
+        @Override  // GpsDisplay
+        public void setStates (TripleBuffer<DisplayState> states)
+        { }
+
+        @Override  // GpsDisplay
+        public void markDirty (int bits)
+        {
+            scheduler.markDirty (bits);
+        }
+
+        @Override  // GpsDisplay
+        public void setAmbient (boolean ambient, boolean lowBit, boolean burnIn)
+        {
+            scheduler.setAmbient (ambient);
+        }
+
+        @Override  // GpsDisplay
+        public void updateAmbient ()
+        { }
+    }
+
+    @Test
+    public void drawsPerMinute ()
+            throws IOException
+    {
+        Handler handler = new Handler (Looper.getMainLooper ());
+        GpsStatusModel model = new GpsStatusModel (RuntimeEnvironment.application, handler);
+        CountingDisplay display = new CountingDisplay ();
+        model.setDisplay (display);
+        model.Startup (false);
+
+        ReplaySource replay = new ReplaySource (replayFile (), handler, 1.0, false);
+        replay.setStatusListener (model);
+
+        // enter ambient the way MainActivity.onEnterAmbient () does
+        display.setAmbient (true, true, true);
+        model.setAmbient (true);
+        replay.setAmbient (true);
+        ShadowLooper.idleMainLooper ();
+        replay.startSensor ();
+
+        // onUpdateAmbient () about once a minute, fixes come at 10, 30 and 50 sec past
+        int total = 0;
+        for (int m = 0; m < MINUTES; m ++) {
+            draws = 0;
+            for (int s = 0; s < 60; s ++) {
+                ShadowLooper.idleMainLooper (1000, TimeUnit.MILLISECONDS);
+            }
+            display.updateAmbient ();
+            model.updateAmbient ();
+            ShadowLooper.idleMainLooper ();
+            assertTrue ("minute " + m + " draws " + draws, (draws >= 3) && (draws <= 4));
+            total += draws;
+        }
+        assertTrue ("total draws " + total, total <= 4 * MINUTES);
+
+        // same input interactive, the turning compass redraws many times a second
+        display.setAmbient (false, false, false);
+        model.setAmbient (false);
+        draws = 0;
+        for (int s = 0; s < 60; s ++) {
+            ShadowLooper.idleMainLooper (1000, TimeUnit.MILLISECONDS);
+        }
+        assertTrue ("interactive draws " + draws, draws > 300);
+
+        replay.stopSensor ();
+        ShadowLooper.idleMainLooper ();
+    }
+
+    /**
+     * Compass turning 10 deg/sec at 100Hz, satellites every second, a fix every 20 sec.
+     */
+    private File replayFile ()
+            throws IOException
+    {
+        File file = tmp.newFile ("ambient.replay");
+        try (FileWriter fw = new FileWriter (file)) {
+            int secs = (MINUTES + 1) * 60 + 10;
+            for (int ms = 0; ms < secs * 1000; ms += 10) {
+                double hdg = Math.toRadians (ms / 100.0);
+                fw.write (String.format (Locale.US, "%d A 0 0 9.8\n", ms));
+                fw.write (String.format (Locale.US, "%d M %.2f %.2f -40\n", ms, -20.0 * Math.sin (hdg), 20.0 * Math.cos (hdg)));
+                if (ms % 1000 == 0) {
+                    fw.write (String.format (Locale.US, "%d S 1,5,30,45,90,1 1,13,35,60,200,1 3,7,25,20,300,0\n", ms));
+                }
+                if (ms % 20000 == 10000) {
+                    fw.write (String.format (Locale.US, "%d L %.6f -71.0589 20 1.4 90 5\n", ms, 42.3601 + ms * 1.0E-9));
+                }
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,181 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Whole frames of the instrument, interactive and ambient, must not allocate once warmed up.
+ * Draws onto a canvas whose drawing calls do nothing, so only DialRenderer and what it
+ * calls (text formatting, metrics) are measured, not the graphics library.
+ */
+@RunWith (RobolectricTestRunner.class)
+@Config (sdk = 28)
+public class DialRendererAllocationTest {
+    private final static int FRAMES = 20000;
+
+    private int calls;
+
+    /**
+     * Canvas that just counts the calls DialRenderer makes per frame.
+     */
+    private class NullCanvas extends Canvas {
+        @Override
+        public int save ()
+        {
+            calls ++;
+            return 1;
+        }
+
+        @Override
+        public void restore ()
+        {
+            calls ++;
+        }
+
+        @Override
+        public void translate (float dx, float dy)
+        {
+            calls ++;
+        }
+
+        @Override
+        public void rotate (float degrees)
+        {
+            calls ++;
+        }
+
+        @Override
+        public void drawBitmap (Bitmap bitmap, float left, float top, Paint paint)
+        {
+            calls ++;
+        }
+
+        @Override
+        public void drawCircle (float cx, float cy, float radius, Paint paint)
+        {
+            calls ++;
+        }
+
+        @Override
+        public void drawPath (Path path, Paint paint)
+        {
+            calls ++;
+        }
+
+        @Override
+        public void drawText (char[] text, int index, int count, float x, float y, Paint paint)
+        {
+            calls ++;
+        }
+
+        @Override
+        public void drawText (String text, float x, float y, Paint paint)
+        {
+            calls ++;
+        }
+    }
+
+    @Test
+    public void noAllocationPerFrame ()
+    {
+        com.sun.management.ThreadMXBean bean = null;
+        Object b = ManagementFactory.getThreadMXBean ();
+        if (b instanceof com.sun.management.ThreadMXBean) bean = (com.sun.management.ThreadMXBean) b;
+        Assume.assumeTrue ("thread allocation counting not supported", bean != null && bean.isThreadAllocatedMemorySupported ());
+        long tid = Thread.currentThread ().getId ();
+
+        DisplayState state = fullState ();
+        DialRenderer renderer = new DialRenderer ();
+        NullCanvas canvas = new NullCanvas ();
+
+        // first frames build the dial bitmap and trail paths
+        for (int i = 0; i < FRAMES; i ++) frame (renderer, canvas, state, i);
+
+        calls = 0;
+        long before = bean.getThreadAllocatedBytes (tid);
+        for (int i = 0; i < FRAMES; i ++) frame (renderer, canvas, state, i);
+        long bytes = bean.getThreadAllocatedBytes (tid) - before;
+
+        assertTrue ("only " + calls + " canvas calls", calls > FRAMES * 10);
+        assertTrue ("allocated " + bytes + " bytes in " + FRAMES + " frames", bytes < 1000);
+    }
+
+    /**
+     * Draw one frame, the last of every 16 in ambient mode, with the fix and compass moving
+     * and everything marked changed so all the text is formatted.
+     */
+    private static void frame (DialRenderer renderer, NullCanvas canvas, DisplayState state, int i)
+    {
+        state.timeMs       += 100;
+        state.fixElapsedMs += 100;
+        state.trackMag      = (i * 0.7F) % 360.0F;
+        state.compRotDeg    = - ((i * 1.3F) % 360.0F);
+        boolean ambient = (i & 15) == 15;
+        renderer.setAmbient (ambient, ambient, ambient, i);
+        renderer.draw (canvas, 400, 400, state, ~0);
+    }
+
+    /**
+     * Fix, compass, satellites with trails and waypoints, so every part of the frame is drawn.
+     */
+    private static DisplayState fullState ()
+    {
+        DisplayState state = new DisplayState ();
+        state.haveFix      = true;
+        state.timeMs       = 1600000000000L;
+        state.fixElapsedMs = 1000;
+        state.haveSats     = true;
+
+        // ten minutes of satellites moving across the sky
+        SkyTrackHistory sth = new SkyTrackHistory (64, 60, 60000, 900000);
+        for (int m = 0; m < 10; m ++) {
+            state.sats.clear ();
+            for (int i = 0; i < 24; i ++) {
+                state.sats.add (i % 7 + 1, i + 1, 20.0F + i, i * 3.5F + m, i * 15.0F + m, (i & 1) == 0);
+            }
+            sth.update (state.sats, m * 60000L);
+        }
+        state.setTrails (sth);
+
+        state.wptCount = 2;
+        for (int w = 0; w < 2; w ++) {
+            state.wptBearingMag[w] = 45.0F + w * 90.0F;
+            state.wptDistance[w]   = 1852.0F * (w + 1.5F);
+            state.wptNameLen[w]    = 4;
+            "KBOSKBED".getChars (w * 4, w * 4 + 4, state.wptNames, w * DisplayState.WPTNAMELEN);
+        }
+        return state;
+    }
+}
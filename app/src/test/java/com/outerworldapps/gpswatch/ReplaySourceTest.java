@@ -0,0 +1,191 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith (RobolectricTestRunner.class)
+@Config (sdk = 28)
+public class ReplaySourceTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder ();
+
+    private ArrayList<Location> locs = new ArrayList<> ();
+    private int satCount;
+    private int sensorCount;
+
+    private final LocationSource.Listener listener = new LocationSource.Listener () {
+        @Override
+        public void onLocationReceived (Location loc)
+        {
+            locs.add (loc);
+        }
+
+        @Override
+        public void onSatellitesReceived (SatSnapshot sats)
+        {
+            if (sats != null) satCount = sats.count;
+        }
+
+        @Override
+        public void onFirstFix (int ttffMs)
+        { }
+
+        @Override
+        public void onSensorSample (int type, float[] values, long timestamp)
+        {
+            sensorCount ++;
+        }
+    };
+
+    /**
+     * Latitude and longitude keep full double precision.
+     */
+    @Test
+    public void fullPrecision ()
+            throws IOException
+    {
+        play (replayFile ("1000 L 42.123456789 -71.987654321 10 1.5 90 4\n"), 1.0, false, 100);
+        assertEquals (1, locs.size ());
+        assertEquals (42.123456789, locs.get (0).getLatitude (), 1.0E-9);
+        assertEquals (-71.987654321, locs.get (0).getLongitude (), 1.0E-9);
+        assertEquals (1.5F, locs.get (0).getSpeed (), 0.0F);
+    }
+
+    /**
+     * Values after lat/lon can be left off or given as - or nan.
+     */
+    @Test
+    public void optionalValues ()
+            throws IOException
+    {
+        play (replayFile ("1000 L 42 -71\n2000 L 42 -71 100 - nan 5\n"), 1.0, false, 1500);
+        assertEquals (2, locs.size ());
+        Location a = locs.get (0);
+        assertFalse (a.hasAltitude ());
+        assertFalse (a.hasSpeed ());
+        assertFalse (a.hasBearing ());
+        assertFalse (a.hasAccuracy ());
+        Location b = locs.get (1);
+        assertTrue (b.hasAltitude ());
+        assertFalse (b.hasSpeed ());
+        assertFalse (b.hasBearing ());
+        assertTrue (b.hasAccuracy ());
+        assertEquals (100.0, b.getAltitude (), 0.0);
+    }
+
+    /**
+     * Location times keep going forward when playback loops.
+     */
+    @Test
+    public void loopTimesMonotonic ()
+            throws IOException
+    {
+        play (replayFile ("1000 L 42 -71\n2000 L 42.001 -71\n"), 1.0, true, 5500);
+        assertEquals (6, locs.size ());
+        for (int i = 1; i < locs.size (); i ++) {
+            assertTrue ("fix " + i, locs.get (i).getTime () > locs.get (i - 1).getTime ());
+        }
+        assertEquals (3000, locs.get (2).getTime ());
+        assertEquals (6000, locs.get (5).getTime ());
+    }
+
+    /**
+     * 100Hz compass and 10Hz GNSS played at 4x real time.
+     */
+    @Test
+    public void speedup ()
+            throws IOException
+    {
+        StringBuilder sb = new StringBuilder ();
+        for (int ms = 0; ms < 2000; ms += 10) {
+            sb.append (ms).append (" M 20 0 -40\n");
+            if (ms % 100 == 0) {
+                sb.append (ms).append (" L 42 -71\n");
+                sb.append (ms).append (" S 1,5,30,45,90,1 3,7,25,20,200,0\n");
+            }
+        }
+        play (replayFile (sb.toString ()), 4.0, false, 251);
+        // 251ms at 4x covers events 0..1004ms
+        assertEquals (101, sensorCount);
+        assertEquals (11, locs.size ());
+        assertEquals (2, satCount);
+    }
+
+    @Test
+    public void badEvent ()
+            throws IOException
+    {
+        try {
+            new ReplaySource (replayFile ("1000 L 42\n"), new Handler (Looper.getMainLooper ()), 1.0, false);
+            fail ("short location accepted");
+        } catch (IOException ioe) {
+            assertTrue (ioe.getMessage (), ioe.getMessage ().contains (":2:"));
+        }
+    }
+
+    private File replayFile (String contents)
+            throws IOException
+    {
+        File file = tmp.newFile ();
+        try (FileWriter fw = new FileWriter (file)) {
+            fw.write ("# test replay\n");
+            fw.write (contents);
+        }
+        return file;
+    }
+
+    /**
+     * Play the file for the given time, delivering to listener.
+     */
+    private void play (File file, double speedup, boolean loop, long ms)
+            throws IOException
+    {
+        ReplaySource rs = new ReplaySource (file, new Handler (Looper.getMainLooper ()), speedup, loop);
+        rs.setStatusListener (listener);
+        rs.startSensor ();
+        ShadowLooper.idleMainLooper (ms, TimeUnit.MILLISECONDS);
+        rs.stopSensor ();
+        ShadowLooper.idleMainLooper ();
+    }
+}
@@ -0,0 +1,49 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-frame heading and time text formatting.
+ */
+@State (Scope.Thread)
+public class CharFormatBenchmark {
+    private char[] buf = new char[8];
+    private float heading;
+    private long timems = 1593000000000L;
+
+    @Benchmark
+    public int formatHeading ()
+    {
+        heading += 0.7F;
+        return CharFormat.formatHeading (buf, CharFormat.normHeading (heading));
+    }
+
+    @Benchmark
+    public int formatTime ()
+    {
+        timems += 1000;
+        return CharFormat.formatTime (buf, timems);
+    }
+}
@@ -0,0 +1,80 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Compass sensor fusion, one accelerometer plus one magnetometer sample per invocation.
+ */
+@State (Scope.Thread)
+public class CompassFilterBenchmark {
+    private final static int NSAMPLES = 1024;
+
+    private CompassFilter filter;
+    private float[][] accels = new float[NSAMPLES][3];
+    private float[][] mags   = new float[NSAMPLES][3];
+    private float[][] rotvecs = new float[NSAMPLES][4];
+    private int index;
+
+    @Setup
+    public void setup ()
+    {
+        // watch lying roughly flat, pointing roughly north-east, with sensor noise
+        Random r = new Random (12345);
+        for (int i = 0; i < NSAMPLES; i ++) {
+            accels[i][0] = (float) r.nextGaussian () * 0.2F;
+            accels[i][1] = (float) r.nextGaussian () * 0.2F;
+            accels[i][2] = 9.8F + (float) r.nextGaussian () * 0.2F;
+            mags[i][0] = -15.0F + (float) r.nextGaussian ();
+            mags[i][1] =  15.0F + (float) r.nextGaussian ();
+            mags[i][2] = -40.0F + (float) r.nextGaussian ();
+            double half = Math.toRadians (45.0 + r.nextGaussian ()) / 2.0;
+            rotvecs[i][2] = (float) - Math.sin (half);
+            rotvecs[i][3] = (float) Math.cos (half);
+        }
+        filter = new CompassFilter (0.08F, 1.0F);
+    }
+
+    @Benchmark
+    public float accelMag ()
+    {
+        int i = index;
+        index = (i + 1) & (NSAMPLES - 1);
+        filter.onAccelerometer (accels[i]);
+        filter.onMagnetometer (mags[i]);
+        return filter.getHeading ();
+    }
+
+    @Benchmark
+    public float rotationVector ()
+    {
+        int i = index;
+        index = (i + 1) & (NSAMPLES - 1);
+        filter.onRotationVector (rotvecs[i]);
+        return filter.getHeading ();
+    }
+}
@@ -0,0 +1,86 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Declination lookup, full model evaluation vs. the cache, one 1Hz fix per invocation.
+ * Coefficients are synthetic, evaluation cost does not depend on their values.
+ */
+@State (Scope.Thread)
+public class DeclinationBenchmark {
+    private DeclinationCache cache;
+    private WmmModel model;
+    private double lat = 42.5;
+    private double lon = -71.1;
+    private long timems = 1593000000000L;
+
+    @Setup
+    public void setup ()
+            throws IOException
+    {
+        Random r = new Random (12345);
+        StringBuilder cof = new StringBuilder ();
+        cof.append ("    2020.0            SYNTHETIC        01/01/2020\n");
+        for (int n = 1; n <= 12; n ++) {
+            for (int m = 0; m <= n; m ++) {
+                double scale = 30000.0 / (n * n * n);
+                cof.append (String.format (Locale.US, "%3d%3d%10.1f%10.1f%10.1f%10.1f\n", n, m,
+                        r.nextGaussian () * scale, (m == 0) ? 0.0 : r.nextGaussian () * scale,
+                        r.nextGaussian (), (m == 0) ? 0.0 : r.nextGaussian ()));
+            }
+        }
+        cof.append ("999999999999999999999999999999999999999999999999\n");
+        model = new WmmModel (new StringReader (cof.toString ()));
+        cache = new DeclinationCache (model, 0.25, 1000.0, 86400000L);
+    }
+
+    // walking pace, about 1.5m/s north-east
+    private void step ()
+    {
+        lat += 0.00001;
+        lon += 0.00001;
+        timems += 1000;
+    }
+
+    @Benchmark
+    public float model ()
+    {
+        step ();
+        return model.getDeclination (lat, lon, 100.0, timems);
+    }
+
+    @Benchmark
+    public float cached ()
+    {
+        step ();
+        return cache.getDeclination (lat, lon, 100.0, timems);
+    }
+}
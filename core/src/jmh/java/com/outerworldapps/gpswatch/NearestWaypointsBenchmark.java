@@ -0,0 +1,87 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Nearest waypoint update per fix, 50,000 waypoints, moving about 70 m per fix.
+ */
+@State (Scope.Thread)
+public class NearestWaypointsBenchmark {
+    private final static int NWPTS = 50000;
+
+    private double lat;
+    private double lon;
+    private File file;
+    private NearestWaypoints nearest;
+    private WaypointDb db;
+
+    @Setup
+    public void setup ()
+            throws IOException
+    {
+        Random r = new Random (12345);
+        double[] lats = new double[NWPTS];
+        double[] lons = new double[NWPTS];
+        String[] names = new String[NWPTS];
+        for (int i = 0; i < NWPTS; i ++) {
+            lats[i]  = 25.0 + r.nextDouble () * 25.0;
+            lons[i]  = -125.0 + r.nextDouble () * 60.0;
+            names[i] = "W" + i;
+        }
+        file = File.createTempFile ("wpt", ".bin");
+        WaypointDb.build (file, NWPTS, lats, lons, names, 0.0);
+        db = new WaypointDb (file);
+        nearest = new NearestWaypoints (db, 3, 2000.0);
+        lat = 42.0;
+        lon = -71.0;
+    }
+
+    @TearDown
+    public void tearDown ()
+            throws IOException
+    {
+        db.close ();
+        file.delete ();
+    }
+
+    @Benchmark
+    public int update ()
+    {
+        lat += 0.0005;
+        lon += 0.0007;
+        if (lat > 48.0) {
+            lat = 42.0;
+            lon = -71.0;
+        }
+        nearest.update (lat, lon);
+        return nearest.index[0];
+    }
+}
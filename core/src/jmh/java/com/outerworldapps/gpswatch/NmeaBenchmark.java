@@ -0,0 +1,123 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * NMEA parsing, one epoch of multi-constellation output per invocation
+ * (GGA, 4 GSAs, GSV sets for GPS, GLONASS, Galileo and BeiDou, RMC, VTG).
+ * A 10Hz receiver needs ten of these per second.
+ */
+@State (Scope.Thread)
+public class NmeaBenchmark implements NmeaParser.Listener {
+    private final static int NEPOCHS = 64;
+
+    private ByteBuffer[] buffers = new ByteBuffer[NEPOCHS];
+    private byte[][] epochs = new byte[NEPOCHS][];
+    private int fixes;
+    private int index;
+    private NmeaParser parser = new NmeaParser (this);
+
+    @Setup
+    public void setup ()
+    {
+        Random r = new Random (12345);
+        for (int e = 0; e < NEPOCHS; e ++) {
+            StringBuilder sb = new StringBuilder ();
+            int tod = 123519 + e;
+            String time = String.format (Locale.US, "%06d.%d0", tod / 10, tod % 10);
+            sentence (sb, "GPGGA," + time + ",4807.038,N,01131.000,E,1,24,0.9,545.4,M,46.9,M,,");
+            sentence (sb, "GNGSA,A,3,01,02,03,04,05,06,07,08,,,,,1.5,0.9,1.2,1");
+            sentence (sb, "GNGSA,A,3,65,66,67,68,69,70,,,,,,,1.5,0.9,1.2,2");
+            sentence (sb, "GNGSA,A,3,01,02,03,04,05,,,,,,,,1.5,0.9,1.2,3");
+            sentence (sb, "GNGSA,A,3,01,02,03,04,05,,,,,,,,1.5,0.9,1.2,4");
+            gsv (sb, "GP", 1, 12, r);
+            gsv (sb, "GL", 65, 8, r);
+            gsv (sb, "GA", 1, 8, r);
+            gsv (sb, "GB", 1, 8, r);
+            sentence (sb, "GPRMC," + time + ",A,4807.038,N,01131.000,E,022.4,084.4,230320,003.1,W");
+            sentence (sb, "GPVTG,084.4,T,087.5,M,022.4,N,041.5,K,A");
+            epochs[e]  = sb.toString ().getBytes (StandardCharsets.US_ASCII);
+            buffers[e] = ByteBuffer.wrap (epochs[e]);
+        }
+    }
+
+    private static void gsv (StringBuilder sb, String talker, int firstPrn, int nsats, Random r)
+    {
+        int nmsgs = (nsats + 3) / 4;
+        for (int m = 0; m < nmsgs; m ++) {
+            StringBuilder body = new StringBuilder ();
+            body.append (String.format (Locale.US, "%sGSV,%d,%d,%02d", talker, nmsgs, m + 1, nsats));
+            for (int i = m * 4; (i < nsats) && (i < m * 4 + 4); i ++) {
+                body.append (String.format (Locale.US, ",%02d,%02d,%03d,%02d",
+                        firstPrn + i, r.nextInt (90), r.nextInt (360), 20 + r.nextInt (30)));
+            }
+            sentence (sb, body.toString ());
+        }
+    }
+
+    private static void sentence (StringBuilder sb, String body)
+    {
+        int sum = 0;
+        for (int i = 0; i < body.length (); i ++) sum ^= body.charAt (i);
+        sb.append ('$').append (body).append (String.format (Locale.US, "*%02X\r\n", sum));
+    }
+
+    @Override  // NmeaParser.Listener
+    public void onNmeaFix (NmeaParser p)
+    {
+        fixes ++;
+    }
+
+    @Override  // NmeaParser.Listener
+    public void onNmeaSatellites (SatSnapshot sats)
+    {
+        fixes += sats.count;
+    }
+
+    @Benchmark
+    public int parseBytes ()
+    {
+        byte[] epoch = epochs[index];
+        index = (index + 1) & (NEPOCHS - 1);
+        parser.feed (epoch, 0, epoch.length);
+        return fixes;
+    }
+
+    @Benchmark
+    public int parseByteBuffer ()
+    {
+        ByteBuffer bb = buffers[index];
+        index = (index + 1) & (NEPOCHS - 1);
+        bb.clear ();
+        parser.feed (bb);
+        return fixes;
+    }
+}
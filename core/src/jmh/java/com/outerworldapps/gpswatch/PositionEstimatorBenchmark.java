@@ -0,0 +1,66 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Kalman position estimator, one fix update and one display-frame prediction per invocation.
+ */
+@State (Scope.Thread)
+public class PositionEstimatorBenchmark {
+    private final static int NFIXES = 1024;
+
+    private double[] lats = new double[NFIXES];
+    private double[] lons = new double[NFIXES];
+    private int index;
+    private long timems;
+    private PositionEstimator estimator;
+
+    @Setup
+    public void setup ()
+    {
+        // walking north-east at about 1.5 m/s with 5 m of position noise
+        Random r = new Random (12345);
+        for (int i = 0; i < NFIXES; i ++) {
+            lats[i] = 42.5 + i * 1.0E-5 + r.nextGaussian () * 4.5E-5;
+            lons[i] = -71.0 + i * 1.3E-5 + r.nextGaussian () * 6.1E-5;
+        }
+        estimator = new PositionEstimator (1.0, 0.5F, 60000);
+    }
+
+    @Benchmark
+    public double updatePredict ()
+    {
+        int i = index;
+        index = (i + 1) & (NFIXES - 1);
+        if (i == 0) estimator.reset ();
+        timems += 1000;
+        estimator.update (timems, lats[i], lons[i], 5.0F, 1.5F, 45.0F);
+        estimator.predict (timems + 500);
+        return estimator.lat;
+    }
+}
@@ -0,0 +1,79 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Satellite status processing, one multi-constellation status update per invocation.
+ */
+@State (Scope.Thread)
+public class SkyPlotBenchmark {
+    private final static int NSATS = 48;
+
+    private float[] azims = new float[NSATS];
+    private float[] cn0s  = new float[NSATS];
+    private float[] elevs = new float[NSATS];
+    private long now;
+    private SatSnapshot snapshot = new SatSnapshot (64);
+    private SkyTrackHistory history = new SkyTrackHistory (256, 60, 60000, 900000);
+
+    @Setup
+    public void setup ()
+    {
+        Random r = new Random (12345);
+        for (int i = 0; i < NSATS; i ++) {
+            azims[i] = r.nextFloat () * 360.0F;
+            elevs[i] = r.nextFloat () * 90.0F;
+            cn0s[i]  = 15.0F + r.nextFloat () * 30.0F;
+        }
+    }
+
+    private void fill ()
+    {
+        snapshot.clear ();
+        for (int i = 0; i < NSATS; i ++) {
+            azims[i] += 0.01F;
+            snapshot.add (i % 6 + 1, i + 1, cn0s[i], elevs[i], azims[i], (i & 1) == 0);
+        }
+    }
+
+    @Benchmark
+    public int project ()
+    {
+        fill ();
+        return snapshot.count;
+    }
+
+    @Benchmark
+    public int projectAndTrack ()
+    {
+        fill ();
+        now += 1000;
+        history.update (snapshot, now);
+        return snapshot.count;
+    }
+}
@@ -0,0 +1,68 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-frame tile work while driving: planning the visible and look-ahead tiles
+ * for a 320x320 view, and looking up the visible ones in a 48 slot cache.
+ */
+@State (Scope.Thread)
+public class TilePlannerBenchmark {
+    private double lat;
+    private double lon;
+    private TileLru lru;
+    private TilePlanner planner;
+
+    @Setup
+    public void setup ()
+    {
+        lat = 42.5;
+        lon = -71.0;
+        lru = new TileLru (48);
+        planner = new TilePlanner (36);
+    }
+
+    @Benchmark
+    public int frame ()
+    {
+        // 30 m/s north-east, 10 frames/sec
+        lat += 3.0 * 0.7071 / 111195.0;
+        lon += 3.0 * 0.7071 / (111195.0 * 0.737);
+        planner.plan (lat, lon, 15, 256, 320, 320, 45.0F, 30.0F, 60.0F);
+        lru.newFrame ();
+        int hits = 0;
+        for (int i = 0; i < planner.count; i ++) {
+            long key = planner.getWanted (i);
+            if (i < planner.visibleCount) {
+                if (lru.get (key) >= 0) hits ++;
+            } else if (! lru.contains (key)) {
+                int slot = lru.reserve (key);
+                if (slot >= 0) lru.ready (slot);
+            }
+        }
+        return hits;
+    }
+}
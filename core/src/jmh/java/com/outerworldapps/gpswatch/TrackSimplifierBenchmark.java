@@ -0,0 +1,69 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Track simplifier, one fix per invocation, cycling through a 12 hour 1 Hz random walk
+ * without resetting, so it includes the occasional recompression at capacity.
+ */
+@State (Scope.Thread)
+public class TrackSimplifierBenchmark {
+    private final static int NFIXES = 12 * 3600;
+
+    private double[] lats = new double[NFIXES];
+    private double[] lons = new double[NFIXES];
+    private int index;
+    private TrackSimplifier simplifier;
+
+    @Setup
+    public void setup ()
+    {
+        // wandering walk at 1.5 m/s with some GPS noise
+        Random r = new Random (12345);
+        double lat = 42.5;
+        double lon = -71.0;
+        double hdg = 0.0;
+        for (int i = 0; i < NFIXES; i ++) {
+            hdg += r.nextGaussian () * 5.0;
+            lat += 1.5 * Math.cos (Math.toRadians (hdg)) / 111195.0 + r.nextGaussian () * 1.0E-5;
+            lon += 1.5 * Math.sin (Math.toRadians (hdg)) / (111195.0 * 0.737) + r.nextGaussian () * 1.3E-5;
+            lats[i] = lat;
+            lons[i] = lon;
+        }
+        simplifier = new TrackSimplifier (500, 5.0, 64);
+    }
+
+    @Benchmark
+    public int add ()
+    {
+        int i = index;
+        if (++ index == NFIXES) index = 0;
+        simplifier.add (lats[i], lons[i]);
+        return simplifier.getCount ();
+    }
+}
@@ -0,0 +1,69 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Trip computer update, one fix per invocation, cycling through a 12 hour 1 Hz trace
+ * without resetting so the cost is shown not to grow with session length.
+ */
+@State (Scope.Thread)
+public class TripComputerBenchmark {
+    private final static int NFIXES = 12 * 3600;
+
+    private double[] alts = new double[NFIXES];
+    private double[] lats = new double[NFIXES];
+    private double[] lons = new double[NFIXES];
+    private float[] speeds = new float[NFIXES];
+    private int index;
+    private long time;
+    private TripComputer trip;
+
+    @Setup
+    public void setup ()
+    {
+        // walking north-east, up and down hills, with some GPS noise
+        Random r = new Random (12345);
+        for (int i = 0; i < NFIXES; i ++) {
+            lats[i]   = 42.5 + i * 1.0E-5 + r.nextGaussian () * 1.0E-5;
+            lons[i]   = -71.0 + i * 1.3E-5 + r.nextGaussian () * 1.3E-5;
+            alts[i]   = 100.0 + 50.0 * Math.sin (i / 600.0) + r.nextGaussian () * 2.0;
+            speeds[i] = (float) (1.5 + r.nextGaussian () * 0.2);
+        }
+        trip = new TripComputer (0.5, 5.0, 120000);
+    }
+
+    @Benchmark
+    public double update ()
+    {
+        int i = index;
+        if (++ index == NFIXES) index = 0;
+        time += 1000;
+        trip.update (time, lats[i], lons[i], alts[i], speeds[i]);
+        return trip.getDistance ();
+    }
+}
@@ -0,0 +1,101 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Format numbers into caller-supplied char buffers
+ * so the drawing code doesn't allocate Strings every frame.
+ */
+public class CharFormat {
+
+    /**
+     * Format time-of-day as hh:mm:ss.
+     * @param buf = at least 8 chars
+     * @param timems = time in ms, only time-of-day is used
+     * @return number of chars written (8)
+     */
+    public static int formatTime (char[] buf, long timems)
+    {
+        int secs = (int) (timems / 1000 % 86400);
+        if (secs < 0) secs += 86400;
+        put2 (buf, 0, secs / 3600);
+        buf[2] = ':';
+        put2 (buf, 3, secs / 60 % 60);
+        buf[5] = ':';
+        put2 (buf, 6, secs % 60);
+        return 8;
+    }
+
+    /**
+     * Round a heading to whole degrees the way it is displayed.
+     * @param deg = heading, any number of degrees
+     * @return 1..360 (north is 360)
+     */
+    public static int normHeading (float deg)
+    {
+        return (Math.round (deg) % 360 + 359) % 360 + 1;
+    }
+
+    /**
+     * Format a heading as ddd followed by degree sign.
+     * @param buf = at least 4 chars
+     * @param hdg = heading, 1..360
+     * @return number of chars written (4)
+     */
+    public static int formatHeading (char[] buf, int hdg)
+    {
+        buf[0] = (char) ('0' + hdg / 100 % 10);
+        put2 (buf, 1, hdg % 100);
+        buf[3] = '\u00B0';
+        return 4;
+    }
+
+    /**
+     * Format a distance in nautical miles, d.d under 10nm, whole miles (up to 99999) otherwise.
+     * @param buf = where to put chars
+     * @param off = where in buf to start, at least 5 chars available
+     * @param metres = distance in metres
+     * @return number of chars written
+     */
+    public static int formatNm (char[] buf, int off, float metres)
+    {
+        int tenths = Math.round (metres / 185.2F);
+        if (tenths < 100) {
+            buf[off]   = (char) ('0' + tenths / 10);
+            buf[off+1] = '.';
+            buf[off+2] = (char) ('0' + tenths % 10);
+            return 3;
+        }
+        int nm = Math.min ((tenths + 5) / 10, 99999);
+        int n = (nm < 100) ? 2 : (nm < 1000) ? 3 : (nm < 10000) ? 4 : 5;
+        for (int i = n; -- i >= 0;) {
+            buf[off+i] = (char) ('0' + nm % 10);
+            nm /= 10;
+        }
+        return n;
+    }
+
+    private static void put2 (char[] buf, int i, int val)
+    {
+        buf[i]   = (char) ('0' + val / 10);
+        buf[i+1] = (char) ('0' + val % 10);
+    }
+}
@@ -0,0 +1,176 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Fuse accelerometer and magnetometer (or rotation vector) samples into a compass heading.
+ * Samples are copied into preallocated arrays so the caller's arrays can be reused.
+ * Smoothing is done once, on the heading as a unit vector, whichever sensors it came from.
+ * Pure Java, no Android dependencies, so it can be run against recorded sensor traces.
+ */
+public class CompassFilter {
+
+    private boolean haveGravity;
+    private boolean haveGeomag;
+    private boolean haveHdgVec;
+    private double hdgCos;          // low-pass filtered heading unit vector
+    private double hdgSin;
+    private float alpha;            // weight given to new sample, 0 < alpha <= 1
+    private float heading;          // last reported heading, degrees magnetic 0..360, NaN if none
+    private float threshold;        // heading must change this many degrees to be reported
+    private final float[] gravity = new float[3];
+    private final float[] geomag  = new float[3];
+
+    /**
+     * @param alpha = low-pass weight of each new sample (1 = no filtering)
+     * @param threshold = report heading only when it changes by at least this many degrees
+     */
+    public CompassFilter (float alpha, float threshold)
+    {
+        this.alpha     = alpha;
+        this.threshold = threshold;
+        reset ();
+    }
+
+    public void reset ()
+    {
+        haveGravity = false;
+        haveGeomag  = false;
+        haveHdgVec  = false;
+        heading     = Float.NaN;
+    }
+
+    /**
+     * Get last reported heading.
+     * @return degrees clockwise from (magnetic) north, 0..360, or NaN if none yet
+     */
+    public float getHeading ()
+    {
+        return heading;
+    }
+
+    /**
+     * Got an accelerometer sample.
+     * @return true iff reported heading changed
+     */
+    public boolean onAccelerometer (float[] values)
+    {
+        System.arraycopy (values, 0, gravity, 0, 3);
+        haveGravity = true;
+        return haveGeomag && update ();
+    }
+
+    /**
+     * Got a magnetometer sample.
+     * @return true iff reported heading changed
+     */
+    public boolean onMagnetometer (float[] values)
+    {
+        System.arraycopy (values, 0, geomag, 0, 3);
+        haveGeomag = true;
+        return haveGravity && update ();
+    }
+
+    /**
+     * Got a rotation vector sample (x, y, z[, w] of unit quaternion).
+     * Same computation as SensorManager.getRotationMatrixFromVector() then getOrientation().
+     * @return true iff reported heading changed
+     */
+    public boolean onRotationVector (float[] values)
+    {
+        double q1 = values[0];
+        double q2 = values[1];
+        double q3 = values[2];
+        double q0;
+        if (values.length >= 4) {
+            q0 = values[3];
+        } else {
+            q0 = 1.0 - q1 * q1 - q2 * q2 - q3 * q3;
+            q0 = (q0 > 0.0) ? Math.sqrt (q0) : 0.0;
+        }
+        double r1 = 2.0 * q1 * q2 - 2.0 * q3 * q0;
+        double r4 = 1.0 - 2.0 * q1 * q1 - 2.0 * q3 * q3;
+        return filterHeading (r1, r4);
+    }
+
+    /**
+     * Have both gravity and geomag, compute azimuth.
+     * Same computation as SensorManager.getRotationMatrix() then getOrientation().
+     */
+    private boolean update ()
+    {
+        float ax = gravity[0];
+        float ay = gravity[1];
+        float az = gravity[2];
+        float ex = geomag[0];
+        float ey = geomag[1];
+        float ez = geomag[2];
+
+        // H = E x A points east
+        double hx = ey * az - ez * ay;
+        double hy = ez * ax - ex * az;
+        double hz = ex * ay - ey * ax;
+        double normH = Math.sqrt (hx * hx + hy * hy + hz * hz);
+        if (normH < 0.1) return false;  // free fall or pointing at magnetic pole
+        double normA = Math.sqrt (ax * ax + ay * ay + az * az);
+        double invH = 1.0 / normH;
+        double invA = 1.0 / normA;
+        hx *= invH;
+        hy *= invH;
+        hz *= invH;
+
+        // M = A x H points north
+        double my = (az * hx - ax * hz) * invA;
+
+        return filterHeading (hy, my);
+    }
+
+    /**
+     * Low-pass filter heading as a unit vector so it doesn't jump at north.
+     * @param r1 = sin (azimuth) scaled
+     * @param r4 = cos (azimuth) scaled
+     */
+    private boolean filterHeading (double r1, double r4)
+    {
+        double len = Math.sqrt (r1 * r1 + r4 * r4);
+        if (len <= 0.0) return false;
+        r1 /= len;
+        r4 /= len;
+        if (haveHdgVec) {
+            hdgSin += (r1 - hdgSin) * alpha;
+            hdgCos += (r4 - hdgCos) * alpha;
+        } else {
+            hdgSin = r1;
+            hdgCos = r4;
+            haveHdgVec = true;
+        }
+
+        float newhdg = (float) Math.toDegrees (Math.atan2 (hdgSin, hdgCos));
+        if (newhdg < 0.0F) newhdg += 360.0F;
+        if (! Float.isNaN (heading)) {
+            float diff = Math.abs (newhdg - heading);
+            if (diff > 180.0F) diff = 360.0F - diff;
+            if (diff < threshold) return false;
+        }
+        heading = newhdg;
+        return true;
+    }
+}
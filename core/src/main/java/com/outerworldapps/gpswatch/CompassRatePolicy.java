@@ -0,0 +1,152 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Decide how fast to sample the compass sensors and how long the sensor hub
+ * may batch samples in its FIFO before waking the application processor.
+ * Pure Java state machine like GpsPowerPolicy, the caller feeds it visibility
+ * and ambient transitions and whether each sample moved the heading, and
+ * re-registers the sensors whenever a method says the settings changed.
+ *
+ * The heading being unchanged for a while (wrist still) steps down to the slow
+ * rate, any heading change steps straight back up.
+ */
+public class CompassRatePolicy {
+    public final static int STATE_FAST = 0;  // heading changing
+    public final static int STATE_SLOW = 1;  // heading stable
+    public final static int STATE_OFF  = 2;  // not visible or ambient, sensors unregistered
+    private final static String[] stateNames = new String[] { "fast", "slow", "off" };
+
+    private boolean ambient;
+    private boolean stable;
+    private boolean visible = true;
+    private int state;
+    private long lastChange = -1;      // time heading last changed, -1 if no samples yet
+    private long stableTime = 5000;    // heading must be unchanged this long to slow down, ms
+
+    //                                           fast    slow  off
+    private final int[] samplingUs = new int[] {  50000,  200000, 0 };
+    private final int[] latencyUs  = new int[] { 100000, 1000000, 0 };
+
+    /**
+     * Change the settings used for a state.
+     * @param state = STATE_FAST or STATE_SLOW
+     * @param sampling = sampling period, us
+     * @param latency = maximum time samples may be batched before delivery, us
+     */
+    public void setRates (int state, int sampling, int latency)
+    {
+        samplingUs[state] = sampling;
+        latencyUs[state]  = latency;
+    }
+
+    /**
+     * Change how long the heading must be unchanged to slow down, ms.
+     */
+    public void setStableTime (long ms)
+    {
+        stableTime = ms;
+    }
+
+    public int getState ()
+    {
+        return state;
+    }
+
+    public String getStateName ()
+    {
+        return stateNames[state];
+    }
+
+    /**
+     * Whether the sensors should be registered at all.
+     */
+    public boolean isActive ()
+    {
+        return state != STATE_OFF;
+    }
+
+    public int getSamplingUs ()
+    {
+        return samplingUs[state];
+    }
+
+    public int getMaxLatencyUs ()
+    {
+        return latencyUs[state];
+    }
+
+    /**
+     * Entering or leaving ambient mode.
+     * @return true iff settings changed
+     */
+    public boolean setAmbient (boolean amb)
+    {
+        ambient = amb;
+        return update ();
+    }
+
+    /**
+     * Compass display became visible or invisible.
+     * @return true iff settings changed
+     */
+    public boolean setVisible (boolean vis)
+    {
+        visible = vis;
+        return update ();
+    }
+
+    /**
+     * Got a sensor sample.
+     * @param changed = the sample changed the reported heading
+     * @param timems = time of sample, ms
+     * @return true iff settings changed
+     */
+    public boolean onSample (boolean changed, long timems)
+    {
+        if (changed || (lastChange < 0)) {
+            lastChange = timems;
+            stable = false;
+        } else if (timems - lastChange >= stableTime) {
+            stable = true;
+        }
+        return update ();
+    }
+
+    private boolean update ()
+    {
+        int newstate;
+        if (! visible || ambient) newstate = STATE_OFF;
+        else if (stable) newstate = STATE_SLOW;
+        else newstate = STATE_FAST;
+        if (newstate == state) return false;
+        int oldstate = state;
+        state = newstate;
+        if (newstate == STATE_OFF) {
+            // start fast next time so the heading settles quickly
+            stable = false;
+            lastChange = -1;
+        }
+        return (samplingUs[oldstate] != samplingUs[newstate]) ||
+               (latencyUs[oldstate]  != latencyUs[newstate]);
+    }
+}
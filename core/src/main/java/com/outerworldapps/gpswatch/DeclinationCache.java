@@ -0,0 +1,92 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Cache the declination so the model isn't evaluated on every fix.
+ * Declination barely changes over kilometres and days, so the value is only recomputed
+ * when the position moves to a different lat/lon/alt cell or the value gets too old.
+ * The model is evaluated at the center of the cell so the result is the same for all
+ * points in the cell, the error is bounded by the model's gradient over half a cell.
+ */
+public class DeclinationCache implements DeclinationModel {
+    private DeclinationModel model;
+    private double altCell;     // altitude cell size, metres
+    private double latLonCell;  // lat/lon cell size, degrees
+    private float declination;  // value computed for the current cell
+    private int computes;       // number of times model was evaluated
+    private int altIdx;         // current cell indices
+    private int latIdx;
+    private int lonIdx;
+    private long computedAt;    // time the current value was computed for
+    private long maxAge;        // recompute when value is this old, ms
+
+    /**
+     * @param model = underlying (slow) model
+     * @param latLonCell = recompute when lat/lon cell changes, degrees
+     * @param altCell = recompute when altitude cell changes, metres
+     * @param maxAge = recompute when value is older than this, ms
+     */
+    public DeclinationCache (DeclinationModel model, double latLonCell, double altCell, long maxAge)
+    {
+        this.model      = model;
+        this.latLonCell = latLonCell;
+        this.altCell    = altCell;
+        this.maxAge     = maxAge;
+        invalidate ();
+    }
+
+    /**
+     * Force recomputation on next call.
+     */
+    public void invalidate ()
+    {
+        declination = Float.NaN;
+    }
+
+    /**
+     * Get number of times the underlying model has been evaluated.
+     */
+    public int getComputeCount ()
+    {
+        return computes;
+    }
+
+    @Override  // DeclinationModel
+    public float getDeclination (double lat, double lon, double alt, long timems)
+    {
+        int lai = (int) Math.floor (lat / latLonCell);
+        int loi = (int) Math.floor (lon / latLonCell);
+        int ali = (int) Math.floor (alt / altCell);
+        if (Float.isNaN (declination) || (lai != latIdx) || (loi != lonIdx) || (ali != altIdx) ||
+                (Math.abs (timems - computedAt) > maxAge)) {
+            latIdx = lai;
+            lonIdx = loi;
+            altIdx = ali;
+            computedAt = timems;
+            double clat = Math.max (-89.999, Math.min (89.999, (lai + 0.5) * latLonCell));
+            declination = model.getDeclination (clat, (loi + 0.5) * latLonCell,
+                    (ali + 0.5) * altCell, timems);
+            computes ++;
+        }
+        return declination;
+    }
+}
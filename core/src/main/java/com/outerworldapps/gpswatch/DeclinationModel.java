@@ -0,0 +1,37 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Something that can compute magnetic declination.
+ */
+public interface DeclinationModel {
+
+    /**
+     * Get magnetic declination at the given point and time.
+     * @param lat = geodetic latitude, degrees
+     * @param lon = longitude, degrees
+     * @param alt = altitude above ellipsoid, metres
+     * @param timems = time, ms since 1970-01-01 UTC
+     * @return declination, degrees east of true north
+     */
+    float getDeclination (double lat, double lon, double alt, long timems);
+}
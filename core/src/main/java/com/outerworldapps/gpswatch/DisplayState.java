@@ -0,0 +1,154 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Everything the instrument display draws, in primitive form.
+ * Filled in by whatever thread processes the sensors and published
+ * to the drawing thread through a TripleBuffer, so the drawing code
+ * never sees a half-updated state and never has to take a lock.
+ */
+public class DisplayState {
+    public final static int MAXWPTS    = 4;    // waypoints displayed
+    public final static int WPTNAMELEN = 8;    // chars of waypoint name displayed
+
+    public boolean haveFix;
+    public boolean staleFix;       // fix is from the warm start file, not live
+    public long timeMs;            // dead-reckoned GPS time
+    public long fixElapsedMs;      // elapsedRealtime of the latest fix
+    public float trackMag;         // dead-reckoned GPS track, degrees magnetic
+    public float compRotDeg = Float.NaN;  // compass rotation (negative magnetic heading), NaN if none
+
+    public boolean haveSats;
+    public boolean staleSats;      // satellites are from the warm start file, not live
+    public final SatSnapshot sats = new SatSnapshot (64);
+
+    // waypoints, nearest first (or just the chosen one)
+    public int wptCount;
+    public final float[] wptBearingMag = new float[MAXWPTS];   // degrees magnetic
+    public final float[] wptDistance   = new float[MAXWPTS];   // metres
+    public final int[] wptNameLen      = new int[MAXWPTS];
+    public final char[] wptNames       = new char[MAXWPTS*WPTNAMELEN];   // name i at i*WPTNAMELEN
+
+    // sky track trails, trail t has points trailX/Y[trailStart[t] .. trailStart[t]+trailLen[t]-1]
+    public int trailCount;
+    public int trailVersion;       // incremented whenever the trails change
+    public int[] trailConstel = new int[0];
+    public int[] trailStart   = new int[0];
+    public int[] trailLen     = new int[0];
+    public float[] trailX     = new float[0];
+    public float[] trailY     = new float[0];
+    private int trailPoints;
+
+    /**
+     * Flatten the sky track history into the trail arrays.
+     * Only allocates if there are more trails or points than ever seen before.
+     */
+    public void setTrails (SkyTrackHistory sth)
+    {
+        int nslots = sth.getSlotCount ();
+        int ntrails = 0;
+        int npoints = 0;
+        for (int slot = 0; slot < nslots; slot ++) {
+            if (sth.isUsed (slot)) {
+                int n = sth.getTrailCount (slot);
+                if (n >= 2) {
+                    ntrails ++;
+                    npoints += n;
+                }
+            }
+        }
+        ensureTrails (ntrails, npoints);
+
+        int t = 0;
+        int p = 0;
+        for (int slot = 0; slot < nslots; slot ++) {
+            if (! sth.isUsed (slot)) continue;
+            int n = sth.getTrailCount (slot);
+            if (n < 2) continue;
+            trailConstel[t] = sth.getConstellation (slot);
+            trailStart[t]   = p;
+            trailLen[t]     = n;
+            for (int i = 0; i < n; i ++) {
+                trailX[p] = sth.getX (slot, i);
+                trailY[p] = sth.getY (slot, i);
+                p ++;
+            }
+            t ++;
+        }
+        trailCount  = t;
+        trailPoints = p;
+        trailVersion ++;
+    }
+
+    /**
+     * Make this state a copy of another.
+     * Trails are only copied if they changed since the last copy.
+     */
+    public void copyFrom (DisplayState other)
+    {
+        haveFix      = other.haveFix;
+        staleFix     = other.staleFix;
+        timeMs       = other.timeMs;
+        fixElapsedMs = other.fixElapsedMs;
+        trackMag     = other.trackMag;
+        compRotDeg   = other.compRotDeg;
+        haveSats     = other.haveSats;
+        staleSats    = other.staleSats;
+        if (haveSats) sats.copyFrom (other.sats);
+
+        int nw = other.wptCount;
+        wptCount = nw;
+        System.arraycopy (other.wptBearingMag, 0, wptBearingMag, 0, nw);
+        System.arraycopy (other.wptDistance,   0, wptDistance,   0, nw);
+        System.arraycopy (other.wptNameLen,    0, wptNameLen,    0, nw);
+        System.arraycopy (other.wptNames,      0, wptNames,      0, nw * WPTNAMELEN);
+
+        if (trailVersion != other.trailVersion) {
+            int nt = other.trailCount;
+            int np = other.trailPoints;
+            ensureTrails (nt, np);
+            System.arraycopy (other.trailConstel, 0, trailConstel, 0, nt);
+            System.arraycopy (other.trailStart,   0, trailStart,   0, nt);
+            System.arraycopy (other.trailLen,     0, trailLen,     0, nt);
+            System.arraycopy (other.trailX,       0, trailX,       0, np);
+            System.arraycopy (other.trailY,       0, trailY,       0, np);
+            trailCount   = nt;
+            trailPoints  = np;
+            trailVersion = other.trailVersion;
+        }
+    }
+
+    private void ensureTrails (int ntrails, int npoints)
+    {
+        if (ntrails > trailStart.length) {
+            int n = Math.max (16, ntrails * 2);
+            trailConstel = new int[n];
+            trailStart   = new int[n];
+            trailLen     = new int[n];
+        }
+        if (npoints > trailX.length) {
+            int n = Math.max (256, npoints * 2);
+            trailX = new float[n];
+            trailY = new float[n];
+        }
+    }
+}
@@ -0,0 +1,152 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Decide how often to ask the GPS for fixes.
+ * Pure Java state machine, the caller feeds it ambient/screen transitions and speeds
+ * and re-registers for location updates whenever a method says the settings changed.
+ */
+public class GpsPowerPolicy {
+    public final static int STATE_MOVING     = 0;  // interactive, moving
+    public final static int STATE_STATIONARY = 1;  // interactive, not moving
+    public final static int STATE_AMBIENT    = 2;  // always-on display
+    public final static int STATE_SCREENOFF  = 3;  // not visible at all
+    private final static String[] stateNames = new String[] { "moving", "stationary", "ambient", "screenoff" };
+
+    private boolean ambient;
+    private boolean screenOn = true;
+    private boolean stationary;
+    private float moveSpeed = 1.5F;    // become moving at or above this speed, m/s
+    private float stopSpeed = 0.5F;    // can become stationary below this speed, m/s
+    private int state;
+    private long slowSince = -1;       // time speed first dropped below stopSpeed, -1 if not slow
+    private long stopTime  = 60000;    // must be slow this long to become stationary, ms
+
+    //                                          moving stationary ambient screenoff
+    private final int[]   intervalMs  = new int[]   {  1000,  5000, 20000, 60000 };
+    private final float[] minDistance = new float[] {  0.0F,  5.0F, 10.0F, 50.0F };
+    private final int[]   batchMs     = new int[]   {     0,     0, 60000, 300000 };
+
+    /**
+     * Change the settings used for a state.
+     * @param state = STATE_*
+     * @param interval = minimum time between fixes, ms
+     * @param mindist = minimum distance between fixes, metres
+     * @param batch = maximum time fixes may be held in the receiver before delivery, ms
+     */
+    public void setRates (int state, int interval, float mindist, int batch)
+    {
+        intervalMs[state]  = interval;
+        minDistance[state] = mindist;
+        batchMs[state]     = batch;
+    }
+
+    /**
+     * Change the stationary detection thresholds.
+     */
+    public void setStationary (float stopSpeed, float moveSpeed, long stopTime)
+    {
+        this.stopSpeed = stopSpeed;
+        this.moveSpeed = moveSpeed;
+        this.stopTime  = stopTime;
+    }
+
+    public int getState ()
+    {
+        return state;
+    }
+
+    public String getStateName ()
+    {
+        return stateNames[state];
+    }
+
+    public int getIntervalMs ()
+    {
+        return intervalMs[state];
+    }
+
+    public float getMinDistance ()
+    {
+        return minDistance[state];
+    }
+
+    public int getBatchLatencyMs ()
+    {
+        return batchMs[state];
+    }
+
+    /**
+     * Entering or leaving ambient mode.
+     * @return true iff settings changed
+     */
+    public boolean setAmbient (boolean amb)
+    {
+        ambient = amb;
+        return update ();
+    }
+
+    /**
+     * Screen turned on or off.
+     * @return true iff settings changed
+     */
+    public boolean setScreenOn (boolean on)
+    {
+        screenOn = on;
+        return update ();
+    }
+
+    /**
+     * Got a speed reading with a fix.
+     * @param speed = ground speed, m/s
+     * @param timems = time of fix, ms
+     * @return true iff settings changed
+     */
+    public boolean onSpeed (float speed, long timems)
+    {
+        if (speed >= moveSpeed) {
+            slowSince  = -1;
+            stationary = false;
+        } else if (speed < stopSpeed) {
+            if (slowSince < 0) slowSince = timems;
+            else if (timems - slowSince >= stopTime) stationary = true;
+        } else {
+            slowSince = -1;
+        }
+        return update ();
+    }
+
+    private boolean update ()
+    {
+        int newstate;
+        if (! screenOn) newstate = STATE_SCREENOFF;
+        else if (ambient) newstate = STATE_AMBIENT;
+        else if (stationary) newstate = STATE_STATIONARY;
+        else newstate = STATE_MOVING;
+        if (newstate == state) return false;
+        int oldstate = state;
+        state = newstate;
+        return (intervalMs[oldstate]  != intervalMs[newstate]) ||
+               (minDistance[oldstate] != minDistance[newstate]) ||
+               (batchMs[oldstate]     != batchMs[newstate]);
+    }
+}
@@ -0,0 +1,146 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Fixed-bucket histogram of long values.
+ * Recording does not allocate.  Not synchronized, a reader on another thread
+ * may see a slightly inconsistent snapshot, which is fine for diagnostics.
+ */
+public class Histogram {
+    private final long[] bounds;   // upper bound (inclusive) of each bucket but the last
+    private final long[] counts;   // one more than bounds, last is overflow
+    private long count;
+    private long max;
+    private long min;
+    private long sum;
+    public final String name;
+
+    /**
+     * @param name = name for displaying
+     * @param bounds = ascending inclusive upper bounds of the buckets,
+     *                 values greater than the last go in an overflow bucket
+     */
+    public Histogram (String name, long... bounds)
+    {
+        this.name   = name;
+        this.bounds = bounds;
+        this.counts = new long[bounds.length+1];
+        reset ();
+    }
+
+    public void reset ()
+    {
+        for (int i = 0; i < counts.length; i ++) counts[i] = 0;
+        count = 0;
+        sum   = 0;
+        max   = Long.MIN_VALUE;
+        min   = Long.MAX_VALUE;
+    }
+
+    /**
+     * Make this a copy of another with the same bounds, eg to hand off to another thread.
+     */
+    public void copyFrom (Histogram o)
+    {
+        System.arraycopy (o.counts, 0, counts, 0, counts.length);
+        count = o.count;
+        max   = o.max;
+        min   = o.min;
+        sum   = o.sum;
+    }
+
+    public void record (long value)
+    {
+        int lo = 0;
+        int hi = bounds.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (value <= bounds[mid]) hi = mid;
+            else lo = mid + 1;
+        }
+        counts[lo] ++;
+        count ++;
+        sum += value;
+        if (max < value) max = value;
+        if (min > value) min = value;
+    }
+
+    public long getCount ()
+    {
+        return count;
+    }
+
+    public long getMax ()
+    {
+        return (count == 0) ? 0 : max;
+    }
+
+    public long getMin ()
+    {
+        return (count == 0) ? 0 : min;
+    }
+
+    public long getMean ()
+    {
+        return (count == 0) ? 0 : sum / count;
+    }
+
+    /**
+     * Get upper bound of bucket containing the given percentile.
+     * @param pct = 0..100
+     * @return bucket bound, or max if in overflow bucket
+     */
+    public long getPercentile (double pct)
+    {
+        long target = (long) Math.ceil (count * pct / 100.0);
+        long seen = 0;
+        for (int i = 0; i < bounds.length; i ++) {
+            seen += counts[i];
+            if ((seen >= target) && (seen > 0)) return Math.min (bounds[i], getMax ());
+        }
+        return getMax ();
+    }
+
+    /**
+     * Append one-line summary.
+     */
+    public void append (StringBuilder sb)
+    {
+        sb.append (name);
+        sb.append (" n=").append (count);
+        sb.append (" avg=").append (getMean ());
+        sb.append (" p50=").append (getPercentile (50.0));
+        sb.append (" p95=").append (getPercentile (95.0));
+        sb.append (" max=").append (getMax ());
+    }
+
+    /**
+     * Append bucket counts.
+     */
+    public void appendBuckets (StringBuilder sb)
+    {
+        for (int i = 0; i < bounds.length; i ++) {
+            sb.append (" <=").append (bounds[i]).append (':').append (counts[i]);
+        }
+        sb.append (" >").append (bounds[bounds.length-1]).append (':').append (counts[bounds.length]);
+    }
+}
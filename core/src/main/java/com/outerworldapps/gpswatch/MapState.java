@@ -0,0 +1,49 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Position for the moving map, as filtered at a given time.
+ * The map extrapolates it along the track to each frame.
+ * Also the simplified track so far, for breadcrumbs.
+ */
+public class MapState {
+    public final static int BREADCRUMBS = 500;   // most points kept in breadcrumb track
+
+    public boolean haveFix;
+    public double lat;             // degrees
+    public double lon;             // degrees
+    public float speed;            // m/s
+    public float track;            // degrees true, NaN if unknown
+    public long elapsedMs;         // elapsedRealtime the position is for
+    public final TrackSimplifier breadcrumbs = new TrackSimplifier (BREADCRUMBS, 1.0, 1);  // copied into, never added to
+
+    public void copyFrom (MapState other)
+    {
+        haveFix   = other.haveFix;
+        lat       = other.lat;
+        lon       = other.lon;
+        speed     = other.speed;
+        track     = other.track;
+        elapsedMs = other.elapsedMs;
+        breadcrumbs.copyFrom (other.breadcrumbs);
+    }
+}
@@ -0,0 +1,99 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import java.io.PrintWriter;
+
+/**
+ * Registry of performance metrics.
+ * Everything is preallocated so instrumented code paths don't allocate.
+ */
+public class Metrics {
+    public final static Histogram drawTimeUs = new Histogram ("draw us",
+            100, 200, 500, 1000, 2000, 5000, 10000, 16667, 33333, 100000);
+    public final static Histogram fixAgeMs   = new Histogram ("fix age ms",
+            10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000);
+    public final static Histogram startupMs  = new Histogram ("start to useful frame ms",
+            50, 100, 200, 300, 500, 1000, 2000, 5000);
+    public final static Histogram firstFixMs = new Histogram ("start to fix ms",
+            1000, 2000, 5000, 10000, 20000, 30000, 60000, 120000, 300000);
+    public final static Histogram tileHitPct = new Histogram ("map tile hit %",
+            0, 25, 50, 75, 90, 95, 99, 100);
+    public final static RateCounter redraws       = new RateCounter ("redraws/s");
+    public final static RateCounter sensorEvents  = new RateCounter ("sensor/s");
+    public final static RateCounter sensorWakeups = new RateCounter ("sensor wakeups/s");
+    public final static RateCounter gnssStatuses  = new RateCounter ("gnss/s");
+    public final static RateCounter locations     = new RateCounter ("fixes/s");
+    public final static RateCounter ambientDraws  = new RateCounter ("ambient draws/min", 60000);
+    public final static RateCounter tileLoads     = new RateCounter ("tile loads/s");
+
+    private final static Histogram[]   histograms   = new Histogram[]   { drawTimeUs, fixAgeMs, startupMs, firstFixMs, tileHitPct };
+    private final static RateCounter[] rateCounters = new RateCounter[] { redraws, sensorEvents, sensorWakeups, gnssStatuses, locations, ambientDraws, tileLoads };
+
+    /**
+     * Get number of summary lines.
+     */
+    public static int getLineCount ()
+    {
+        return histograms.length + rateCounters.length;
+    }
+
+    /**
+     * Append a one-line summary.
+     * @param i = 0..getLineCount()-1
+     */
+    public static void appendLine (StringBuilder sb, int i)
+    {
+        if (i < histograms.length) histograms[i].append (sb);
+        else rateCounters[i-histograms.length].append (sb);
+    }
+
+    /**
+     * Dump everything including bucket counts.
+     */
+    public static void dump (PrintWriter pw)
+    {
+        StringBuilder sb = new StringBuilder ();
+        for (Histogram h : histograms) {
+            sb.setLength (0);
+            h.append (sb);
+            pw.println (sb);
+            sb.setLength (0);
+            h.appendBuckets (sb);
+            pw.println (sb);
+        }
+        for (RateCounter r : rateCounters) {
+            sb.setLength (0);
+            r.append (sb);
+            pw.println (sb);
+            sb.setLength (0);
+            r.histogram.appendBuckets (sb);
+            pw.println (sb);
+        }
+        pw.flush ();
+    }
+
+    public static void reset ()
+    {
+        for (Histogram h : histograms) h.reset ();
+        for (RateCounter r : rateCounters) r.reset ();
+    }
+}
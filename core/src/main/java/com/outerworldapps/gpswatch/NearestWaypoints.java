@@ -0,0 +1,238 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import java.util.Arrays;
+
+/**
+ * Keep track of the nearest few waypoints to a moving position.
+ *
+ * A rebuild collects from the grid every waypoint within d + 2*margin of the
+ * position, where d is the distance to the n'th nearest.  Until the position moves
+ * more than margin from where that was done, the n nearest are guaranteed to be
+ * among those candidates, so each fix only re-ranks the candidates instead of
+ * searching the grid.  Nothing is allocated once the candidate array is big enough.
+ *
+ * Distances used for ranking are flat-earth around the position, good enough
+ * for picking neighbours; the reported distance and bearing are great circle.
+ */
+public class NearestWaypoints {
+    private final static double EARTH_RADIUS = 6371000.0;     // metres
+    private final static double M_PER_DEG = EARTH_RADIUS * Math.PI / 180.0;
+
+    public int count;              // number of results, up to n
+    public final int[] index;      // waypoint numbers, nearest first
+    public final float[] distance; // metres
+    public final float[] bearing;  // degrees true
+
+    private boolean haveCenter;
+    private double centerLat;      // where candidates were last collected
+    private double centerLon;
+    private double margin;         // metres
+    private int[] cands = new int[64];
+    private int ncands;
+    private int rebuilds;
+    private int target = -1;
+    private WaypointDb db;
+
+    /**
+     * @param db = waypoints to search
+     * @param n = number of nearest waypoints to keep
+     * @param margin = collect candidates for moving this far, metres
+     */
+    public NearestWaypoints (WaypointDb db, int n, double margin)
+    {
+        this.db     = db;
+        this.margin = margin;
+        index    = new int[n];
+        distance = new float[n];
+        bearing  = new float[n];
+    }
+
+    /**
+     * Only report the given waypoint instead of the nearest ones.
+     * @param wpt = waypoint number, -1 to go back to nearest
+     */
+    public void setTarget (int wpt)
+    {
+        target = wpt;
+    }
+
+    public WaypointDb getDb ()
+    {
+        return db;
+    }
+
+    /**
+     * Get number of times candidates were collected from the grid.
+     */
+    public int getRebuildCount ()
+    {
+        return rebuilds;
+    }
+
+    /**
+     * Update results for a new position.
+     */
+    public void update (double lat, double lon)
+    {
+        if (target >= 0) {
+            count = 1;
+            index[0] = target;
+        } else {
+            if (! haveCenter || (flatDist (lat, lon, centerLat, centerLon) > margin)) rebuild (lat, lon);
+            rank (lat, lon);
+        }
+        for (int i = 0; i < count; i ++) {
+            int w = index[i];
+            greatCircle (lat, lon, db.getLat (w), db.getLon (w), i);
+        }
+    }
+
+    /**
+     * Pick the n nearest candidates into index[] by insertion into the short sorted result list.
+     */
+    private void rank (double lat, double lon)
+    {
+        int n = index.length;
+        int found = 0;
+        for (int c = 0; c < ncands; c ++) {
+            int w = cands[c];
+            float d = (float) flatDist (lat, lon, db.getLat (w), db.getLon (w));
+            if ((found == n) && (d >= distance[n-1])) continue;
+            int i = (found < n) ? found ++ : n - 1;
+            while ((i > 0) && (distance[i-1] > d)) {
+                distance[i] = distance[i-1];
+                index[i]    = index[i-1];
+                -- i;
+            }
+            distance[i] = d;
+            index[i]    = w;
+        }
+        count = found;
+    }
+
+    /**
+     * Collect candidates from the grid around the given position.
+     */
+    private void rebuild (double lat, double lon)
+    {
+        rebuilds ++;
+        haveCenter = true;
+        centerLat  = lat;
+        centerLon  = lon;
+        int n = index.length;
+
+        // widen search until it holds at least n waypoints (or all of them)
+        double radius = Math.max (db.getCellDeg () * M_PER_DEG, margin * 2.0);
+        while (true) {
+            collect (lat, lon, radius);
+            if ((ncands >= n) || (radius > Math.PI * EARTH_RADIUS)) break;
+            radius *= 2.0;
+        }
+
+        // find distance to n'th nearest then make sure everything within that + 2*margin is included
+        if (ncands > 0) {
+            rank (lat, lon);
+            double needed = distance[count-1] + 2.0 * margin;
+            if (needed > radius) collect (lat, lon, needed);
+        }
+    }
+
+    /**
+     * Put all waypoints within radius metres of the position into cands[].
+     */
+    private void collect (double lat, double lon, double radius)
+    {
+        ncands = 0;
+        double cellDeg = db.getCellDeg ();
+        double dlat = radius / M_PER_DEG;
+        double latLo = lat - dlat;
+        double latHi = lat + dlat;
+        int rowLo = Math.max ((int) Math.floor ((latLo - db.getMinLat ()) / cellDeg), 0);
+        int rowHi = Math.min ((int) Math.floor ((latHi - db.getMinLat ()) / cellDeg), db.getRows () - 1);
+        if (rowLo > rowHi) return;
+
+        double maxAbsLat = Math.max (Math.abs (latLo), Math.abs (latHi));
+        double cos = (maxAbsLat >= 89.0) ? 0.0 : Math.cos (Math.toRadians (maxAbsLat));
+        double dlon = (cos * 180.0 <= dlat) ? 180.0 : dlat / cos;
+        if (dlon >= 180.0) {
+            collectLons (lat, lon, radius, rowLo, rowHi, -180.0, 180.0);
+        } else {
+            double lonLo = lon - dlon;
+            double lonHi = lon + dlon;
+            collectLons (lat, lon, radius, rowLo, rowHi, lonLo, lonHi);
+            if (lonLo < -180.0) collectLons (lat, lon, radius, rowLo, rowHi, lonLo + 360.0, 180.0);
+            if (lonHi >  180.0) collectLons (lat, lon, radius, rowLo, rowHi, -180.0, lonHi - 360.0);
+        }
+    }
+
+    private void collectLons (double lat, double lon, double radius, int rowLo, int rowHi, double lonLo, double lonHi)
+    {
+        double cellDeg = db.getCellDeg ();
+        int cols = db.getCols ();
+        int colLo = Math.max ((int) Math.floor ((lonLo - db.getMinLon ()) / cellDeg), 0);
+        int colHi = Math.min ((int) Math.floor ((lonHi - db.getMinLon ()) / cellDeg), cols - 1);
+        if (colLo > colHi) return;
+        for (int row = rowLo; row <= rowHi; row ++) {
+            int beg = db.getCellStart (row * cols + colLo);
+            int end = db.getCellStart (row * cols + colHi + 1);
+            for (int w = beg; w < end; w ++) {
+                if (flatDist (lat, lon, db.getLat (w), db.getLon (w)) <= radius) {
+                    if (ncands == cands.length) cands = Arrays.copyOf (cands, ncands * 2);
+                    cands[ncands++] = w;
+                }
+            }
+        }
+    }
+
+    /**
+     * Flat-earth distance in metres, fine for ranking neighbours.
+     */
+    private static double flatDist (double lat1, double lon1, double lat2, double lon2)
+    {
+        double dlon = lon2 - lon1;
+        if (dlon > 180.0) dlon -= 360.0;
+        if (dlon < -180.0) dlon += 360.0;
+        double dx = dlon * Math.cos (Math.toRadians ((lat1 + lat2) / 2.0));
+        double dy = lat2 - lat1;
+        return Math.sqrt (dx * dx + dy * dy) * M_PER_DEG;
+    }
+
+    /**
+     * Great circle distance and initial bearing into result i.
+     */
+    private void greatCircle (double lat1, double lon1, double lat2, double lon2, int i)
+    {
+        double phi1 = Math.toRadians (lat1);
+        double phi2 = Math.toRadians (lat2);
+        double dphi = phi2 - phi1;
+        double dlam = Math.toRadians (lon2 - lon1);
+        double sdp = Math.sin (dphi / 2.0);
+        double sdl = Math.sin (dlam / 2.0);
+        double a = sdp * sdp + Math.cos (phi1) * Math.cos (phi2) * sdl * sdl;
+        distance[i] = (float) (2.0 * EARTH_RADIUS * Math.asin (Math.min (1.0, Math.sqrt (a))));
+        double y = Math.sin (dlam) * Math.cos (phi2);
+        double x = Math.cos (phi1) * Math.sin (phi2) - Math.sin (phi1) * Math.cos (phi2) * Math.cos (dlam);
+        double b = Math.toDegrees (Math.atan2 (y, x));
+        bearing[i] = (float) ((b < 0.0) ? b + 360.0 : b);
+    }
+}
@@ -0,0 +1,608 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parse NMEA 0183 sentences (GGA, RMC, GSA, GSV, VTG) from a byte stream.
+ * Sentences are parsed in place from a reused line buffer, nothing is allocated per sentence.
+ *
+ * A fix is reported for each valid RMC sentence once its epoch is complete, with the
+ * altitude, HDOP and satellite count from the GGA sentence of the same epoch (same time
+ * of day).  Receivers send them in either order, so if the RMC comes first, the fix is held
+ * until that GGA arrives, or reported without GGA values when the next epoch's RMC or GGA
+ * shows this epoch had none.  Once two RMCs in a row arrive before any GGA has been seen,
+ * the stream is taken to have no GGA and fixes are reported at once.
+ * GSV sets from all constellations are accumulated
+ * into one snapshot, which is reported when a set starts repeating (ie, one epoch late),
+ * with used-in-fix flags from the latest group of GSA sentences.  GSV messages out of
+ * sequence (eg, after a dropped one) are ignored until the next message 1 so sets from
+ * different epochs are never mixed.
+ */
+public class NmeaParser {
+
+    public interface Listener {
+        /**
+         * Got a fix, read it from the parser's fix* fields.
+         */
+        void onNmeaFix (NmeaParser parser);
+
+        /**
+         * Got satellite status, only valid during call.
+         */
+        void onNmeaSatellites (SatSnapshot sats);
+    }
+
+    private final static int MAXLINE   = 120;  // spec says 82, allow some slop
+    private final static int MAXFIELDS = 40;
+    private final static float KNOTS_TO_MPS = 1852.0F / 3600.0F;
+    private final static int DAYMS = 86400000;
+
+    // talkers
+    private final static int T_GP = 0;
+    private final static int T_GL = 1;
+    private final static int T_GA = 2;
+    private final static int T_GB = 3;
+    private final static int T_GQ = 4;
+    private final static int T_GN = 5;
+    private final static int T_OTHER = 6;
+
+    // sentence types
+    private final static int S_OTHER = 0;
+    private final static int S_GGA = 1;
+    private final static int S_GSA = 2;
+    private final static int S_GSV = 3;
+    private final static int S_RMC = 4;
+    private final static int S_VTG = 5;
+
+    // most recent fix, valid during onNmeaFix()
+    public long fixTime;        // ms since 1970 UTC
+    public double fixLat;       // degrees
+    public double fixLon;       // degrees
+    public float fixAlt;        // metres above WGS84 ellipsoid (MSL + geoid separation), NaN if unknown
+    public float fixAltMsl;     // metres above MSL, NaN if unknown
+    public float fixSpeed;      // m/s, NaN if unknown
+    public float fixCourse;     // degrees true, NaN if unknown
+    public float fixHdop;       // NaN if unknown
+    public int fixQuality;      // GGA fix quality, 0 if unknown
+    public int fixNumSats;      // satellites used, 0 if unknown
+
+    // statistics
+    public int badChecksums;
+    public int overflows;
+    public int sentences;
+
+    private byte[] line = new byte[MAXLINE];
+    private byte[] gsvNext = new byte[64];   // [talker*8+signal] next GSV message number expected
+    private float ggaAlt = Float.NaN;
+    private float ggaGeoidSep = Float.NaN;
+    private float ggaHdop = Float.NaN;
+    private float vtgCourse = Float.NaN;
+    private float vtgSpeed = Float.NaN;
+    private boolean ggaSeen;           // stream has GGA sentences
+    private boolean noGga;             // stream has RMC but no GGA sentences
+    private boolean rmcPending;        // fix* fields hold an RMC waiting for its GGA
+    private int ggaNumSats;
+    private int ggaQuality;
+    private int ggaTime = -1;          // time of day of last GGA, ms
+    private int lastType;              // type of previous sentence
+    private int lineLen = -1;          // -1 when waiting for '$'
+    private int nfields;
+    private int rmcTime;               // time of day of pending RMC, ms
+    private int[] fieldBeg = new int[MAXFIELDS];
+    private int[] fieldEnd = new int[MAXFIELDS];
+    private Listener listener;
+    private long gsvStarted;           // bit per talker/signal whose GSV set has started this epoch
+    private long[] usedBits = new long[8*4];   // [constellation*4+svid/64] used-in-fix bit per svid
+    private SatSnapshot pending = new SatSnapshot (64);
+
+    public NmeaParser (Listener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * Process all remaining bytes in buffer.
+     */
+    public void feed (ByteBuffer buf)
+    {
+        if (buf.hasArray ()) {
+            int pos = buf.position ();
+            feed (buf.array (), buf.arrayOffset () + pos, buf.remaining ());
+            buf.position (buf.limit ());
+        } else {
+            while (buf.hasRemaining ()) feed (buf.get ());
+        }
+    }
+
+    /**
+     * Process bytes from array.
+     */
+    public void feed (byte[] bytes, int offset, int length)
+    {
+        for (int i = 0; i < length; i ++) feed (bytes[offset+i]);
+    }
+
+    /**
+     * Process a single byte.
+     */
+    public void feed (byte b)
+    {
+        if (b == '$') {
+            line[0] = b;
+            lineLen = 1;
+        } else if (lineLen < 0) {
+            return;
+        } else if ((b == '\r') || (b == '\n')) {
+            if (lineLen > 1) process ();
+            lineLen = -1;
+        } else if (lineLen == MAXLINE) {
+            overflows ++;
+            lineLen = -1;
+        } else {
+            line[lineLen++] = b;
+        }
+    }
+
+    /**
+     * Got a complete line in line[0..lineLen-1] starting with '$'.
+     */
+    private void process ()
+    {
+        // validate checksum
+        int star = lineLen - 3;
+        if ((star < 6) || (line[star] != '*')) {
+            badChecksums ++;
+            return;
+        }
+        int sum = 0;
+        for (int i = 1; i < star; i ++) sum ^= line[i];
+        int hi = hexDigit (line[star+1]);
+        int lo = hexDigit (line[star+2]);
+        if ((hi < 0) || (lo < 0) || (sum != hi * 16 + lo)) {
+            badChecksums ++;
+            return;
+        }
+        sentences ++;
+
+        // split into fields, field 0 is the address
+        nfields = 0;
+        int beg = 1;
+        for (int i = 1; i <= star; i ++) {
+            if ((i == star) || (line[i] == ',')) {
+                if (nfields == MAXFIELDS) break;
+                fieldBeg[nfields] = beg;
+                fieldEnd[nfields] = i;
+                nfields ++;
+                beg = i + 1;
+            }
+        }
+        if (fieldEnd[0] - fieldBeg[0] != 5) {
+            lastType = S_OTHER;
+            return;
+        }
+
+        int talker = talker (line[1], line[2]);
+        int type   = sentenceType (line[3], line[4], line[5]);
+        switch (type) {
+            case S_GGA: processGGA (); break;
+            case S_GSA: processGSA (talker); break;
+            case S_GSV: processGSV (talker); break;
+            case S_RMC: processRMC (); break;
+            case S_VTG: processVTG (); break;
+        }
+        lastType = type;
+    }
+
+    // $--GGA,hhmmss.ss,llll.ll,a,yyyyy.yy,a,q,nn,h.h,a.a,M,g.g,M,x.x,xxxx*hh
+    private void processGGA ()
+    {
+        ggaSeen    = true;
+        noGga      = false;
+        ggaTime    = parseTimeOfDay (1);
+        ggaQuality = parseInt (6, 0);
+        ggaNumSats = parseInt (7, 0);
+        ggaHdop    = (float) parseDouble (8);
+        ggaAlt     = (float) parseDouble (9);
+        ggaGeoidSep = (float) parseDouble (11);
+
+        // completes the pending fix, or shows its epoch had no GGA
+        if (rmcPending) reportFix ((ggaTime >= 0) && (ggaTime == rmcTime));
+    }
+
+    // $--RMC,hhmmss.ss,A,llll.ll,a,yyyyy.yy,a,x.x,x.x,ddmmyy,x.x,a*hh
+    private void processRMC ()
+    {
+        // a new epoch, previous one never got its GGA
+        if (rmcPending) {
+            if (! ggaSeen) noGga = true;
+            reportFix (false);
+        }
+
+        if ((nfields < 10) || (fieldChar (2) != 'A')) return;
+        int tod  = parseTimeOfDay (1);
+        long day = parseDate (9);
+        if ((tod < 0) || (day == Long.MIN_VALUE)) return;
+        double lat = parseLatLon (3, 4);
+        double lon = parseLatLon (5, 6);
+        if (Double.isNaN (lat) || Double.isNaN (lon)) return;
+
+        fixTime   = day * DAYMS + tod;
+        fixLat    = lat;
+        fixLon    = lon;
+        fixSpeed  = (float) parseDouble (7) * KNOTS_TO_MPS;
+        fixCourse = (float) parseDouble (8);
+        rmcTime   = tod;
+
+        // report now if this epoch's GGA came first or there won't be one, else wait for it
+        if (tod == ggaTime) {
+            reportFix (true);
+        } else if (noGga) {
+            reportFix (false);
+        } else {
+            rmcPending = true;
+        }
+    }
+
+    /**
+     * Fill in the rest of the fix from this epoch's GGA (if it had one) and VTG, and report it.
+     */
+    private void reportFix (boolean haveGga)
+    {
+        rmcPending = false;
+        if (Float.isNaN (fixSpeed))  fixSpeed  = vtgSpeed;
+        if (Float.isNaN (fixCourse)) fixCourse = vtgCourse;
+        if (haveGga) {
+            fixAltMsl  = ggaAlt;
+            fixAlt     = ggaAlt + ggaGeoidSep;
+            fixHdop    = ggaHdop;
+            fixQuality = ggaQuality;
+            fixNumSats = ggaNumSats;
+        } else {
+            fixAltMsl  = Float.NaN;
+            fixAlt     = Float.NaN;
+            fixHdop    = Float.NaN;
+            fixQuality = 0;
+            fixNumSats = 0;
+        }
+        listener.onNmeaFix (this);
+    }
+
+    // $--VTG,x.x,T,x.x,M,x.x,N,x.x,K,m*hh
+    private void processVTG ()
+    {
+        vtgCourse = (float) parseDouble (1);
+        vtgSpeed  = (float) parseDouble (5) * KNOTS_TO_MPS;
+    }
+
+    // $--GSA,a,x,xx,xx,xx,xx,xx,xx,xx,xx,xx,xx,xx,xx,p.p,h.h,v.v[,s]*hh
+    private void processGSA (int talker)
+    {
+        // first of a group of GSAs starts a new set of used satellites
+        if (lastType != S_GSA) {
+            for (int i = 0; i < usedBits.length; i ++) usedBits[i] = 0;
+        }
+        int sysid = parseInt (18, 0);
+        if (sysid > 0) talker = systemIdTalker (sysid);
+        for (int f = 3; (f <= 14) && (f < nfields); f ++) {
+            int prn = parseInt (f, 0);
+            if (prn <= 0) continue;
+            int cs = mapPrn (talker, prn);
+            int constel = cs >>> 16;
+            int svid = cs & 0xFFFF;
+            if (svid < 256) usedBits[constel*4+(svid>>6)] |= 1L << (svid & 63);
+        }
+    }
+
+    // $--GSV,t,n,ss,pp,ee,aaa,cc,...[,s]*hh
+    private void processGSV (int talker)
+    {
+        int total  = parseInt (1, 0);
+        int msgnum = parseInt (2, 0);
+        if ((total <= 0) || (msgnum <= 0) || (msgnum > total)) return;
+        int signal = ((nfields - 4) % 4 == 1) ? parseHex (nfields - 1) : 0;
+        int set  = talker * 8 + Math.min (Math.max (signal, 0), 7);
+        long bit = 1L << set;
+
+        if (msgnum == 1) {
+            // same set starting over means we have them all for this epoch,
+            // even if its last message got dropped
+            if ((gsvStarted & bit) != 0) publish ();
+            gsvStarted |= bit;
+        } else if (((gsvStarted & bit) == 0) || (gsvNext[set] != msgnum)) {
+            // missed the start or a message of this set, skip the rest of it
+            return;
+        }
+        gsvNext[set] = (byte) (msgnum + 1);
+
+        for (int f = 4; f + 3 < nfields; f += 4) {
+            int prn = parseInt (f, 0);
+            if (prn <= 0) continue;
+            int cs = mapPrn (talker, prn);
+            float elev = (float) parseDouble (f + 1);
+            float azim = (float) parseDouble (f + 2);
+            float cn0  = (float) parseDouble (f + 3);
+            if (Float.isNaN (elev) || Float.isNaN (azim)) continue;
+            if (Float.isNaN (cn0)) cn0 = 0.0F;
+            pending.add (cs >>> 16, cs & 0xFFFF, cn0, elev, azim, false);
+        }
+    }
+
+    /**
+     * Report accumulated satellites and start accumulating anew.
+     */
+    private void publish ()
+    {
+        SatSnapshot sats = pending;
+        for (int i = 0; i < sats.count; i ++) {
+            int svid = sats.svid[i];
+            sats.used[i] = (svid < 256) &&
+                    ((usedBits[sats.constellation[i]*4+(svid>>6)] & (1L << (svid & 63))) != 0);
+        }
+        listener.onNmeaSatellites (sats);
+        sats.clear ();
+        gsvStarted = 0;
+    }
+
+    /**
+     * Convert NMEA PRN to constellation and Android-style svid.
+     * @return constellation << 16 | svid
+     */
+    private static int mapPrn (int talker, int prn)
+    {
+        int constel;
+        int svid = prn;
+        switch (talker) {
+            case T_GL: {
+                constel = SatSnapshot.CONSTELLATION_GLONASS;
+                if (prn > 64) svid = prn - 64;
+                break;
+            }
+            case T_GA: {
+                constel = SatSnapshot.CONSTELLATION_GALILEO;
+                if (prn > 300) svid = prn - 300;
+                break;
+            }
+            case T_GB: {
+                constel = SatSnapshot.CONSTELLATION_BEIDOU;
+                if (prn > 200) svid = prn - 200;
+                break;
+            }
+            case T_GQ: {
+                constel = SatSnapshot.CONSTELLATION_QZSS;
+                if (prn < 193) svid = prn + 192;
+                break;
+            }
+            default: {
+                // GP or GN, go by NMEA PRN ranges
+                if (prn <= 32) {
+                    constel = SatSnapshot.CONSTELLATION_GPS;
+                } else if (prn <= 64) {
+                    constel = SatSnapshot.CONSTELLATION_SBAS;
+                    svid = prn + 87;
+                } else if (prn <= 96) {
+                    constel = SatSnapshot.CONSTELLATION_GLONASS;
+                    svid = prn - 64;
+                } else if ((prn >= 193) && (prn <= 200)) {
+                    constel = SatSnapshot.CONSTELLATION_QZSS;
+                } else if ((prn >= 201) && (prn <= 263)) {
+                    constel = SatSnapshot.CONSTELLATION_BEIDOU;
+                    svid = prn - 200;
+                } else if ((prn >= 301) && (prn <= 336)) {
+                    constel = SatSnapshot.CONSTELLATION_GALILEO;
+                    svid = prn - 300;
+                } else {
+                    constel = SatSnapshot.CONSTELLATION_UNKNOWN;
+                }
+                break;
+            }
+        }
+        return (constel << 16) | (svid & 0xFFFF);
+    }
+
+    // NMEA 4.10 GSA system id
+    private static int systemIdTalker (int sysid)
+    {
+        switch (sysid) {
+            case 1: return T_GP;
+            case 2: return T_GL;
+            case 3: return T_GA;
+            case 4: return T_GB;
+            case 5: return T_GQ;
+            default: return T_OTHER;
+        }
+    }
+
+    private static int talker (byte a, byte b)
+    {
+        if (a != 'G') return (a == 'B' && b == 'D') ? T_GB : T_OTHER;
+        switch (b) {
+            case 'P': return T_GP;
+            case 'L': return T_GL;
+            case 'A': return T_GA;
+            case 'B': return T_GB;
+            case 'Q': return T_GQ;
+            case 'N': return T_GN;
+            default:  return T_OTHER;
+        }
+    }
+
+    private static int sentenceType (byte a, byte b, byte c)
+    {
+        if ((a == 'G') && (b == 'G') && (c == 'A')) return S_GGA;
+        if ((a == 'G') && (b == 'S') && (c == 'A')) return S_GSA;
+        if ((a == 'G') && (b == 'S') && (c == 'V')) return S_GSV;
+        if ((a == 'R') && (b == 'M') && (c == 'C')) return S_RMC;
+        if ((a == 'V') && (b == 'T') && (c == 'G')) return S_VTG;
+        return S_OTHER;
+    }
+
+    private static int hexDigit (byte b)
+    {
+        if ((b >= '0') && (b <= '9')) return b - '0';
+        if ((b >= 'A') && (b <= 'F')) return b - 'A' + 10;
+        if ((b >= 'a') && (b <= 'f')) return b - 'a' + 10;
+        return -1;
+    }
+
+    /////////////////////
+    //  Field parsing  //
+    /////////////////////
+
+    private char fieldChar (int f)
+    {
+        if ((f >= nfields) || (fieldBeg[f] == fieldEnd[f])) return 0;
+        return (char) line[fieldBeg[f]];
+    }
+
+    private int parseInt (int f, int dflt)
+    {
+        if ((f >= nfields) || (fieldBeg[f] == fieldEnd[f])) return dflt;
+        int val = 0;
+        for (int i = fieldBeg[f]; i < fieldEnd[f]; i ++) {
+            int d = line[i] - '0';
+            if ((d < 0) || (d > 9)) return dflt;
+            val = val * 10 + d;
+        }
+        return val;
+    }
+
+    private int parseHex (int f)
+    {
+        if ((f >= nfields) || (fieldBeg[f] == fieldEnd[f])) return -1;
+        int val = 0;
+        for (int i = fieldBeg[f]; i < fieldEnd[f]; i ++) {
+            int d = hexDigit (line[i]);
+            if (d < 0) return -1;
+            val = val * 16 + d;
+        }
+        return val;
+    }
+
+    /**
+     * Parse decimal number.
+     * @return value or NaN if empty or malformed
+     */
+    private double parseDouble (int f)
+    {
+        if ((f >= nfields) || (fieldBeg[f] == fieldEnd[f])) return Double.NaN;
+        int i   = fieldBeg[f];
+        int end = fieldEnd[f];
+        boolean neg = false;
+        if ((line[i] == '-') || (line[i] == '+')) {
+            neg = line[i] == '-';
+            if (++ i == end) return Double.NaN;
+        }
+        long mant = 0;
+        long div  = 1;
+        boolean point = false;
+        for (; i < end; i ++) {
+            byte b = line[i];
+            if (b == '.') {
+                if (point) return Double.NaN;
+                point = true;
+            } else if ((b >= '0') && (b <= '9')) {
+                if (mant < 100000000000000L) {
+                    mant = mant * 10 + (b - '0');
+                    if (point) div *= 10;
+                } else if (! point) {
+                    return Double.NaN;
+                }
+            } else {
+                return Double.NaN;
+            }
+        }
+        double val = (double) mant / div;
+        return neg ? - val : val;
+    }
+
+    /**
+     * Parse dddmm.mmmm lat/lon with N/S/E/W hemisphere.
+     * @return degrees or NaN if empty or malformed
+     */
+    private double parseLatLon (int f, int hf)
+    {
+        double val = parseDouble (f);
+        if (Double.isNaN (val)) return val;
+        double deg = Math.floor (val / 100.0);
+        deg += (val - deg * 100.0) / 60.0;
+        switch (fieldChar (hf)) {
+            case 'N': case 'E': return deg;
+            case 'S': case 'W': return - deg;
+            default: return Double.NaN;
+        }
+    }
+
+    /**
+     * Parse hhmmss[.sss] time of day.
+     * @return ms since midnight or -1 if empty or malformed
+     */
+    private int parseTimeOfDay (int f)
+    {
+        if ((f >= nfields) || (fieldEnd[f] - fieldBeg[f] < 6)) return -1;
+        int i = fieldBeg[f];
+        int hh = digits2 (i);
+        int mm = digits2 (i + 2);
+        if ((hh < 0) || (mm < 0)) return -1;
+        fieldBeg[f] = i + 4;
+        double ss = parseDouble (f);
+        fieldBeg[f] = i;
+        if (Double.isNaN (ss)) return -1;
+        return (hh * 60 + mm) * 60000 + (int) Math.round (ss * 1000.0);
+    }
+
+    /**
+     * Parse ddmmyy date.
+     * @return days since 1970-01-01 or Long.MIN_VALUE if empty or malformed
+     */
+    private long parseDate (int f)
+    {
+        if ((f >= nfields) || (fieldEnd[f] - fieldBeg[f] != 6)) return Long.MIN_VALUE;
+        int i  = fieldBeg[f];
+        int dd = digits2 (i);
+        int mo = digits2 (i + 2);
+        int yy = digits2 (i + 4);
+        if ((dd < 1) || (mo < 1) || (mo > 12) || (yy < 0)) return Long.MIN_VALUE;
+        return daysFromCivil (((yy < 80) ? 2000 : 1900) + yy, mo, dd);
+    }
+
+    private int digits2 (int i)
+    {
+        int a = line[i] - '0';
+        int b = line[i+1] - '0';
+        if ((a < 0) || (a > 9) || (b < 0) || (b > 9)) return -1;
+        return a * 10 + b;
+    }
+
+    /**
+     * Days since 1970-01-01 of the given proleptic Gregorian date.
+     */
+    private static long daysFromCivil (int y, int m, int d)
+    {
+        if (m <= 2) y --;
+        int era = y / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (m + ((m > 2) ? -3 : 9)) + 2) / 5 + d - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+}
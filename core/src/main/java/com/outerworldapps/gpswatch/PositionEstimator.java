@@ -0,0 +1,239 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Constant-velocity Kalman filter for position and velocity,
+ * so the display can be kept moving between sparse fixes by dead reckoning.
+ *
+ * Works in a local east/north plane in metres around a reference point.
+ * The east and north axes are independent under this model, so each has its own
+ * two-state filter (position, velocity) with a 2x2 covariance kept in primitive fields.
+ * Nothing is allocated per update.
+ */
+public class PositionEstimator {
+    private final static double EARTH_RADIUS = 6371000.0;     // metres
+    private final static double M_PER_DEG = EARTH_RADIUS * Math.PI / 180.0;
+    private final static double REREF_DIST = 10000.0;         // move reference point when this far away
+    private final static double SPEED_SIGMA = 0.5;            // m/s, speed measurement error
+    private final static double BEARING_SIGMA = Math.toRadians (5.0);
+    private final static int E = 0;
+    private final static int N = 1;
+
+    // filter state per axis
+    private final double[] pos = new double[2];   // metres from reference point
+    private final double[] vel = new double[2];   // metres/sec
+    private final double[] p00 = new double[2];   // covariance
+    private final double[] p01 = new double[2];
+    private final double[] p11 = new double[2];
+
+    private boolean haveFix;
+    private double accelVar;          // process noise, (m/s^2)^2
+    private double mPerDegLon;        // metres per degree longitude at reference latitude
+    private double refLat;
+    private double refLon;
+    private float compassHdg = Float.NaN;  // true heading from compass, NaN if none
+    private float stationarySpeed;    // below this speed use compass heading for track
+    private long maxPredict;          // don't extrapolate further than this past last fix, ms
+    private long stateTime;           // time of filter state, ms
+
+    // results of predict()
+    public double lat;                // degrees
+    public double lon;                // degrees
+    public float speed;               // m/s
+    public float track;               // degrees true, NaN if unknown
+
+    /**
+     * @param accelSigma = expected acceleration of the user, m/s^2
+     * @param stationarySpeed = below this speed, m/s, track comes from the compass if available
+     * @param maxPredict = maximum time to extrapolate past the last fix, ms
+     */
+    public PositionEstimator (double accelSigma, float stationarySpeed, long maxPredict)
+    {
+        this.accelVar        = accelSigma * accelSigma;
+        this.stationarySpeed = stationarySpeed;
+        this.maxPredict      = maxPredict;
+    }
+
+    public void reset ()
+    {
+        haveFix = false;
+    }
+
+    public boolean hasFix ()
+    {
+        return haveFix;
+    }
+
+    /**
+     * Set compass heading to use for track when stationary.
+     * @param hdg = degrees true, NaN if not available
+     */
+    public void setHeading (float hdg)
+    {
+        compassHdg = hdg;
+    }
+
+    /**
+     * Incorporate a fix.
+     * @param time = monotonic time of fix, ms
+     * @param flat = latitude, degrees
+     * @param flon = longitude, degrees
+     * @param accuracy = horizontal accuracy (1 sigma), metres
+     * @param fspeed = speed, m/s, NaN if not available
+     * @param fbearing = bearing, degrees true, NaN if not available
+     */
+    public void update (long time, double flat, double flon, float accuracy, float fspeed, float fbearing)
+    {
+        if (! (accuracy > 0.0F)) accuracy = 10.0F;
+        double r = (double) accuracy * accuracy;
+
+        if (! haveFix) {
+            setReference (flat, flon);
+            for (int a = 0; a < 2; a ++) {
+                pos[a] = 0.0;
+                vel[a] = 0.0;
+                p00[a] = r;
+                p01[a] = 0.0;
+                p11[a] = 100.0;   // (10 m/s)^2 until we know better
+            }
+            stateTime = time;
+            haveFix = true;
+        } else {
+            advance (time);
+        }
+
+        // measured position relative to reference point
+        double ze = (flon - refLon) * mPerDegLon;
+        double zn = (flat - refLat) * M_PER_DEG;
+        updatePos (E, ze, r);
+        updatePos (N, zn, r);
+
+        // measured velocity
+        if (! Float.isNaN (fspeed) && ! Float.isNaN (fbearing)) {
+            double b  = Math.toRadians (fbearing);
+            double rv = SPEED_SIGMA * SPEED_SIGMA + fspeed * BEARING_SIGMA * fspeed * BEARING_SIGMA;
+            updateVel (E, fspeed * Math.sin (b), rv);
+            updateVel (N, fspeed * Math.cos (b), rv);
+        } else if (! Float.isNaN (fspeed) && (fspeed < stationarySpeed)) {
+            double rv = SPEED_SIGMA * SPEED_SIGMA;
+            updateVel (E, 0.0, rv);
+            updateVel (N, 0.0, rv);
+        }
+
+        // keep reference point nearby so the flat-earth approximation holds
+        if (Math.hypot (pos[E], pos[N]) > REREF_DIST) {
+            double clat = refLat + pos[N] / M_PER_DEG;
+            double clon = refLon + pos[E] / mPerDegLon;
+            setReference (clat, clon);
+            pos[E] = 0.0;
+            pos[N] = 0.0;
+        }
+    }
+
+    /**
+     * Predict state at the given time into lat, lon, speed, track.
+     * Does not change the filter state.
+     * @param time = monotonic time, ms
+     * @return false if no fix yet
+     */
+    public boolean predict (long time)
+    {
+        if (! haveFix) return false;
+        double dt = Math.min (time - stateTime, maxPredict) / 1000.0;
+        if (dt < 0.0) dt = 0.0;
+        double e = pos[E] + vel[E] * dt;
+        double n = pos[N] + vel[N] * dt;
+        lat   = refLat + n / M_PER_DEG;
+        lon   = refLon + e / mPerDegLon;
+        speed = (float) Math.hypot (vel[E], vel[N]);
+        if ((speed < stationarySpeed) && ! Float.isNaN (compassHdg)) {
+            track = compassHdg;
+        } else if (speed > 0.0F) {
+            track = (float) Math.toDegrees (Math.atan2 (vel[E], vel[N]));
+            if (track < 0.0F) track += 360.0F;
+        } else {
+            track = Float.NaN;
+        }
+        return true;
+    }
+
+    private void setReference (double rlat, double rlon)
+    {
+        refLat = rlat;
+        refLon = rlon;
+        mPerDegLon = M_PER_DEG * Math.max (Math.cos (Math.toRadians (rlat)), 0.01);
+    }
+
+    /**
+     * Advance filter state to the given time.
+     */
+    private void advance (long time)
+    {
+        double dt = (time - stateTime) / 1000.0;
+        if (dt <= 0.0) return;
+        stateTime = time;
+        double q = accelVar;
+        double dt2 = dt * dt;
+        for (int a = 0; a < 2; a ++) {
+            pos[a] += vel[a] * dt;
+            p00[a] += dt * (2.0 * p01[a] + dt * p11[a]) + q * dt2 * dt / 3.0;
+            p01[a] += dt * p11[a] + q * dt2 / 2.0;
+            p11[a] += q * dt;
+        }
+    }
+
+    /**
+     * Measurement of position along an axis.
+     */
+    private void updatePos (int a, double z, double r)
+    {
+        double s  = p00[a] + r;
+        double k0 = p00[a] / s;
+        double k1 = p01[a] / s;
+        double y  = z - pos[a];
+        pos[a] += k0 * y;
+        vel[a] += k1 * y;
+        double q00 = p00[a];
+        double q01 = p01[a];
+        p00[a] = (1.0 - k0) * q00;
+        p01[a] = (1.0 - k0) * q01;
+        p11[a] -= k1 * q01;
+    }
+
+    /**
+     * Measurement of velocity along an axis.
+     */
+    private void updateVel (int a, double z, double r)
+    {
+        double s  = p11[a] + r;
+        double k0 = p01[a] / s;
+        double k1 = p11[a] / s;
+        double y  = z - vel[a];
+        pos[a] += k0 * y;
+        vel[a] += k1 * y;
+        double q01 = p01[a];
+        double q11 = p11[a];
+        p00[a] -= k0 * q01;
+        p01[a] -= k0 * q11;
+        p11[a]  = (1.0 - k1) * q11;
+    }
+}
@@ -0,0 +1,94 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Count events per second (or per some other window).
+ * Each completed window's rate goes into a histogram.
+ */
+public class RateCounter {
+    private long total;
+    private long window;
+    private long windowCount;
+    private long windowStart = -1;
+    private long lastRate;
+    public final Histogram histogram;
+
+    public RateCounter (String name)
+    {
+        this (name, 1000);
+    }
+
+    /**
+     * @param window = rates are events per this many ms
+     */
+    public RateCounter (String name, long window)
+    {
+        this.window = window;
+        histogram = new Histogram (name, 0, 1, 2, 5, 10, 20, 30, 50, 60, 100, 200);
+    }
+
+    /**
+     * An event happened.
+     * @param now = current time, ms
+     */
+    public void mark (long now)
+    {
+        if (windowStart < 0) {
+            windowStart = now;
+        } else if (now - windowStart >= window) {
+            lastRate = windowCount * window / (now - windowStart);
+            histogram.record (lastRate);
+            windowCount = 0;
+            windowStart = now;
+        }
+        windowCount ++;
+        total ++;
+    }
+
+    public long getTotal ()
+    {
+        return total;
+    }
+
+    /**
+     * Get events per window in last completed window.
+     */
+    public long getLastRate ()
+    {
+        return lastRate;
+    }
+
+    public void reset ()
+    {
+        histogram.reset ();
+        total       = 0;
+        windowCount = 0;
+        windowStart = -1;
+        lastRate    = 0;
+    }
+
+    public void append (StringBuilder sb)
+    {
+        histogram.append (sb);
+        sb.append (" now=").append (lastRate).append (" total=").append (total);
+    }
+}
@@ -0,0 +1,131 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Primitive snapshot of satellite status.
+ * Filled once per status update, including the sky plot projection,
+ * so the drawing code only has to read arrays.
+ */
+public class SatSnapshot {
+
+    // same values as android.location.GnssStatus.CONSTELLATION_*
+    public final static int CONSTELLATION_UNKNOWN = 0;
+    public final static int CONSTELLATION_GPS     = 1;
+    public final static int CONSTELLATION_SBAS    = 2;
+    public final static int CONSTELLATION_GLONASS = 3;
+    public final static int CONSTELLATION_QZSS    = 4;
+    public final static int CONSTELLATION_BEIDOU  = 5;
+    public final static int CONSTELLATION_GALILEO = 6;
+    public final static int CONSTELLATION_IRNSS   = 7;
+
+    public int count;
+    public boolean[] used;         // used in fix
+    public float[] azimuth;        // degrees true
+    public float[] carrierHz;      // carrier frequency, 0 if unknown
+    public float[] cn0;            // carrier-to-noise density, dB-Hz
+    public float[] elevation;      // degrees above horizon
+    public float[] skyX;           // sky plot position, unit circle is horizon, +X east
+    public float[] skyY;           //                                           +Y north
+    public int[] constellation;    // CONSTELLATION_*
+    public int[] svid;
+
+    public SatSnapshot (int capacity)
+    {
+        allocate (capacity);
+    }
+
+    private void allocate (int capacity)
+    {
+        used          = new boolean[capacity];
+        azimuth       = new float[capacity];
+        carrierHz     = new float[capacity];
+        cn0           = new float[capacity];
+        elevation     = new float[capacity];
+        skyX          = new float[capacity];
+        skyY          = new float[capacity];
+        constellation = new int[capacity];
+        svid          = new int[capacity];
+    }
+
+    public void clear ()
+    {
+        count = 0;
+    }
+
+    /**
+     * Append a satellite and compute its sky plot position.
+     * Only allocates if there are more satellites than ever seen before.
+     */
+    public void add (int constel, int id, float cn0dbhz, float elev, float azim, boolean usedinfix)
+    {
+        add (constel, id, cn0dbhz, elev, azim, usedinfix, 0.0F);
+    }
+
+    /**
+     * Append a satellite with known carrier frequency.
+     * @param carrier = carrier frequency, Hz, 0 if unknown
+     */
+    public void add (int constel, int id, float cn0dbhz, float elev, float azim, boolean usedinfix, float carrier)
+    {
+        int i = count;
+        if (i >= svid.length) grow (Math.max (16, i * 2));
+        constellation[i] = constel;
+        svid[i]      = id;
+        cn0[i]       = cn0dbhz;
+        elevation[i] = elev;
+        azimuth[i]   = azim;
+        used[i]      = usedinfix;
+        carrierHz[i] = carrier;
+        double radius = (90.0 - elev) / 90.0;
+        double azirad = Math.toRadians (azim);
+        skyX[i] = (float) (radius * Math.sin (azirad));
+        skyY[i] = (float) (radius * Math.cos (azirad));
+        count = i + 1;
+    }
+
+    /**
+     * Make this snapshot a copy of another.
+     */
+    public void copyFrom (SatSnapshot other)
+    {
+        int n = other.count;
+        if (n > svid.length) allocate (n);
+        System.arraycopy (other.used,          0, used,          0, n);
+        System.arraycopy (other.azimuth,       0, azimuth,       0, n);
+        System.arraycopy (other.carrierHz,     0, carrierHz,     0, n);
+        System.arraycopy (other.cn0,           0, cn0,           0, n);
+        System.arraycopy (other.elevation,     0, elevation,     0, n);
+        System.arraycopy (other.skyX,          0, skyX,          0, n);
+        System.arraycopy (other.skyY,          0, skyY,          0, n);
+        System.arraycopy (other.constellation, 0, constellation, 0, n);
+        System.arraycopy (other.svid,          0, svid,          0, n);
+        count = n;
+    }
+
+    private void grow (int capacity)
+    {
+        SatSnapshot old = new SatSnapshot (count);
+        old.copyFrom (this);
+        allocate (capacity);
+        copyFrom (old);
+    }
+}
@@ -0,0 +1,358 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import java.io.PrintWriter;
+
+/**
+ * Rolling GNSS signal quality statistics.
+ * Keeps C/N0 histograms per constellation and per frequency band, and the
+ * fraction of tracked satellites used in the fix per constellation, over the
+ * last few minutes, plus a time-to-first-fix histogram over the whole run.
+ *
+ * The window is a ring of time slices, each holding counts for its slice.
+ * Totals are kept incrementally, adding as satellites are recorded and
+ * subtracting whole slices as they fall out of the window.
+ * All storage is fixed-size arrays allocated up front, updating does not allocate.
+ *
+ * Not synchronized, hand copies to other threads with copyFrom ().
+ */
+public class SignalStats {
+
+    public final static int NCONSTELS = 8;    // SatSnapshot.CONSTELLATION_*
+    public final static int NBINS     = 20;   // C/N0 histogram bins
+    public final static int BINWIDTH  = 3;    // ... each this many dB-Hz, last bin is open-ended
+
+    public final static int BAND_UNKNOWN = 0; // receiver doesn't report carrier
+    public final static int BAND_L1      = 1; // L1, E1, B1, G1 (1559..1610 MHz)
+    public final static int BAND_L2      = 2; // L2, G2 (1215..1260 MHz)
+    public final static int BAND_L5      = 3; // L5, E5a, E5b, B2 (1164..1215 MHz)
+    public final static int BAND_L6      = 4; // E6, B3, LEX (1260..1300 MHz)
+    public final static int BAND_OTHER   = 5;
+    public final static int NBANDS       = 6;
+
+    private final static String[] constelNames = { "unknown", "GPS", "SBAS", "GLONASS", "QZSS", "BeiDou", "Galileo", "IRNSS" };
+    private final static String[] bandNames    = { "unknown", "L1", "L2", "L5", "L6", "other" };
+
+    // offsets of each kind of count within a slice (and within the totals)
+    private final static int CONSTHIST = 0;
+    private final static int BANDHIST  = CONSTHIST + NCONSTELS * NBINS;
+    private final static int SEEN      = BANDHIST + NBANDS * NBINS;
+    private final static int USED      = SEEN + NCONSTELS;
+    private final static int STRIDE    = USED + NCONSTELS;
+
+    private int nslices;
+    private int[] slices;          // nslices * STRIDE counts
+    private int[] totals;          // STRIDE counts, sum of all slices
+    private long curSlice = -1;    // slice number (time / sliceMs) being filled
+    private long sliceMs;
+    private long updates;
+    private int lastTtffMs = -1;
+    public final Histogram ttffMs = new Histogram ("ttff ms",
+            1000, 2000, 5000, 10000, 20000, 30000, 60000, 120000, 300000);
+
+    /**
+     * @param sliceMs = time covered by each slice, ms
+     * @param nslices = number of slices in the window
+     */
+    public SignalStats (long sliceMs, int nslices)
+    {
+        this.sliceMs = sliceMs;
+        this.nslices = nslices;
+        slices = new int[nslices*STRIDE];
+        totals = new int[STRIDE];
+    }
+
+    public void reset ()
+    {
+        for (int i = 0; i < slices.length; i ++) slices[i] = 0;
+        for (int i = 0; i < STRIDE; i ++) totals[i] = 0;
+        curSlice   = -1;
+        updates    = 0;
+        lastTtffMs = -1;
+        ttffMs.reset ();
+    }
+
+    /**
+     * Make this a copy of another with the same window, eg to hand off to another thread.
+     */
+    public void copyFrom (SignalStats o)
+    {
+        System.arraycopy (o.slices, 0, slices, 0, slices.length);
+        System.arraycopy (o.totals, 0, totals, 0, STRIDE);
+        curSlice   = o.curSlice;
+        updates    = o.updates;
+        lastTtffMs = o.lastTtffMs;
+        ttffMs.copyFrom (o.ttffMs);
+    }
+
+    /**
+     * Get window length, ms.
+     */
+    public long getWindowMs ()
+    {
+        return sliceMs * nslices;
+    }
+
+    /**
+     * Record a satellite status update.
+     * Satellites not being tracked (no C/N0) are ignored.
+     * @param sats = satellite status
+     * @param now = current time, ms
+     */
+    public void update (SatSnapshot sats, long now)
+    {
+        int base = advance (now);
+        int[] sl = slices;
+        int[] tot = totals;
+        int n = sats.count;
+        for (int i = 0; i < n; i ++) {
+            float cn0 = sats.cn0[i];
+            if (! (cn0 > 0.0F)) continue;
+            int bin = Math.min ((int) (cn0 / BINWIDTH), NBINS - 1);
+            int c = sats.constellation[i];
+            if ((c < 0) || (c >= NCONSTELS)) c = SatSnapshot.CONSTELLATION_UNKNOWN;
+            int b = getBand (sats.carrierHz[i]);
+            int k = CONSTHIST + c * NBINS + bin;
+            sl[base+k] ++;
+            tot[k] ++;
+            k = BANDHIST + b * NBINS + bin;
+            sl[base+k] ++;
+            tot[k] ++;
+            sl[base+SEEN+c] ++;
+            tot[SEEN+c] ++;
+            if (sats.used[i]) {
+                sl[base+USED+c] ++;
+                tot[USED+c] ++;
+            }
+        }
+        updates ++;
+    }
+
+    /**
+     * Move to the slice for the given time, dropping any slices that fell out of the window.
+     * @return offset of the current slice in slices[]
+     */
+    private int advance (long now)
+    {
+        long slice = now / sliceMs;
+        if (curSlice < 0) curSlice = slice;
+        long drop = Math.min (slice - curSlice, nslices);
+        for (long s = 1; s <= drop; s ++) {
+            int base = (int) ((curSlice + s) % nslices) * STRIDE;
+            for (int k = 0; k < STRIDE; k ++) {
+                totals[k] -= slices[base+k];
+                slices[base+k] = 0;
+            }
+        }
+        if (slice > curSlice) curSlice = slice;
+        return (int) (curSlice % nslices) * STRIDE;
+    }
+
+    /**
+     * Receiver reported its time to first fix.
+     */
+    public void recordTtff (int ms)
+    {
+        lastTtffMs = ms;
+        ttffMs.record (ms);
+    }
+
+    /**
+     * Get most recent time to first fix, ms, -1 if none yet.
+     */
+    public int getLastTtffMs ()
+    {
+        return lastTtffMs;
+    }
+
+    /**
+     * Get number of status updates recorded since reset.
+     */
+    public long getUpdateCount ()
+    {
+        return updates;
+    }
+
+    /**
+     * Get frequency band of a carrier frequency.
+     * @param hz = carrier frequency, 0 if unknown
+     * @return BAND_*
+     */
+    public static int getBand (float hz)
+    {
+        if (! (hz > 0.0F)) return BAND_UNKNOWN;
+        float mhz = hz / 1.0E6F;
+        if ((mhz >= 1559.0F) && (mhz <= 1610.0F)) return BAND_L1;
+        if ((mhz >= 1164.0F) && (mhz <  1215.0F)) return BAND_L5;
+        if ((mhz >= 1215.0F) && (mhz <  1260.0F)) return BAND_L2;
+        if ((mhz >= 1260.0F) && (mhz <= 1300.0F)) return BAND_L6;
+        return BAND_OTHER;
+    }
+
+    public static String getConstellationName (int c)
+    {
+        return constelNames[c];
+    }
+
+    public static String getBandName (int b)
+    {
+        return bandNames[b];
+    }
+
+    /**
+     * Get number of satellite samples in the window for a constellation.
+     */
+    public int getConstellationCount (int c)
+    {
+        return totals[SEEN+c];
+    }
+
+    /**
+     * Get fraction of a constellation's tracked satellite samples that were used in the fix.
+     * @return 0..1, NaN if none tracked
+     */
+    public float getUsedRatio (int c)
+    {
+        int seen = totals[SEEN+c];
+        return (seen == 0) ? Float.NaN : (float) totals[USED+c] / seen;
+    }
+
+    /**
+     * Get number of samples in a constellation's C/N0 bin.
+     * @param bin = 0..NBINS-1, covering bin*BINWIDTH dB-Hz and up
+     */
+    public int getConstellationBin (int c, int bin)
+    {
+        return totals[CONSTHIST+c*NBINS+bin];
+    }
+
+    public int getBandBin (int b, int bin)
+    {
+        return totals[BANDHIST+b*NBINS+bin];
+    }
+
+    public int getBandCount (int b)
+    {
+        return sumBins (BANDHIST + b * NBINS);
+    }
+
+    /**
+     * Get C/N0 percentile for a constellation, to bin resolution.
+     * @param pct = 0..100
+     * @return dB-Hz at top of the bin containing the percentile, NaN if no samples
+     */
+    public float getConstellationPercentile (int c, double pct)
+    {
+        return percentile (CONSTHIST + c * NBINS, pct);
+    }
+
+    public float getBandPercentile (int b, double pct)
+    {
+        return percentile (BANDHIST + b * NBINS, pct);
+    }
+
+    private int sumBins (int off)
+    {
+        int n = 0;
+        for (int i = 0; i < NBINS; i ++) n += totals[off+i];
+        return n;
+    }
+
+    private float percentile (int off, double pct)
+    {
+        int n = sumBins (off);
+        if (n == 0) return Float.NaN;
+        long target = Math.max (1, (long) Math.ceil (n * pct / 100.0));
+        long seen = 0;
+        for (int i = 0; i < NBINS - 1; i ++) {
+            seen += totals[off+i];
+            if (seen >= target) return (i + 1) * BINWIDTH;
+        }
+        return NBINS * BINWIDTH;
+    }
+
+    /**
+     * Append one-line summary for a constellation.
+     */
+    public void appendConstellation (StringBuilder sb, int c)
+    {
+        sb.append (constelNames[c]);
+        sb.append (" n=").append (getConstellationCount (c));
+        sb.append (" used=").append (Math.round (getUsedRatio (c) * 100.0F)).append ('%');
+        sb.append (" p50=").append ((int) getConstellationPercentile (c, 50.0));
+        sb.append (" p90=").append ((int) getConstellationPercentile (c, 90.0));
+    }
+
+    /**
+     * Append one-line summary for a band.
+     */
+    public void appendBand (StringBuilder sb, int b)
+    {
+        sb.append (bandNames[b]);
+        sb.append (" n=").append (getBandCount (b));
+        sb.append (" p50=").append ((int) getBandPercentile (b, 50.0));
+        sb.append (" p90=").append ((int) getBandPercentile (b, 90.0));
+    }
+
+    /**
+     * Dump everything including bin counts, for comparing receivers.
+     * Constellations and bands with no samples in the window are skipped.
+     */
+    public void dump (PrintWriter pw)
+    {
+        StringBuilder sb = new StringBuilder ();
+        pw.println ("window ms " + getWindowMs () + " updates " + updates + " last ttff ms " + lastTtffMs);
+        sb.setLength (0);
+        ttffMs.append (sb);
+        pw.println (sb);
+        sb.setLength (0);
+        ttffMs.appendBuckets (sb);
+        pw.println (sb);
+        for (int c = 0; c < NCONSTELS; c ++) {
+            if (getConstellationCount (c) == 0) continue;
+            sb.setLength (0);
+            appendConstellation (sb, c);
+            pw.println (sb);
+            sb.setLength (0);
+            appendBins (sb, CONSTHIST + c * NBINS);
+            pw.println (sb);
+        }
+        for (int b = 0; b < NBANDS; b ++) {
+            if (getBandCount (b) == 0) continue;
+            sb.setLength (0);
+            appendBand (sb, b);
+            pw.println (sb);
+            sb.setLength (0);
+            appendBins (sb, BANDHIST + b * NBINS);
+            pw.println (sb);
+        }
+        pw.flush ();
+    }
+
+    private void appendBins (StringBuilder sb, int off)
+    {
+        for (int i = 0; i < NBINS - 1; i ++) {
+            sb.append (" <").append ((i + 1) * BINWIDTH).append (':').append (totals[off+i]);
+        }
+        sb.append (" >=").append ((NBINS - 1) * BINWIDTH).append (':').append (totals[off+NBINS-1]);
+    }
+}
@@ -0,0 +1,232 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Remember the recent sky plot path of each satellite.
+ * Satellites are keyed by (constellation, svid) in an open-addressing hash table of primitive arrays,
+ * each entry has a fixed-size ring buffer of sky plot positions, so updates never box or allocate.
+ * Entries for satellites that haven't been seen for a while are evicted.
+ */
+public class SkyTrackHistory {
+    private final static int EMPTY = -1;
+
+    private final float[] xs;          // [slot*trailLen+i] sky plot positions, unit circle is horizon
+    private final float[] ys;
+    private final int[] counts;        // [slot] number of positions in ring
+    private final int[] heads;         // [slot] index of oldest position in ring
+    private final int[] keys;          // [slot] constellation << 16 | svid, EMPTY if unused
+    private final long[] lastAdded;    // [slot] time last position was added
+    private final long[] lastSeen;     // [slot] time satellite was last seen
+    private int maxEntries;            // keep table at most 3/4 full
+    private int size;                  // number of slots in use
+    private final int mask;            // table size - 1
+    private final int trailLen;        // positions kept per satellite
+    private long evictAfter;           // evict satellite not seen for this long, ms
+    private long minInterval;          // add a position at most this often, ms
+
+    /**
+     * @param maxSats = maximum number of satellites tracked at once
+     * @param trailLen = number of positions kept for each satellite
+     * @param minInterval = minimum time between positions, ms
+     * @param evictAfter = forget a satellite not seen for this long, ms
+     */
+    public SkyTrackHistory (int maxSats, int trailLen, long minInterval, long evictAfter)
+    {
+        int tableSize = Integer.highestOneBit (maxSats * 4 / 3) * 2;
+        this.mask        = tableSize - 1;
+        this.maxEntries  = tableSize * 3 / 4;
+        this.trailLen    = trailLen;
+        this.minInterval = minInterval;
+        this.evictAfter  = evictAfter;
+        xs        = new float[tableSize*trailLen];
+        ys        = new float[tableSize*trailLen];
+        counts    = new int[tableSize];
+        heads     = new int[tableSize];
+        keys      = new int[tableSize];
+        lastAdded = new long[tableSize];
+        lastSeen  = new long[tableSize];
+        clear ();
+    }
+
+    public void clear ()
+    {
+        for (int slot = 0; slot <= mask; slot ++) keys[slot] = EMPTY;
+        size = 0;
+    }
+
+    /**
+     * Add positions from a satellite status update and evict stale satellites.
+     * @param sats = current satellite status
+     * @param now = current time, ms
+     * @return true iff a position was added or a satellite evicted, ie, the trails changed
+     */
+    public boolean update (SatSnapshot sats, long now)
+    {
+        boolean changed = evict (now);
+        int n = sats.count;
+        for (int i = 0; i < n; i ++) {
+            int key  = (sats.constellation[i] << 16) | (sats.svid[i] & 0xFFFF);
+            int slot = find (key);
+            if (keys[slot] == EMPTY) {
+                if (size >= maxEntries) continue;
+                keys[slot]   = key;
+                counts[slot] = 0;
+                heads[slot]  = 0;
+                lastAdded[slot] = now - minInterval;
+                size ++;
+            }
+            lastSeen[slot] = now;
+            if (now - lastAdded[slot] >= minInterval) {
+                lastAdded[slot] = now;
+                int c = counts[slot];
+                int j;
+                if (c < trailLen) {
+                    j = heads[slot] + c;
+                    if (j >= trailLen) j -= trailLen;
+                    counts[slot] = c + 1;
+                } else {
+                    j = heads[slot];
+                    heads[slot] = (j + 1 == trailLen) ? 0 : j + 1;
+                }
+                xs[slot*trailLen+j] = sats.skyX[i];
+                ys[slot*trailLen+j] = sats.skyY[i];
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Get number of slots, for iterating with the getters below.
+     */
+    public int getSlotCount ()
+    {
+        return mask + 1;
+    }
+
+    public boolean isUsed (int slot)
+    {
+        return keys[slot] != EMPTY;
+    }
+
+    public int getConstellation (int slot)
+    {
+        return keys[slot] >>> 16;
+    }
+
+    public int getSvid (int slot)
+    {
+        return keys[slot] & 0xFFFF;
+    }
+
+    public int getTrailCount (int slot)
+    {
+        return counts[slot];
+    }
+
+    /**
+     * Get a position from a satellite's trail.
+     * @param slot = slot the satellite is in
+     * @param i = 0 for oldest through getTrailCount()-1 for newest
+     */
+    public float getX (int slot, int i)
+    {
+        return xs[index(slot,i)];
+    }
+
+    public float getY (int slot, int i)
+    {
+        return ys[index(slot,i)];
+    }
+
+    private int index (int slot, int i)
+    {
+        int j = heads[slot] + i;
+        if (j >= trailLen) j -= trailLen;
+        return slot * trailLen + j;
+    }
+
+    /**
+     * Find slot containing key or empty slot where it would go.
+     */
+    private int find (int key)
+    {
+        int slot = hash (key);
+        while (true) {
+            int k = keys[slot];
+            if ((k == key) || (k == EMPTY)) return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int hash (int key)
+    {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Remove satellites that haven't been seen in a while.
+     * @return true iff any were removed
+     */
+    private boolean evict (long now)
+    {
+        boolean evicted = false;
+        for (int slot = 0; slot <= mask; slot ++) {
+            while ((keys[slot] != EMPTY) && (now - lastSeen[slot] > evictAfter)) {
+                remove (slot);
+                evicted = true;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Remove entry from slot, shifting later entries of the probe sequence back
+     * so lookups still find them without needing tombstones.
+     */
+    private void remove (int slot)
+    {
+        keys[slot] = EMPTY;
+        size --;
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            int k = keys[next];
+            if (k == EMPTY) break;
+            int home = hash (k);
+            // move entry into hole if its home is not cyclically in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole]      = k;
+                counts[hole]    = counts[next];
+                heads[hole]     = heads[next];
+                lastAdded[hole] = lastAdded[next];
+                lastSeen[hole]  = lastSeen[next];
+                System.arraycopy (xs, next * trailLen, xs, hole * trailLen, trailLen);
+                System.arraycopy (ys, next * trailLen, ys, hole * trailLen, trailLen);
+                keys[next] = EMPTY;
+                hole = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Least-recently-used bookkeeping for a fixed number of decoded tile slots.
+ * The caller keeps the decoded images in an array indexed by slot, so when a
+ * slot is evicted its image memory can be reused for the next tile.
+ *
+ * A slot is empty, loading (reserved by the loader, image being decoded) or ready.
+ * Slots drawn in the current or previous frame are never evicted, as the
+ * renderer may still be using their images.
+ *
+ * The slot count is small (a few dozen) so lookups just scan the slots.
+ * Not synchronized, nothing is allocated after construction.
+ */
+public class TileLru {
+    private final static int EMPTY   = 0;
+    private final static int LOADING = 1;
+    private final static int READY   = 2;
+
+    private int[] states;
+    private long[] keys;
+    private long[] lastUsed;      // clock value when last drawn or loaded
+    private long clock;
+    private long frameStart;      // clock at start of the current frame
+    private long protectFrom;     // slots used at or after this clock can't be evicted
+    private long hits;
+    private long misses;
+
+    public TileLru (int nslots)
+    {
+        states   = new int[nslots];
+        keys     = new long[nslots];
+        lastUsed = new long[nslots];
+    }
+
+    public int capacity ()
+    {
+        return states.length;
+    }
+
+    /**
+     * Forget all tiles.
+     */
+    public void clear ()
+    {
+        for (int i = 0; i < states.length; i ++) states[i] = EMPTY;
+        hits   = 0;
+        misses = 0;
+    }
+
+    /**
+     * Renderer: starting to draw a frame.
+     */
+    public void newFrame ()
+    {
+        protectFrom = frameStart;
+        frameStart  = ++ clock;
+    }
+
+    /**
+     * Renderer: look up a tile to draw, counting a hit or miss.
+     * @return slot number or -1 if not ready
+     */
+    public int get (long key)
+    {
+        int slot = find (key);
+        if ((slot < 0) || (states[slot] != READY)) {
+            misses ++;
+            return -1;
+        }
+        hits ++;
+        lastUsed[slot] = ++ clock;
+        return slot;
+    }
+
+    /**
+     * Loader: see if a tile is ready or being loaded, without counting it.
+     */
+    public boolean contains (long key)
+    {
+        return find (key) >= 0;
+    }
+
+    private int find (long key)
+    {
+        for (int i = 0; i < states.length; i ++) {
+            if ((states[i] != EMPTY) && (keys[i] == key)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Loader: reserve a slot to load a tile into, evicting the least recently used tile if needed.
+     * The renderer won't see the tile until ready () is called.
+     * @return slot number, or -1 if every slot is in use by recent frames or loading
+     */
+    public int reserve (long key)
+    {
+        int best = -1;
+        for (int i = 0; i < states.length; i ++) {
+            int st = states[i];
+            if (st == EMPTY) {
+                best = i;
+                break;
+            }
+            if ((st == READY) && (lastUsed[i] < protectFrom) && ((best < 0) || (lastUsed[i] < lastUsed[best]))) {
+                best = i;
+            }
+        }
+        if (best >= 0) {
+            states[best] = LOADING;
+            keys[best]   = key;
+        }
+        return best;
+    }
+
+    /**
+     * Loader: slot's image has been decoded.
+     * It counts as just used so it isn't evicted before being drawn.
+     */
+    public void ready (int slot)
+    {
+        states[slot]   = READY;
+        lastUsed[slot] = ++ clock;
+    }
+
+    /**
+     * Loader: couldn't load the tile, free the slot.
+     */
+    public void abandon (int slot)
+    {
+        states[slot] = EMPTY;
+    }
+
+    public long getHits ()
+    {
+        return hits;
+    }
+
+    public long getMisses ()
+    {
+        return misses;
+    }
+}
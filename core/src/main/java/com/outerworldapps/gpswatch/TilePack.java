@@ -0,0 +1,323 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Read-only archive of web mercator map tiles in a single file.
+ * Only the sorted index is memory-mapped, tile images are read with positional
+ * reads into the caller's buffer, so any number of threads can read at once
+ * and nothing is allocated per tile.
+ *
+ * File layout (little endian):
+ *   header (HDRSIZE bytes):
+ *      int    magic
+ *      int    version
+ *      int    number of tiles
+ *      int    tile size, pixels
+ *      int    minimum zoom
+ *      int    maximum zoom
+ *      int    largest tile image, bytes
+ *      int    unused
+ *   index (RECSIZE bytes each), sorted by key:
+ *      long   key (see key ())
+ *      long   offset of image from start of file
+ *      int    length of image
+ *   images:
+ *      encoded PNG, JPEG or WebP, as given
+ *
+ * Use main () or build () to make a file from a zoom/x/y.png directory tree.
+ */
+public class TilePack implements Closeable {
+    private final static int MAGIC   = 0x47575450;  // 'GWTP'
+    private final static int VERSION = 1;
+    private final static int HDRSIZE = 32;
+    private final static int RECSIZE = 20;
+
+    private FileChannel channel;
+    private int count;
+    private int maxLength;
+    private int maxZoom;
+    private int minZoom;
+    private int tileSize;
+    private MappedByteBuffer index;
+    private RandomAccessFile raf;
+
+    public TilePack (File file)
+            throws IOException
+    {
+        raf = new RandomAccessFile (file, "r");
+        try {
+            channel = raf.getChannel ();
+            ByteBuffer hdr = ByteBuffer.allocate (HDRSIZE).order (ByteOrder.LITTLE_ENDIAN);
+            if ((channel.read (hdr, 0) != HDRSIZE) || (hdr.getInt (0) != MAGIC) || (hdr.getInt (4) != VERSION)) {
+                throw new IOException (file + ": not a tile pack");
+            }
+            count     = hdr.getInt (8);
+            tileSize  = hdr.getInt (12);
+            minZoom   = hdr.getInt (16);
+            maxZoom   = hdr.getInt (20);
+            maxLength = hdr.getInt (24);
+            if ((count < 0) || (HDRSIZE + (long) count * RECSIZE > channel.size ())) {
+                throw new IOException (file + ": corrupt tile pack");
+            }
+            index = channel.map (FileChannel.MapMode.READ_ONLY, HDRSIZE, (long) count * RECSIZE);
+            index.order (ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException ioe) {
+            raf.close ();
+            throw ioe;
+        }
+    }
+
+    @Override  // Closeable
+    public void close ()
+            throws IOException
+    {
+        raf.close ();
+    }
+
+    public int size ()
+    {
+        return count;
+    }
+
+    public int getTileSize ()
+    {
+        return tileSize;
+    }
+
+    public int getMinZoom ()
+    {
+        return minZoom;
+    }
+
+    public int getMaxZoom ()
+    {
+        return maxZoom;
+    }
+
+    /**
+     * Get size of largest tile image, so a read buffer can be allocated once.
+     */
+    public int getMaxLength ()
+    {
+        return maxLength;
+    }
+
+    /**
+     * Make a tile key, ordered by zoom then x then y.
+     */
+    public static long key (int zoom, int x, int y)
+    {
+        return ((long) zoom << 48) | ((long) x << 24) | y;
+    }
+
+    public static int keyZoom (long key)
+    {
+        return (int) (key >>> 48);
+    }
+
+    public static int keyX (long key)
+    {
+        return (int) (key >>> 24) & 0xFFFFFF;
+    }
+
+    public static int keyY (long key)
+    {
+        return (int) key & 0xFFFFFF;
+    }
+
+    /**
+     * Convert longitude to web mercator tile units at the given zoom.
+     */
+    public static double lonToTileX (double lon, int zoom)
+    {
+        return (lon + 180.0) / 360.0 * (1 << zoom);
+    }
+
+    /**
+     * Convert latitude to web mercator tile units at the given zoom, 0 at the north edge.
+     */
+    public static double latToTileY (double lat, int zoom)
+    {
+        double rad = Math.toRadians (Math.max (-85.0511, Math.min (85.0511, lat)));
+        return (1.0 - Math.log (Math.tan (rad) + 1.0 / Math.cos (rad)) / Math.PI) / 2.0 * (1 << zoom);
+    }
+
+    /**
+     * Find a tile.
+     * @return index entry number or -1 if not in the pack
+     */
+    public int find (long key)
+    {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            long k = index.getLong (mid * RECSIZE);
+            if (k == key) return mid;
+            if (k < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return -1;
+    }
+
+    /**
+     * Read a tile's image into a buffer.
+     * @param buf = buffer at least getMaxLength () long, filled from position 0 to limit
+     * @return length of image, -1 if tile not in the pack
+     */
+    public int read (long key, ByteBuffer buf)
+            throws IOException
+    {
+        int i = find (key);
+        if (i < 0) return -1;
+        long pos = index.getLong (i * RECSIZE + 8);
+        int len  = index.getInt (i * RECSIZE + 16);
+        buf.clear ();
+        buf.limit (len);
+        while (buf.hasRemaining ()) {
+            if (channel.read (buf, pos + buf.position ()) < 0) throw new IOException ("tile pack truncated");
+        }
+        buf.flip ();
+        return len;
+    }
+
+    /**
+     * Write a tile pack from a directory of <zoom>/<x>/<y>.<ext> image files.
+     * @param tileSize = tile size, pixels
+     * @return number of tiles written
+     */
+    public static int build (File file, File dir, int tileSize)
+            throws IOException
+    {
+        // collect tiles as key plus file
+        int n = 0;
+        long[] keys = new long[1024];
+        File[] files = new File[1024];
+        int minZoom = Integer.MAX_VALUE, maxZoom = -1;
+        File[] zdirs = dir.listFiles ();
+        if (zdirs == null) throw new IOException (dir + ": not a directory");
+        for (File zdir : zdirs) {
+            int zoom = parseInt (zdir.getName ());
+            File[] xdirs = zdir.listFiles ();
+            if ((zoom < 0) || (zoom > 24) || (xdirs == null)) continue;
+            for (File xdir : xdirs) {
+                int x = parseInt (xdir.getName ());
+                File[] yfiles = xdir.listFiles ();
+                if ((x < 0) || (yfiles == null)) continue;
+                for (File yfile : yfiles) {
+                    String name = yfile.getName ();
+                    int dot = name.indexOf ('.');
+                    int y = parseInt ((dot < 0) ? name : name.substring (0, dot));
+                    if ((y < 0) || ! yfile.isFile ()) continue;
+                    if (n == keys.length) {
+                        keys  = Arrays.copyOf (keys, n * 2);
+                        files = Arrays.copyOf (files, n * 2);
+                    }
+                    keys[n]  = key (zoom, x, y);
+                    files[n] = yfile;
+                    n ++;
+                    minZoom = Math.min (minZoom, zoom);
+                    maxZoom = Math.max (maxZoom, zoom);
+                }
+            }
+        }
+        if (n == 0) minZoom = maxZoom = 0;
+
+        // sort by key, carrying the files along
+        final long[] k = keys;
+        Integer[] idx = new Integer[n];
+        for (int i = 0; i < n; i ++) idx[i] = i;
+        Arrays.sort (idx, new Comparator<Integer> () {
+            @Override
+            public int compare (Integer a, Integer b)
+            {
+                return Long.compare (k[a], k[b]);
+            }
+        });
+
+        try (RandomAccessFile out = new RandomAccessFile (file, "rw")) {
+            out.setLength (0);
+            FileChannel fc = out.getChannel ();
+            ByteBuffer ibuf = ByteBuffer.allocate (HDRSIZE + n * RECSIZE).order (ByteOrder.LITTLE_ENDIAN);
+            long pos = ibuf.capacity ();
+            int maxLength = 0;
+            fc.position (pos);
+            for (int j = 0; j < n; j ++) {
+                int i = idx[j];
+                byte[] image = Files.readAllBytes (files[i].toPath ());
+                ibuf.putLong (HDRSIZE + j * RECSIZE, keys[i]);
+                ibuf.putLong (HDRSIZE + j * RECSIZE + 8, pos);
+                ibuf.putInt (HDRSIZE + j * RECSIZE + 16, image.length);
+                ByteBuffer ib = ByteBuffer.wrap (image);
+                while (ib.hasRemaining ()) fc.write (ib);
+                pos += image.length;
+                maxLength = Math.max (maxLength, image.length);
+            }
+            ibuf.putInt (0, MAGIC);
+            ibuf.putInt (4, VERSION);
+            ibuf.putInt (8, n);
+            ibuf.putInt (12, tileSize);
+            ibuf.putInt (16, minZoom);
+            ibuf.putInt (20, maxZoom);
+            ibuf.putInt (24, maxLength);
+            while (ibuf.hasRemaining ()) fc.write (ibuf, ibuf.position ());
+        }
+        return n;
+    }
+
+    private static int parseInt (String s)
+    {
+        try {
+            return Integer.parseInt (s);
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    /**
+     * Convert a directory tree of tiles to a tile pack.
+     *   java com.outerworldapps.gpswatch.TilePack tiledir tiles.pack [tilesize]
+     */
+    public static void main (String[] args)
+            throws IOException
+    {
+        if ((args.length < 2) || (args.length > 3)) {
+            System.err.println ("usage: TilePack <tiledir> <out.pack> [<tilesize>]");
+            System.exit (1);
+        }
+        int tileSize = (args.length > 2) ? Integer.parseInt (args[2]) : 256;
+        int n = build (new File (args[1]), new File (args[0]), tileSize);
+        System.out.println (n + " tiles written to " + args[1]);
+    }
+}
@@ -0,0 +1,114 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Decide which map tiles to have decoded for a view centred on the current position:
+ * the visible tiles nearest the centre first, then the tiles that will come into view
+ * along the direction of travel over the next little while.
+ * The list is filled in a preallocated array, nothing is allocated per plan.
+ */
+public class TilePlanner {
+    private final static int STEPS = 3;    // look-ahead positions along the track
+
+    private long[] wanted;
+    public int count;          // number of entries in wanted
+    public int visibleCount;   // the first this many are visible now
+
+    /**
+     * @param maxTiles = most tiles to plan for, should be less than the cache size
+     */
+    public TilePlanner (int maxTiles)
+    {
+        wanted = new long[maxTiles];
+    }
+
+    public long getWanted (int i)
+    {
+        return wanted[i];
+    }
+
+    /**
+     * Plan tiles for a view.
+     * @param lat = centre latitude, degrees
+     * @param lon = centre longitude, degrees
+     * @param zoom = tile zoom level
+     * @param tileSize = tile size, pixels
+     * @param width = view width, pixels
+     * @param height = view height, pixels
+     * @param track = direction of travel, degrees true, NaN if unknown
+     * @param speed = ground speed, m/s
+     * @param aheadSecs = how far ahead to prefetch, seconds of travel
+     */
+    public void plan (double lat, double lon, int zoom, int tileSize, int width, int height,
+                      float track, float speed, float aheadSecs)
+    {
+        count = 0;
+        double cx = TilePack.lonToTileX (lon, zoom) * tileSize;
+        double cy = TilePack.latToTileY (lat, zoom) * tileSize;
+        addView (cx, cy, zoom, tileSize, width, height);
+        visibleCount = count;
+
+        if (! Float.isNaN (track) && (speed > 0.0F)) {
+            // metres per pixel at this latitude and zoom
+            double mpp = 40075016.7 * Math.cos (Math.toRadians (lat)) / ((1 << zoom) * tileSize);
+            double ahead = Math.min (speed * aheadSecs / mpp, Math.max (width, height) * 2.0);
+            double rad = Math.toRadians (track);
+            double dx = Math.sin (rad);
+            double dy = - Math.cos (rad);
+            for (int s = 1; s <= STEPS; s ++) {
+                double d = ahead * s / STEPS;
+                addView (cx + dx * d, cy + dy * d, zoom, tileSize, width, height);
+            }
+        }
+    }
+
+    /**
+     * Add tiles covering a view centred at the given world pixel, nearest the centre first.
+     */
+    private void addView (double cx, double cy, int zoom, int tileSize, int width, int height)
+    {
+        int ntiles = 1 << zoom;
+        int x0 = (int) Math.floor ((cx - width  / 2.0) / tileSize);
+        int x1 = (int) Math.floor ((cx + width  / 2.0) / tileSize);
+        int y0 = (int) Math.floor ((cy - height / 2.0) / tileSize);
+        int y1 = (int) Math.floor ((cy + height / 2.0) / tileSize);
+        int tcx = (int) Math.floor (cx / tileSize);
+        int tcy = (int) Math.floor (cy / tileSize);
+        int rings = Math.max (Math.max (tcx - x0, x1 - tcx), Math.max (tcy - y0, y1 - tcy));
+        for (int r = 0; r <= rings; r ++) {
+            for (int ty = tcy - r; ty <= tcy + r; ty ++) {
+                if ((ty < y0) || (ty > y1) || (ty < 0) || (ty >= ntiles)) continue;
+                boolean edge = (ty == tcy - r) || (ty == tcy + r);
+                for (int tx = tcx - r; tx <= tcx + r; tx += edge ? 1 : 2 * r) {
+                    if ((tx >= x0) && (tx <= x1)) add (TilePack.key (zoom, tx & (ntiles - 1), ty));
+                    if (r == 0) break;
+                }
+            }
+        }
+    }
+
+    private void add (long key)
+    {
+        for (int i = 0; i < count; i ++) if (wanted[i] == key) return;
+        if (count < wanted.length) wanted[count++] = key;
+    }
+}
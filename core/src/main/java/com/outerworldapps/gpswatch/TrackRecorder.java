@@ -0,0 +1,329 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Record fixes into a preallocated memory-mapped ring file.
+ * Memory use is constant regardless of session length and appending does not allocate.
+ *
+ * The ring is a sequence of blocks.  Each block holds an absolute base time and
+ * position, its records hold time and position deltas from the record before.
+ * A fix whose deltas don't fit (long gap, time going backwards, big jump) just
+ * starts a new block, so nothing is ever discarded except the oldest block.
+ *
+ * File layout:
+ *   header (HDRSIZE bytes):
+ *      int  magic
+ *      int  version
+ *      int  record size
+ *      int  records per block
+ *      int  number of blocks
+ *   blocks (BLOCKSIZE bytes each):
+ *      int   block sequence (1, 2, 3, ...), 0 = empty block, written last
+ *      long  base time, ms since 1970
+ *      int   base latitude, 1e-6 degrees
+ *      int   base longitude, 1e-6 degrees
+ *      int   unused
+ *      records (RECSIZE bytes each):
+ *         int   time delta from previous record (or base), ms, EMPTY = unwritten, written last
+ *         short latitude delta, 1e-6 degrees
+ *         short longitude delta, 1e-6 degrees
+ *         short altitude, metres
+ *         char  speed, cm/s
+ *         char  bearing, 0.01 degrees
+ *         char  accuracy, decimetres
+ *
+ * The write cursor is not stored, it is recovered on open by finding the block with
+ * the highest sequence number, so a crash can lose at most the record being written.
+ */
+public class TrackRecorder implements Closeable {
+    public  final static int BLOCKRECS = 60;
+
+    private final static int MAGIC      = 0x47575452;  // 'GWTR'
+    private final static int VERSION    = 2;
+    private final static int HDRSIZE    = 64;
+    private final static int BLKHDRSIZE = 24;
+    private final static int RECSIZE    = 16;
+    private final static int BLOCKSIZE  = BLKHDRSIZE + BLOCKRECS * RECSIZE;
+    private final static int EMPTY      = -1;              // time delta of unwritten record
+    private final static double POSSCALE = 1.0E6;          // position units per degree
+    private final static char  NOVAL16  = 0xFFFF;          // speed, bearing, accuracy not available
+    private final static short NOALT    = Short.MIN_VALUE; // altitude not available
+
+    /**
+     * A decoded record.
+     */
+    public static class Fix {
+        public long time;        // ms since 1970
+        public double lat;       // degrees
+        public double lon;       // degrees
+        public float alt;        // metres, NaN if not available
+        public float speed;      // m/s, NaN if not available
+        public float bearing;    // degrees true, NaN if not available
+        public float accuracy;   // metres, NaN if not available
+    }
+
+    private FileChannel channel;
+    private int count;           // number of valid records
+    private int curBlock;        // block being filled, -1 if none
+    private int lastLat;         // position of last record written, 1e-6 degrees
+    private int lastLon;
+    private int nblocks;
+    private int nextBlockSeq;    // sequence number for next block
+    private int[] blockCounts;   // number of valid records in each block
+    private long lastTime;       // time of last record written
+    private MappedByteBuffer map;
+    private RandomAccessFile raf;
+
+    /**
+     * Open ring file, creating or reformatting it if it doesn't match the given capacity.
+     * Does file I/O and scans the whole ring, so don't call on the UI thread.
+     * @param file = file to record into
+     * @param capacity = number of records to keep, fewer are kept if gaps or jumps start blocks early
+     */
+    public TrackRecorder (File file, int capacity)
+            throws IOException
+    {
+        nblocks = (capacity + BLOCKRECS - 1) / BLOCKRECS + 1;
+        blockCounts = new int[nblocks];
+        raf = new RandomAccessFile (file, "rw");
+        long length = HDRSIZE + (long) nblocks * BLOCKSIZE;
+        boolean fresh = raf.length () != length;
+        if (fresh) raf.setLength (length);
+        channel = raf.getChannel ();
+        map = channel.map (FileChannel.MapMode.READ_WRITE, 0, length);
+        map.order (ByteOrder.LITTLE_ENDIAN);
+
+        if (fresh || (map.getInt (0) != MAGIC) || (map.getInt (4) != VERSION) ||
+                (map.getInt (8) != RECSIZE) || (map.getInt (12) != BLOCKRECS) ||
+                (map.getInt (16) != nblocks)) {
+            clear ();
+        } else {
+            recover ();
+        }
+    }
+
+    /**
+     * Find write cursor by scanning for the highest block sequence number,
+     * then rebuild the last written record so deltas can continue from it.
+     */
+    private void recover ()
+    {
+        int maxSeq = 0;
+        count    = 0;
+        curBlock = -1;
+        for (int b = 0; b < nblocks; b ++) {
+            int bpos = blockPos (b);
+            int seq  = map.getInt (bpos);
+            int n    = 0;
+            if (seq != 0) {
+                while ((n < BLOCKRECS) && (map.getInt (bpos + BLKHDRSIZE + n * RECSIZE) != EMPTY)) n ++;
+                if (maxSeq < seq) {
+                    maxSeq   = seq;
+                    curBlock = b;
+                }
+            }
+            blockCounts[b] = n;
+            count += n;
+        }
+        nextBlockSeq = maxSeq + 1;
+        if (curBlock >= 0) {
+            int bpos = blockPos (curBlock);
+            lastTime = map.getLong (bpos + 4);
+            lastLat  = map.getInt (bpos + 12);
+            lastLon  = map.getInt (bpos + 16);
+            for (int r = 0; r < blockCounts[curBlock]; r ++) {
+                int pos = bpos + BLKHDRSIZE + r * RECSIZE;
+                lastTime += map.getInt (pos);
+                lastLat  += map.getShort (pos + 4);
+                lastLon  += map.getShort (pos + 6);
+            }
+        }
+    }
+
+    /**
+     * Erase all records.
+     */
+    public void clear ()
+    {
+        for (int i = 0; i < HDRSIZE; i += 4) map.putInt (i, 0);
+        for (int b = 0; b < nblocks; b ++) {
+            map.putInt (blockPos (b), 0);
+            blockCounts[b] = 0;
+        }
+        map.putInt (0, MAGIC);
+        map.putInt (4, VERSION);
+        map.putInt (8, RECSIZE);
+        map.putInt (12, BLOCKRECS);
+        map.putInt (16, nblocks);
+        count    = 0;
+        curBlock = -1;
+        nextBlockSeq = 1;
+    }
+
+    /**
+     * Append a fix, overwriting the oldest block if full.
+     */
+    public void append (long time, double lat, double lon, double alt, float speed, float bearing, float accuracy)
+    {
+        int ilat = (int) Math.round (lat * POSSCALE);
+        int ilon = (int) Math.round (lon * POSSCALE);
+        long dt  = time - lastTime;
+        int dlat = ilat - lastLat;
+        int dlon = ilon - lastLon;
+        if ((curBlock < 0) || (blockCounts[curBlock] == BLOCKRECS) ||
+                (dt < 0) || (dt > Integer.MAX_VALUE) ||
+                (dlat < Short.MIN_VALUE) || (dlat > Short.MAX_VALUE) ||
+                (dlon < Short.MIN_VALUE) || (dlon > Short.MAX_VALUE)) {
+            startBlock (time, ilat, ilon);
+            dt = dlat = dlon = 0;
+        }
+
+        int n   = blockCounts[curBlock];
+        int pos = blockPos (curBlock) + BLKHDRSIZE + n * RECSIZE;
+        map.putShort (pos +  4, (short) dlat);
+        map.putShort (pos +  6, (short) dlon);
+        map.putShort (pos +  8, Double.isNaN (alt) ? NOALT :
+                (short) Math.max (NOALT + 1, Math.min (Short.MAX_VALUE, Math.round (alt))));
+        map.putChar (pos + 10, pack16 (speed, 100.0F));
+        map.putChar (pos + 12, pack16 (bearing, 100.0F));
+        map.putChar (pos + 14, pack16 (accuracy, 10.0F));
+        map.putInt (pos, (int) dt);  // makes record valid
+
+        blockCounts[curBlock] = n + 1;
+        count ++;
+        lastTime = time;
+        lastLat  = ilat;
+        lastLon  = ilon;
+    }
+
+    /**
+     * Start a new block at the given base, overwriting the oldest block.
+     */
+    private void startBlock (long time, int ilat, int ilon)
+    {
+        int b    = (curBlock + 1) % nblocks;
+        int bpos = blockPos (b);
+        map.putInt (bpos, 0);  // mark block invalid while being set up
+        for (int r = 0; r < BLOCKRECS; r ++) {
+            map.putInt (bpos + BLKHDRSIZE + r * RECSIZE, EMPTY);
+        }
+        map.putLong (bpos +  4, time);
+        map.putInt  (bpos + 12, ilat);
+        map.putInt  (bpos + 16, ilon);
+        map.putInt  (bpos, nextBlockSeq ++);
+
+        count   -= blockCounts[b];
+        blockCounts[b] = 0;
+        curBlock = b;
+        lastTime = time;
+        lastLat  = ilat;
+        lastLon  = ilon;
+    }
+
+    /**
+     * Get number of records in ring.
+     */
+    public int size ()
+    {
+        return count;
+    }
+
+    /**
+     * Read a record.
+     * Decodes the deltas from the start of the record's block, so is O(BLOCKRECS).
+     * @param i = 0 for oldest through size()-1 for newest
+     * @param fix = where to put decoded record
+     */
+    public void get (int i, Fix fix)
+    {
+        if ((i < 0) || (i >= count)) throw new IndexOutOfBoundsException ("track record " + i + " of " + count);
+
+        // blocks are filled in ring order so the oldest follows the current one
+        int b = curBlock;
+        do {
+            if (++ b == nblocks) b = 0;
+            if (i < blockCounts[b]) break;
+            i -= blockCounts[b];
+        } while (b != curBlock);
+
+        int bpos = blockPos (b);
+        long time = map.getLong (bpos + 4);
+        int lat   = map.getInt (bpos + 12);
+        int lon   = map.getInt (bpos + 16);
+        int pos   = bpos + BLKHDRSIZE;
+        for (int r = 0; r <= i; r ++) {
+            pos   = bpos + BLKHDRSIZE + r * RECSIZE;
+            time += map.getInt (pos);
+            lat  += map.getShort (pos + 4);
+            lon  += map.getShort (pos + 6);
+        }
+        fix.time     = time;
+        fix.lat      = lat / POSSCALE;
+        fix.lon      = lon / POSSCALE;
+        short alt    = map.getShort (pos + 8);
+        fix.alt      = (alt == NOALT) ? Float.NaN : alt;
+        fix.speed    = unpack16 (map.getChar (pos + 10), 100.0F);
+        fix.bearing  = unpack16 (map.getChar (pos + 12), 100.0F);
+        fix.accuracy = unpack16 (map.getChar (pos + 14), 10.0F);
+    }
+
+    /**
+     * Write dirty pages to the file.
+     */
+    public void flush ()
+    {
+        map.force ();
+    }
+
+    @Override  // Closeable
+    public void close ()
+            throws IOException
+    {
+        map.force ();
+        channel.close ();
+        raf.close ();
+    }
+
+    private static int blockPos (int b)
+    {
+        return HDRSIZE + b * BLOCKSIZE;
+    }
+
+    private static char pack16 (float val, float scale)
+    {
+        if (Float.isNaN (val)) return NOVAL16;
+        return (char) Math.max (0, Math.min (NOVAL16 - 1, Math.round (val * scale)));
+    }
+
+    private static float unpack16 (char val, float scale)
+    {
+        return (val == NOVAL16) ? Float.NaN : val / scale;
+    }
+}
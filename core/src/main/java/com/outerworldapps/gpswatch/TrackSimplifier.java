@@ -0,0 +1,265 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Online simplification of the track for breadcrumb display, bounded memory however long it runs.
+ *
+ * Each fix goes into a window of points since the last kept point.  As long as all the
+ * window's points are within the tolerance of the straight line from the last kept point
+ * to the new fix, nothing is kept.  When one isn't, the fix before the new one is kept and
+ * the window restarts from there.  So every dropped fix is within the tolerance of the
+ * simplified track.  The window is bounded, a full window keeps its latest point.
+ *
+ * If the kept points fill the arrays, the tolerance is doubled and the kept points are
+ * simplified again in place with it.  Fixes dropped by earlier passes are then within
+ * twice the current tolerance.
+ *
+ * Distances are computed on a local flat-earth approximation around the last kept point.
+ * Everything is in preallocated primitive arrays, nothing is allocated per fix.
+ */
+public class TrackSimplifier {
+    private final static double M_PER_DEG = 6371000.0 * Math.PI / 180.0;
+
+    private double tolerance;        // metres, current (grows as needed)
+    private double initialTolerance;
+    private double[] lats;           // kept points
+    private double[] lons;
+    private double[] winLats;        // window of fixes since the last kept point
+    private double[] winLons;
+    private double lastLat;          // latest fix, may or may not be kept
+    private double lastLon;
+    private int count;               // number of kept points
+    private int winCount;
+    private int version;             // incremented whenever the kept points change
+    private int compressions;
+
+    /**
+     * @param capacity = maximum number of kept points
+     * @param tolerance = initial maximum distance of dropped fixes from the simplified track, metres
+     * @param window = maximum number of fixes between kept points
+     */
+    public TrackSimplifier (int capacity, double tolerance, int window)
+    {
+        lats = new double[capacity];
+        lons = new double[capacity];
+        winLats = new double[window];
+        winLons = new double[window];
+        initialTolerance = tolerance;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Forget the track.
+     */
+    public void reset ()
+    {
+        count     = 0;
+        winCount  = 0;
+        tolerance = initialTolerance;
+        compressions = 0;
+        version ++;
+    }
+
+    /**
+     * Add a fix.
+     */
+    public void add (double lat, double lon)
+    {
+        lastLat = lat;
+        lastLon = lon;
+        if (count == 0) {
+            keep (lat, lon);
+            return;
+        }
+
+        // see if the window still fits a line from the last kept point to the new fix
+        double alat = lats[count-1];
+        double alon = lons[count-1];
+        double mPerDegLon = M_PER_DEG * Math.max (Math.cos (Math.toRadians (alat)), 0.01);
+        double px = wrapLon (lon - alon) * mPerDegLon;
+        double py = (lat - alat) * M_PER_DEG;
+        boolean fits = true;
+        for (int i = 0; i < winCount; i ++) {
+            double qx = wrapLon (winLons[i] - alon) * mPerDegLon;
+            double qy = (winLats[i] - alat) * M_PER_DEG;
+            if (segmentDist (qx, qy, px, py) > tolerance) {
+                fits = false;
+                break;
+            }
+        }
+
+        if (! fits) {
+            // keep the fix before this one and start a new window after it
+            keep (winLats[winCount-1], winLons[winCount-1]);
+            winCount = 0;
+        } else if (winCount == winLats.length) {
+            // window full, keep its latest fix
+            keep (winLats[winCount-1], winLons[winCount-1]);
+            winCount = 0;
+        }
+        winLats[winCount] = lat;
+        winLons[winCount] = lon;
+        winCount ++;
+    }
+
+    private void keep (double lat, double lon)
+    {
+        if (count == lats.length) compress ();
+        lats[count] = lat;
+        lons[count] = lon;
+        count ++;
+        version ++;
+    }
+
+    /**
+     * Arrays are full, double the tolerance and simplify the kept points in place
+     * until they fill no more than three quarters, so there is room for a while.
+     * The first and last kept points are always kept.
+     */
+    private void compress ()
+    {
+        while (count > lats.length * 3 / 4) {
+            tolerance *= 2.0;
+            compressions ++;
+            int n = count;
+            int w = 0;   // output index of current anchor
+            int s = 1;   // input index of first point since anchor
+            for (int r = 1; r < n; r ++) {
+                double alat = lats[w];
+                double alon = lons[w];
+                double mPerDegLon = M_PER_DEG * Math.max (Math.cos (Math.toRadians (alat)), 0.01);
+                double px = wrapLon (lons[r] - alon) * mPerDegLon;
+                double py = (lats[r] - alat) * M_PER_DEG;
+                for (int q = s; q < r; q ++) {
+                    double qx = wrapLon (lons[q] - alon) * mPerDegLon;
+                    double qy = (lats[q] - alat) * M_PER_DEG;
+                    if (segmentDist (qx, qy, px, py) > tolerance) {
+                        // output never overtakes input, so r-1 is still intact
+                        w ++;
+                        lats[w] = lats[r-1];
+                        lons[w] = lons[r-1];
+                        s = r;
+                        break;
+                    }
+                }
+            }
+            w ++;
+            lats[w] = lats[n-1];
+            lons[w] = lons[n-1];
+            count = w + 1;
+        }
+    }
+
+    /**
+     * Distance from point q to the segment from the origin to point p.
+     */
+    private static double segmentDist (double qx, double qy, double px, double py)
+    {
+        double len2 = px * px + py * py;
+        double t = (len2 > 0.0) ? (qx * px + qy * py) / len2 : 0.0;
+        if (t < 0.0) t = 0.0;
+        if (t > 1.0) t = 1.0;
+        return Math.hypot (qx - t * px, qy - t * py);
+    }
+
+    private static double wrapLon (double dlon)
+    {
+        if (dlon > 180.0) dlon -= 360.0;
+        if (dlon < -180.0) dlon += 360.0;
+        return dlon;
+    }
+
+    /**
+     * Make this a copy of another.
+     * The kept points are only copied if they changed since the last copy.
+     */
+    public void copyFrom (TrackSimplifier other)
+    {
+        if (lats.length < other.count) {
+            lats = new double[other.lats.length];
+            lons = new double[other.lons.length];
+            version = other.version - 1;
+        }
+        if (version != other.version) {
+            System.arraycopy (other.lats, 0, lats, 0, other.count);
+            System.arraycopy (other.lons, 0, lons, 0, other.count);
+            count   = other.count;
+            version = other.version;
+        }
+        lastLat   = other.lastLat;
+        lastLon   = other.lastLon;
+        tolerance = other.tolerance;
+        compressions = other.compressions;
+    }
+
+    /**
+     * Get number of kept points.
+     */
+    public int getCount ()
+    {
+        return count;
+    }
+
+    public double getLat (int i)
+    {
+        return lats[i];
+    }
+
+    public double getLon (int i)
+    {
+        return lons[i];
+    }
+
+    /**
+     * Get latest fix, which the track should be drawn on to after the kept points.
+     */
+    public double getLastLat ()
+    {
+        return lastLat;
+    }
+
+    public double getLastLon ()
+    {
+        return lastLon;
+    }
+
+    /**
+     * Get current tolerance, metres.
+     */
+    public double getTolerance ()
+    {
+        return tolerance;
+    }
+
+    public int getCompressions ()
+    {
+        return compressions;
+    }
+
+    /**
+     * Get a number that changes whenever the kept points change.
+     */
+    public int getVersion ()
+    {
+        return version;
+    }
+}
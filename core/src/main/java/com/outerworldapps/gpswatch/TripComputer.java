@@ -0,0 +1,275 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+/**
+ * Trip statistics computed incrementally from each fix in constant time and memory,
+ * no history is kept so a session of any length costs the same.
+ *
+ * Distance and moving time only accumulate while moving, so GPS wander while
+ * stopped doesn't add up.  Whether a segment is moving goes by the fix speed,
+ * or for gaps longer than maxGap (lost signal) by the average speed over the gap.
+ * Speed mean and standard deviation use Welford's running algorithm over moving
+ * fixes.  Ascent and descent only count changes of low-pass filtered altitude
+ * bigger than a hysteresis band, vertical speed is low-pass filtered too.
+ */
+public class TripComputer {
+    private final static double EARTH_RADIUS = 6371000.0;     // metres
+
+    private double movingSpeed;     // m/s, slower than this is stopped
+    private double climbBand;       // metres, ascent/descent hysteresis
+    private long maxGap;            // ms, longer gaps are judged by average speed
+    private double vsTau;           // ms, vertical speed filter time constant
+    private double altTau;          // ms, altitude filter time constant
+
+    private boolean started;
+    private long startTime;         // ms since 1970
+    private long lastTime;
+    private double lastLat;
+    private double lastLon;
+    private double lastAlt;         // NaN if none yet
+    private double filtAlt;         // filtered altitude
+    private double refAlt;          // altitude at last ascent/descent turn, NaN if none yet
+
+    private double distance;        // metres
+    private long movingTime;        // ms
+    private double maxSpeed;        // m/s
+    private long speedCount;        // Welford running mean and sum of squared differences
+    private double speedMean;
+    private double speedM2;
+    private double ascent;          // metres
+    private double descent;
+    private double vertSpeed;       // m/s, filtered
+
+    /**
+     * @param movingSpeed = m/s, slower than this counts as stopped
+     * @param climbBand = metres, altitude must change this much to count as ascent or descent
+     * @param maxGap = ms, gaps between fixes longer than this (should be a few times the slowest
+     *                 fix interval) count as moving only if the average speed over the gap does
+     */
+    public TripComputer (double movingSpeed, double climbBand, long maxGap)
+    {
+        this.movingSpeed = movingSpeed;
+        this.climbBand   = climbBand;
+        this.maxGap      = maxGap;
+        this.vsTau       = 10000.0;
+        this.altTau      = 5000.0;
+        reset ();
+    }
+
+    public void reset ()
+    {
+        started    = false;
+        startTime  = 0;
+        lastTime   = 0;
+        lastAlt    = Double.NaN;
+        filtAlt    = Double.NaN;
+        refAlt     = Double.NaN;
+        distance   = 0.0;
+        movingTime = 0;
+        maxSpeed   = 0.0;
+        speedCount = 0;
+        speedMean  = 0.0;
+        speedM2    = 0.0;
+        ascent     = 0.0;
+        descent    = 0.0;
+        vertSpeed  = 0.0;
+    }
+
+    /**
+     * Add a fix.
+     * @param time = ms since 1970
+     * @param alt = metres, NaN if not available
+     * @param speed = m/s, NaN if not available (computed from positions)
+     */
+    public void update (long time, double lat, double lon, double alt, float speed)
+    {
+        if (! started) {
+            started   = true;
+            startTime = time;
+            lastTime  = time;
+            lastLat   = lat;
+            lastLon   = lon;
+            lastAlt   = alt;
+            filtAlt   = alt;
+            refAlt    = alt;
+            return;
+        }
+        long dt = time - lastTime;
+        if (dt <= 0) return;
+
+        // horizontal
+        double seg = distance (lastLat, lastLon, lat, lon);
+        double avg = seg * 1000.0 / dt;
+        double spd = (Float.isNaN (speed) || (dt > maxGap)) ? avg : speed;
+        if (spd >= movingSpeed) {
+            distance   += seg;
+            movingTime += dt;
+            if (maxSpeed < spd) maxSpeed = spd;
+            speedCount ++;
+            double delta = spd - speedMean;
+            speedMean += delta / speedCount;
+            speedM2   += delta * (spd - speedMean);
+        }
+
+        // vertical
+        if (! Double.isNaN (alt)) {
+            if (Double.isNaN (lastAlt)) {
+                filtAlt = alt;
+                refAlt  = alt;
+            } else {
+                filtAlt += (alt - filtAlt) * dt / (altTau + dt);
+                if (dt <= maxGap) {
+                    double vs = (alt - lastAlt) * 1000.0 / dt;
+                    double k = dt / (vsTau + dt);
+                    vertSpeed += (vs - vertSpeed) * k;
+                }
+            }
+            if (filtAlt - refAlt >= climbBand) {
+                ascent += filtAlt - refAlt;
+                refAlt  = filtAlt;
+            } else if (refAlt - filtAlt >= climbBand) {
+                descent += refAlt - filtAlt;
+                refAlt   = filtAlt;
+            }
+        }
+
+        lastTime = time;
+        lastLat  = lat;
+        lastLon  = lon;
+        lastAlt  = alt;
+    }
+
+    /**
+     * Make this a copy of another, eg to hand off to another thread.
+     */
+    public void copyFrom (TripComputer o)
+    {
+        movingSpeed = o.movingSpeed;
+        climbBand   = o.climbBand;
+        maxGap      = o.maxGap;
+        vsTau       = o.vsTau;
+        altTau      = o.altTau;
+        started     = o.started;
+        startTime   = o.startTime;
+        lastTime    = o.lastTime;
+        lastLat     = o.lastLat;
+        lastLon     = o.lastLon;
+        lastAlt     = o.lastAlt;
+        filtAlt     = o.filtAlt;
+        refAlt      = o.refAlt;
+        distance    = o.distance;
+        movingTime  = o.movingTime;
+        maxSpeed    = o.maxSpeed;
+        speedCount  = o.speedCount;
+        speedMean   = o.speedMean;
+        speedM2     = o.speedM2;
+        ascent      = o.ascent;
+        descent     = o.descent;
+        vertSpeed   = o.vertSpeed;
+    }
+
+    public boolean isStarted ()
+    {
+        return started;
+    }
+
+    /**
+     * Get time from first to latest fix, ms.
+     * Stops counting while there are no fixes.
+     */
+    public long getTimeToLastFix ()
+    {
+        return lastTime - startTime;
+    }
+
+    public long getStartTime ()
+    {
+        return startTime;
+    }
+
+    public double getDistance ()
+    {
+        return distance;
+    }
+
+    public long getMovingTime ()
+    {
+        return movingTime;
+    }
+
+    /**
+     * Get average speed while moving (distance / moving time), m/s.
+     */
+    public double getAvgSpeed ()
+    {
+        return (movingTime > 0) ? distance * 1000.0 / movingTime : 0.0;
+    }
+
+    public double getMaxSpeed ()
+    {
+        return maxSpeed;
+    }
+
+    /**
+     * Get mean of moving fixes' speeds, m/s.
+     */
+    public double getSpeedMean ()
+    {
+        return speedMean;
+    }
+
+    /**
+     * Get standard deviation of moving fixes' speeds, m/s.
+     */
+    public double getSpeedStdDev ()
+    {
+        return (speedCount > 1) ? Math.sqrt (speedM2 / (speedCount - 1)) : 0.0;
+    }
+
+    public double getAscent ()
+    {
+        return ascent;
+    }
+
+    public double getDescent ()
+    {
+        return descent;
+    }
+
+    /**
+     * Get filtered vertical speed, m/s, positive is climbing.
+     */
+    public double getVertSpeed ()
+    {
+        return vertSpeed;
+    }
+
+    private static double distance (double lat1, double lon1, double lat2, double lon2)
+    {
+        double phi1 = Math.toRadians (lat1);
+        double phi2 = Math.toRadians (lat2);
+        double sdp = Math.sin ((phi2 - phi1) / 2.0);
+        double sdl = Math.sin (Math.toRadians (lon2 - lon1) / 2.0);
+        double a = sdp * sdp + Math.cos (phi1) * Math.cos (phi2) * sdl * sdl;
+        return 2.0 * EARTH_RADIUS * Math.asin (Math.min (1.0, Math.sqrt (a)));
+    }
+}
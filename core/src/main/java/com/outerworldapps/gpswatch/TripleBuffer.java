@@ -0,0 +1,82 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free hand-off of snapshots from one writer thread to one reader thread.
+ * The writer fills the back buffer then publishes it, the reader picks up the
+ * latest published buffer when it is ready to draw.  Neither side ever waits
+ * for the other and each only touches its own buffer, so a burst of updates
+ * just overwrites the middle buffer until the reader gets to it.
+ */
+public class TripleBuffer<T> {
+    private final static int FRESH = 4;   // set in middle when it holds an unread publish
+
+    private AtomicInteger middle = new AtomicInteger (1);
+    private int back  = 0;     // writer's buffer index
+    private int front = 2;     // reader's buffer index
+    private Object[] buffers;
+
+    public TripleBuffer (T buf0, T buf1, T buf2)
+    {
+        buffers = new Object[] { buf0, buf1, buf2 };
+    }
+
+    /**
+     * Writer: buffer to fill in.
+     * Its contents are whatever was published two or more swaps ago.
+     */
+    @SuppressWarnings ("unchecked")
+    public T getBack ()
+    {
+        return (T) buffers[back];
+    }
+
+    /**
+     * Writer: make the back buffer the latest for the reader.
+     */
+    public void publish ()
+    {
+        back = middle.getAndSet (back | FRESH) & ~ FRESH;
+    }
+
+    /**
+     * Reader: pick up latest published buffer, if any.
+     * @return true iff front buffer changed
+     */
+    public boolean update ()
+    {
+        if ((middle.get () & FRESH) == 0) return false;
+        front = middle.getAndSet (front) & ~ FRESH;
+        return true;
+    }
+
+    /**
+     * Reader: buffer to draw from.
+     */
+    @SuppressWarnings ("unchecked")
+    public T getFront ()
+    {
+        return (T) buffers[front];
+    }
+}
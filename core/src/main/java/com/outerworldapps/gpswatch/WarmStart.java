@@ -0,0 +1,168 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Last fix, declination and satellite status saved in a small binary file
+ * so the next launch can draw something useful before the first live fix.
+ *
+ * File layout (little endian):
+ *   int    magic
+ *   int    version
+ *   long   fix time, ms since 1970
+ *   double latitude, degrees
+ *   double longitude, degrees
+ *   float  altitude, metres
+ *   float  speed, m/s
+ *   float  bearing, degrees true
+ *   float  accuracy, metres
+ *   float  declination, degrees east
+ *   int    number of satellites
+ *   satellites (SATSIZE bytes each):
+ *      byte  constellation
+ *      byte  used in fix
+ *      short svid
+ *      float cn0, dB-Hz
+ *      float elevation, degrees
+ *      float azimuth, degrees
+ *      float carrier frequency, Hz, 0 if unknown
+ */
+public class WarmStart {
+    private final static int MAGIC   = 0x47575753;  // 'GWWS'
+    private final static int VERSION = 2;
+    private final static int HDRSIZE = 56;
+    private final static int SATSIZE = 20;
+
+    public long time;            // ms since 1970, 0 if nothing loaded
+    public double lat;
+    public double lon;
+    public float alt;
+    public float speed;
+    public float bearing;
+    public float accuracy;
+    public float declination;
+    public final SatSnapshot sats = new SatSnapshot (64);
+
+    private ByteBuffer buf = ByteBuffer.allocate (HDRSIZE + 64 * SATSIZE).order (ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Read the file.
+     * @return false if it doesn't exist or isn't valid (nothing is changed)
+     */
+    public boolean load (File file)
+            throws IOException
+    {
+        if (! file.exists ()) return false;
+        try (FileInputStream fis = new FileInputStream (file)) {
+            FileChannel fc = fis.getChannel ();
+            long size = fc.size ();
+            if ((size < HDRSIZE) || (size > HDRSIZE + 1024L * SATSIZE)) return false;
+            ensure ((int) size);
+            buf.clear ();
+            buf.limit ((int) size);
+            while (buf.hasRemaining ()) {
+                if (fc.read (buf) < 0) return false;
+            }
+        }
+        buf.flip ();
+        if ((buf.getInt (0) != MAGIC) || (buf.getInt (4) != VERSION)) return false;
+        int nsats = buf.getInt (HDRSIZE - 4);
+        if ((nsats < 0) || (buf.limit () != HDRSIZE + nsats * SATSIZE)) return false;
+
+        buf.position (8);
+        time        = buf.getLong ();
+        lat         = buf.getDouble ();
+        lon         = buf.getDouble ();
+        alt         = buf.getFloat ();
+        speed       = buf.getFloat ();
+        bearing     = buf.getFloat ();
+        accuracy    = buf.getFloat ();
+        declination = buf.getFloat ();
+        buf.getInt ();
+        sats.clear ();
+        for (int i = 0; i < nsats; i ++) {
+            int constel  = buf.get ();
+            boolean used = buf.get () != 0;
+            int svid     = buf.getShort () & 0xFFFF;
+            float cn0    = buf.getFloat ();
+            float elev   = buf.getFloat ();
+            float azim   = buf.getFloat ();
+            float carrier = buf.getFloat ();
+            sats.add (constel, svid, cn0, elev, azim, used, carrier);
+        }
+        return true;
+    }
+
+    /**
+     * Write the file, via a temp file so a crash can't leave a partial one.
+     */
+    public void save (File file)
+            throws IOException
+    {
+        int nsats = sats.count;
+        ensure (HDRSIZE + nsats * SATSIZE);
+        buf.clear ();
+        buf.putInt (MAGIC);
+        buf.putInt (VERSION);
+        buf.putLong (time);
+        buf.putDouble (lat);
+        buf.putDouble (lon);
+        buf.putFloat (alt);
+        buf.putFloat (speed);
+        buf.putFloat (bearing);
+        buf.putFloat (accuracy);
+        buf.putFloat (declination);
+        buf.putInt (nsats);
+        for (int i = 0; i < nsats; i ++) {
+            buf.put ((byte) sats.constellation[i]);
+            buf.put ((byte) (sats.used[i] ? 1 : 0));
+            buf.putShort ((short) sats.svid[i]);
+            buf.putFloat (sats.cn0[i]);
+            buf.putFloat (sats.elevation[i]);
+            buf.putFloat (sats.azimuth[i]);
+            buf.putFloat (sats.carrierHz[i]);
+        }
+        buf.flip ();
+
+        File temp = new File (file.getPath () + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream (temp)) {
+            FileChannel fc = fos.getChannel ();
+            while (buf.hasRemaining ()) fc.write (buf);
+            fc.force (false);
+        }
+        if (! temp.renameTo (file)) throw new IOException ("error renaming " + temp);
+    }
+
+    private void ensure (int size)
+    {
+        if (buf.capacity () < size) {
+            buf = ByteBuffer.allocate (size).order (ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
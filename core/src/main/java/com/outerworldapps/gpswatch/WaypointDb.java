@@ -0,0 +1,320 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Read-only waypoint database in a memory-mapped file with a uniform lat/lon grid index,
+ * so opening it doesn't read or parse anything and a lookup only touches nearby cells.
+ *
+ * File layout (little endian):
+ *   header (HDRSIZE bytes):
+ *      int    magic
+ *      int    version
+ *      int    number of waypoints
+ *      int    grid rows (latitude)
+ *      int    grid columns (longitude)
+ *      int    offset of names
+ *      double grid south edge, degrees
+ *      double grid west edge, degrees
+ *      double grid cell size, degrees
+ *   cell index (rows*cols+1 ints):
+ *      number of first waypoint in each cell, row-major from the south-west corner,
+ *      the last entry is the number of waypoints
+ *   waypoints (RECSIZE bytes each), sorted by cell:
+ *      int latitude, 1e-7 degrees
+ *      int longitude, 1e-7 degrees
+ *      int offset of name from start of names
+ *   names:
+ *      byte length, then that many ISO-8859-1 bytes
+ *
+ * Use main () or build () to make a file from a name,lat,lon CSV file.
+ */
+public class WaypointDb implements Closeable {
+    private final static int MAGIC   = 0x47575750;  // 'GWWP'
+    private final static int VERSION = 1;
+    private final static int HDRSIZE = 48;
+    private final static int RECSIZE = 12;
+
+    private double cellDeg;
+    private double minLat;
+    private double minLon;
+    private int cols;
+    private int count;
+    private int namesPos;
+    private int recsPos;
+    private int rows;
+    private MappedByteBuffer map;
+    private RandomAccessFile raf;
+
+    public WaypointDb (File file)
+            throws IOException
+    {
+        raf = new RandomAccessFile (file, "r");
+        try {
+            FileChannel channel = raf.getChannel ();
+            map = channel.map (FileChannel.MapMode.READ_ONLY, 0, channel.size ());
+            map.order (ByteOrder.LITTLE_ENDIAN);
+            if ((map.limit () < HDRSIZE) || (map.getInt (0) != MAGIC) || (map.getInt (4) != VERSION)) {
+                throw new IOException (file + ": not a waypoint file");
+            }
+            count    = map.getInt (8);
+            rows     = map.getInt (12);
+            cols     = map.getInt (16);
+            namesPos = map.getInt (20);
+            minLat   = map.getDouble (24);
+            minLon   = map.getDouble (32);
+            cellDeg  = map.getDouble (40);
+            recsPos  = HDRSIZE + (rows * cols + 1) * 4;
+            if ((recsPos + count * RECSIZE != namesPos) || (namesPos > map.limit ())) {
+                throw new IOException (file + ": corrupt waypoint file");
+            }
+        } catch (IOException ioe) {
+            raf.close ();
+            throw ioe;
+        }
+    }
+
+    @Override  // Closeable
+    public void close ()
+            throws IOException
+    {
+        raf.close ();
+    }
+
+    public int size ()
+    {
+        return count;
+    }
+
+    public double getLat (int i)
+    {
+        return map.getInt (recsPos + i * RECSIZE) / 1.0E7;
+    }
+
+    public double getLon (int i)
+    {
+        return map.getInt (recsPos + i * RECSIZE + 4) / 1.0E7;
+    }
+
+    /**
+     * Get name without allocating.
+     * @return number of chars put in buf (truncated to fit)
+     */
+    public int getName (int i, char[] buf)
+    {
+        int pos = namesPos + map.getInt (recsPos + i * RECSIZE + 8);
+        int len = Math.min (map.get (pos) & 0xFF, buf.length);
+        for (int j = 0; j < len; j ++) buf[j] = (char) (map.get (pos + 1 + j) & 0xFF);
+        return len;
+    }
+
+    public String getName (int i)
+    {
+        char[] buf = new char[255];
+        return new String (buf, 0, getName (i, buf));
+    }
+
+    /**
+     * Look up a waypoint by name, ignoring case.
+     * Scans the whole file so only use it for one-off lookups.
+     * @return waypoint number or -1 if not found
+     */
+    public int find (String name)
+    {
+        char[] buf = new char[255];
+        int nlen = name.length ();
+        for (int i = 0; i < count; i ++) {
+            if (getName (i, buf) != nlen) continue;
+            int j = 0;
+            while ((j < nlen) && (Character.toUpperCase (buf[j]) == Character.toUpperCase (name.charAt (j)))) j ++;
+            if (j == nlen) return i;
+        }
+        return -1;
+    }
+
+    // grid access for NearestWaypoints
+
+    int getRows ()
+    {
+        return rows;
+    }
+
+    int getCols ()
+    {
+        return cols;
+    }
+
+    double getMinLat ()
+    {
+        return minLat;
+    }
+
+    double getMinLon ()
+    {
+        return minLon;
+    }
+
+    double getCellDeg ()
+    {
+        return cellDeg;
+    }
+
+    /**
+     * Get number of first waypoint in a cell, cell rows*cols gives the end of the last cell.
+     */
+    int getCellStart (int cell)
+    {
+        return map.getInt (HDRSIZE + cell * 4);
+    }
+
+    /**
+     * Write a waypoint file.
+     * @param cellDeg = grid cell size, degrees, or 0 to pick one giving a few waypoints per cell
+     */
+    public static void build (File file, int n, double[] lats, double[] lons, String[] names, double cellDeg)
+            throws IOException
+    {
+        double minLat = 90.0, maxLat = -90.0, minLon = 180.0, maxLon = -180.0;
+        for (int i = 0; i < n; i ++) {
+            minLat = Math.min (minLat, lats[i]);
+            maxLat = Math.max (maxLat, lats[i]);
+            minLon = Math.min (minLon, lons[i]);
+            maxLon = Math.max (maxLon, lons[i]);
+        }
+        if (n == 0) minLat = maxLat = minLon = maxLon = 0.0;
+        if (cellDeg <= 0.0) {
+            double area = Math.max (maxLat - minLat, 0.01) * Math.max (maxLon - minLon, 0.01);
+            cellDeg = Math.max (0.01, Math.min (5.0, Math.sqrt (area * 4.0 / Math.max (n, 1))));
+        }
+        int rows = (int) ((maxLat - minLat) / cellDeg) + 1;
+        int cols = (int) ((maxLon - minLon) / cellDeg) + 1;
+
+        // sort waypoints by cell
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i ++) {
+            int row = (int) ((lats[i] - minLat) / cellDeg);
+            int col = (int) ((lons[i] - minLon) / cellDeg);
+            keys[i] = ((long) (row * cols + col) << 32) | i;
+        }
+        Arrays.sort (keys);
+
+        byte[][] namebytes = new byte[n][];
+        int namesLen = 0;
+        for (int i = 0; i < n; i ++) {
+            byte[] b = names[i].getBytes (StandardCharsets.ISO_8859_1);
+            if (b.length > 255) b = Arrays.copyOf (b, 255);
+            namebytes[i] = b;
+            namesLen += 1 + b.length;
+        }
+
+        int recsPos  = HDRSIZE + (rows * cols + 1) * 4;
+        int namesPos = recsPos + n * RECSIZE;
+        ByteBuffer buf = ByteBuffer.allocate (namesPos + namesLen).order (ByteOrder.LITTLE_ENDIAN);
+        buf.putInt (0, MAGIC);
+        buf.putInt (4, VERSION);
+        buf.putInt (8, n);
+        buf.putInt (12, rows);
+        buf.putInt (16, cols);
+        buf.putInt (20, namesPos);
+        buf.putDouble (24, minLat);
+        buf.putDouble (32, minLon);
+        buf.putDouble (40, cellDeg);
+
+        int cell = 0;
+        int nameOff = 0;
+        for (int j = 0; j < n; j ++) {
+            int c = (int) (keys[j] >>> 32);
+            while (cell <= c) buf.putInt (HDRSIZE + cell ++ * 4, j);
+            int i = (int) keys[j];
+            int pos = recsPos + j * RECSIZE;
+            buf.putInt (pos,     (int) Math.round (lats[i] * 1.0E7));
+            buf.putInt (pos + 4, (int) Math.round (lons[i] * 1.0E7));
+            buf.putInt (pos + 8, nameOff);
+            byte[] b = namebytes[i];
+            buf.put (namesPos + nameOff, (byte) b.length);
+            for (int k = 0; k < b.length; k ++) buf.put (namesPos + nameOff + 1 + k, b[k]);
+            nameOff += 1 + b.length;
+        }
+        while (cell <= rows * cols) buf.putInt (HDRSIZE + cell ++ * 4, n);
+
+        try (RandomAccessFile out = new RandomAccessFile (file, "rw")) {
+            out.setLength (0);
+            FileChannel fc = out.getChannel ();
+            while (buf.hasRemaining ()) fc.write (buf);
+        }
+    }
+
+    /**
+     * Convert a CSV file of name,lat,lon lines to a waypoint file.
+     *   java com.outerworldapps.gpswatch.WaypointDb waypoints.csv waypoints.bin [celldeg]
+     */
+    public static void main (String[] args)
+            throws IOException
+    {
+        if ((args.length < 2) || (args.length > 3)) {
+            System.err.println ("usage: WaypointDb <in.csv> <out.bin> [<celldeg>]");
+            System.exit (1);
+        }
+        ArrayList<String> names = new ArrayList<> ();
+        double[] lats = new double[1024];
+        double[] lons = new double[1024];
+        try (BufferedReader br = new BufferedReader (new FileReader (args[0]))) {
+            int lineno = 0;
+            for (String line; (line = br.readLine ()) != null;) {
+                lineno ++;
+                line = line.trim ();
+                if (line.isEmpty () || line.startsWith ("#")) continue;
+                String[] parts = line.split (",");
+                if (parts.length < 3) throw new IOException (args[0] + ":" + lineno + ": bad line");
+                int n = names.size ();
+                if (n == lats.length) {
+                    lats = Arrays.copyOf (lats, n * 2);
+                    lons = Arrays.copyOf (lons, n * 2);
+                }
+                try {
+                    lats[n] = Double.parseDouble (parts[1].trim ());
+                    lons[n] = Double.parseDouble (parts[2].trim ());
+                } catch (NumberFormatException nfe) {
+                    throw new IOException (args[0] + ":" + lineno + ": bad number", nfe);
+                }
+                names.add (parts[0].trim ());
+            }
+        }
+        int n = names.size ();
+        double cellDeg = (args.length > 2) ? Double.parseDouble (args[2]) : 0.0;
+        build (new File (args[1]), n, lats, lons, names.toArray (new String[n]), cellDeg);
+        System.out.println (n + " waypoints written to " + args[1]);
+    }
+}
@@ -0,0 +1,198 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Pure Java World Magnetic Model evaluator.
+ * Reads coefficients from a standard NOAA WMM.COF file,
+ * then evaluates the spherical harmonic model the same way android.hardware.GeomagneticField does.
+ * Scratch arrays are allocated once so evaluation does not allocate.
+ */
+public class WmmModel implements DeclinationModel {
+    private final static double EARTH_A = 6378.137;       // WGS84 semi-major axis, km
+    private final static double EARTH_B = 6356.7523142;   // WGS84 semi-minor axis, km
+    private final static double EARTH_R = 6371.2;         // model reference radius, km
+    private final static double MS_PER_YEAR = 365.2425 * 86400000.0;
+
+    private double epoch;       // decimal year of coefficients
+    private int maxN;           // highest degree in file
+    private double[][] g, h, dg, dh;
+    private double[][] schmidt;
+    private double[][] p, dp;   // scratch: Legendre functions and derivatives
+    private double[] relPow;    // scratch: (R/r)**n
+    private double[] sinMLon, cosMLon;
+
+    /**
+     * Read coefficients in WMM.COF format:
+     *   first line:  epoch  model-name  release-date
+     *   other lines: n  m  g  h  dg/dt  dh/dt
+     *   terminated by a line of 9s or end of file
+     */
+    public WmmModel (Reader cof)
+            throws IOException
+    {
+        BufferedReader br = new BufferedReader (cof);
+        String line = br.readLine ();
+        if (line == null) throw new IOException ("empty WMM coefficient file");
+        epoch = Double.parseDouble (line.trim ().split ("\\s+")[0]);
+
+        int nmax = 12;
+        double[][][] coeffs = new double[4][nmax+1][nmax+1];
+        while ((line = br.readLine ()) != null) {
+            line = line.trim ();
+            if (line.isEmpty ()) continue;
+            if (line.startsWith ("9999")) break;
+            String[] parts = line.split ("\\s+");
+            if (parts.length < 6) throw new IOException ("bad WMM coefficient line " + line);
+            int n = Integer.parseInt (parts[0]);
+            int m = Integer.parseInt (parts[1]);
+            if ((n < 1) || (m < 0) || (m > n)) throw new IOException ("bad WMM degree/order " + line);
+            if (n > nmax) {
+                double[][][] bigger = new double[4][n+1][n+1];
+                for (int k = 0; k < 4; k ++) {
+                    for (int i = 0; i <= nmax; i ++) {
+                        System.arraycopy (coeffs[k][i], 0, bigger[k][i], 0, nmax + 1);
+                    }
+                }
+                coeffs = bigger;
+                nmax = n;
+            }
+            for (int k = 0; k < 4; k ++) {
+                coeffs[k][n][m] = Double.parseDouble (parts[k+2]);
+            }
+            if (maxN < n) maxN = n;
+        }
+        if (maxN == 0) throw new IOException ("no WMM coefficients");
+
+        g  = coeffs[0];
+        h  = coeffs[1];
+        dg = coeffs[2];
+        dh = coeffs[3];
+
+        schmidt = new double[maxN+1][maxN+1];
+        schmidt[0][0] = 1.0;
+        for (int n = 1; n <= maxN; n ++) {
+            schmidt[n][0] = schmidt[n-1][0] * (2 * n - 1) / n;
+            for (int m = 1; m <= n; m ++) {
+                schmidt[n][m] = schmidt[n][m-1] * Math.sqrt ((double) ((n - m + 1) * ((m == 1) ? 2 : 1)) / (n + m));
+            }
+        }
+
+        p       = new double[maxN+1][maxN+1];
+        dp      = new double[maxN+1][maxN+1];
+        relPow  = new double[maxN+3];
+        sinMLon = new double[maxN+1];
+        cosMLon = new double[maxN+1];
+    }
+
+    /**
+     * Get decimal year of the coefficients.
+     */
+    public double getEpoch ()
+    {
+        return epoch;
+    }
+
+    @Override  // DeclinationModel
+    public synchronized float getDeclination (double lat, double lon, double alt, long timems)
+    {
+        // geodetic -> geocentric
+        double altKm = alt / 1000.0;
+        double a2    = EARTH_A * EARTH_A;
+        double b2    = EARTH_B * EARTH_B;
+        double gdLatRad = Math.toRadians (lat);
+        double clat  = Math.cos (gdLatRad);
+        double slat  = Math.sin (gdLatRad);
+        double tlat  = slat / clat;
+        double latRad = Math.sqrt (a2 * clat * clat + b2 * slat * slat);
+        double gcLatRad = Math.atan (tlat * (latRad * altKm + b2) / (latRad * altKm + a2));
+        double gcLonRad = Math.toRadians (lon);
+        double radSq = altKm * altKm + 2.0 * altKm * latRad +
+                (a2 * a2 * clat * clat + b2 * b2 * slat * slat) / (a2 * clat * clat + b2 * slat * slat);
+        double gcRadius = Math.sqrt (radSq);
+
+        // Legendre functions of colatitude
+        double theta = Math.PI / 2.0 - gcLatRad;
+        double cos = Math.cos (theta);
+        double sin = Math.sin (theta);
+        p[0][0]  = 1.0;
+        dp[0][0] = 0.0;
+        for (int n = 1; n <= maxN; n ++) {
+            for (int m = 0; m <= n; m ++) {
+                if (n == m) {
+                    p[n][m]  = sin * p[n-1][m-1];
+                    dp[n][m] = cos * p[n-1][m-1] + sin * dp[n-1][m-1];
+                } else if ((n == 1) || (m == n - 1)) {
+                    p[n][m]  = cos * p[n-1][m];
+                    dp[n][m] = - sin * p[n-1][m] + cos * dp[n-1][m];
+                } else {
+                    double k = ((n - 1) * (n - 1) - m * m) / (double) ((2 * n - 1) * (2 * n - 3));
+                    p[n][m]  = cos * p[n-1][m] - k * p[n-2][m];
+                    dp[n][m] = - sin * p[n-1][m] + cos * dp[n-1][m] - k * dp[n-2][m];
+                }
+            }
+        }
+
+        // powers of reference radius over radius
+        relPow[0] = 1.0;
+        relPow[1] = EARTH_R / gcRadius;
+        for (int n = 2; n < relPow.length; n ++) {
+            relPow[n] = relPow[n-1] * relPow[1];
+        }
+
+        // sin and cos of m*lon
+        sinMLon[0] = 0.0;
+        cosMLon[0] = 1.0;
+        sinMLon[1] = Math.sin (gcLonRad);
+        cosMLon[1] = Math.cos (gcLonRad);
+        for (int m = 2; m <= maxN; m ++) {
+            int x = m >> 1;
+            sinMLon[m] = sinMLon[m-x] * cosMLon[x] + cosMLon[m-x] * sinMLon[x];
+            cosMLon[m] = cosMLon[m-x] * cosMLon[x] - sinMLon[m-x] * sinMLon[x];
+        }
+
+        // sum up the field in geocentric north/east/down
+        double years = 1970.0 + timems / MS_PER_YEAR - epoch;
+        double gcX = 0.0;
+        double gcY = 0.0;
+        double gcZ = 0.0;
+        for (int n = 1; n <= maxN; n ++) {
+            for (int m = 0; m <= n; m ++) {
+                double gg = g[n][m] + years * dg[n][m];
+                double hh = h[n][m] + years * dh[n][m];
+                double rp = relPow[n+2] * schmidt[n][m];
+                gcX += rp * (gg * cosMLon[m] + hh * sinMLon[m]) * dp[n][m];
+                gcY += rp * m * (gg * sinMLon[m] - hh * cosMLon[m]) * p[n][m];
+                gcZ -= rp * (n + 1) * (gg * cosMLon[m] + hh * sinMLon[m]) * p[n][m];
+            }
+        }
+        gcY /= Math.cos (gcLatRad);
+
+        // rotate back to geodetic, only north and east needed for declination
+        double latDiffRad = gdLatRad - gcLatRad;
+        double x = gcX * Math.cos (latDiffRad) + gcZ * Math.sin (latDiffRad);
+        return (float) Math.toDegrees (Math.atan2 (gcY, x));
+    }
+}
@@ -0,0 +1,48 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measure bytes allocated by the current thread, for allocation-free tests.
+ * Uses the HotSpot extension of ThreadMXBean, tests are skipped on JVMs without it.
+ */
+class Allocations {
+    private final static com.sun.management.ThreadMXBean bean = getBean ();
+
+    private static com.sun.management.ThreadMXBean getBean ()
+    {
+        Object b = ManagementFactory.getThreadMXBean ();
+        return (b instanceof com.sun.management.ThreadMXBean) ? (com.sun.management.ThreadMXBean) b : null;
+    }
+
+    /**
+     * Get bytes allocated so far by the current thread.
+     */
+    static long allocated ()
+    {
+        Assume.assumeTrue ("thread allocation counting not supported", bean != null && bean.isThreadAllocatedMemorySupported ());
+        return bean.getThreadAllocatedBytes (Thread.currentThread ().getId ());
+    }
+}
@@ -0,0 +1,87 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CharFormatTest {
+
+    @Test
+    public void formatTime ()
+    {
+        char[] buf = new char[8];
+        assertEquals (8, CharFormat.formatTime (buf, ((13 * 60 + 5) * 60 + 9) * 1000L + 999));
+        assertEquals ("13:05:09", new String (buf));
+        CharFormat.formatTime (buf, 3 * 86400000L - 1000);
+        assertEquals ("23:59:59", new String (buf));
+    }
+
+    @Test
+    public void formatHeading ()
+    {
+        char[] buf = new char[4];
+        assertEquals (360, CharFormat.normHeading (-0.4F));
+        assertEquals (1, CharFormat.normHeading (360.6F));
+        assertEquals (270, CharFormat.normHeading (-90.0F));
+        assertEquals (4, CharFormat.formatHeading (buf, 7));
+        assertEquals ("007\u00B0", new String (buf));
+        CharFormat.formatHeading (buf, 360);
+        assertEquals ("360\u00B0", new String (buf));
+    }
+
+    @Test
+    public void formatNm ()
+    {
+        char[] buf = new char[8];
+        assertEquals ("0.0", new String (buf, 0, CharFormat.formatNm (buf, 0, 0.0F)));
+        assertEquals ("9.9", new String (buf, 0, CharFormat.formatNm (buf, 0, 9.94F * 1852.0F)));
+        assertEquals ("10", new String (buf, 0, CharFormat.formatNm (buf, 0, 10.0F * 1852.0F)));
+        assertEquals ("12345", new String (buf, 2, CharFormat.formatNm (buf, 2, 12345.0F * 1852.0F)));
+        assertEquals ("99999", new String (buf, 0, CharFormat.formatNm (buf, 0, 1.0E9F)));
+    }
+
+    /**
+     * Formatting everything a frame shows, repeatedly after warm-up, must not allocate.
+     */
+    @Test
+    public void noAllocation ()
+    {
+        char[] buf = new char[16];
+        int sum = 0;
+        for (int i = 0; i < 20000; i ++) sum += formatFrame (buf, i);
+        long before = Allocations.allocated ();
+        for (int i = 0; i < 100000; i ++) sum += formatFrame (buf, i);
+        long bytes = Allocations.allocated () - before;
+        assertTrue (sum != 0);
+        assertTrue ("allocated " + bytes + " bytes in 100000 frames", bytes < 1000);
+    }
+
+    private static int formatFrame (char[] buf, int i)
+    {
+        int n = CharFormat.formatTime (buf, i * 1000L);
+        n += CharFormat.formatHeading (buf, CharFormat.normHeading (i * 0.7F));
+        n += CharFormat.formatNm (buf, 4, i * 3.7F);
+        return n + buf[0];
+    }
+}
@@ -0,0 +1,134 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompassFilterTest {
+
+    private static float angleDiff (float a, float b)
+    {
+        float d = Math.abs (a - b) % 360.0F;
+        return (d > 180.0F) ? 360.0F - d : d;
+    }
+
+    /**
+     * Play the synthetic sensor trace of a turn through north (recorded trace format, generated with noise).
+     * The heading must track the truth once settled, never swing the long way round,
+     * and noise must not cause a report on every sample.
+     */
+    @Test
+    public void syntheticTurnThroughNorth ()
+            throws IOException
+    {
+        CompassFilter cf = new CompassFilter (0.08F, 1.0F);
+        float[] values = new float[3];
+        int samples = 0;
+        int reports = 0;
+        float worstSteady = 0.0F;
+        try (BufferedReader br = new BufferedReader (new InputStreamReader (
+                getClass ().getResourceAsStream ("/compass-turn.csv"), StandardCharsets.US_ASCII))) {
+            for (String line; (line = br.readLine ()) != null;) {
+                if (line.startsWith ("#")) continue;
+                String[] f = line.split (",");
+                long ms = Long.parseLong (f[0]);
+                for (int i = 0; i < 3; i ++) values[i] = Float.parseFloat (f[2+i]);
+                float truth = Float.parseFloat (f[5]);
+                boolean changed = f[1].equals ("A") ? cf.onAccelerometer (values) : cf.onMagnetometer (values);
+                samples ++;
+                if (changed) reports ++;
+
+                // caller reuses its array, filter must have copied it
+                values[0] = values[1] = values[2] = Float.NaN;
+
+                float hdg = cf.getHeading ();
+                if (Float.isNaN (hdg)) continue;
+                assertTrue ("heading " + hdg + " at " + ms, angleDiff (hdg, 0.0F) <= 15.0F);
+                if ((ms > 1000) && (ms < 5000) || (ms > 11000)) {
+                    worstSteady = Math.max (worstSteady, angleDiff (hdg, truth));
+                }
+            }
+        }
+        assertEquals (2000, samples);
+        assertTrue ("steady error " + worstSteady, worstSteady < 2.0F);
+        assertTrue ("reported " + reports + " times", (reports >= 15) && (reports < 100));
+    }
+
+    /**
+     * Rotation vector for the watch lying flat, turned to various headings.
+     */
+    @Test
+    public void rotationVector ()
+    {
+        CompassFilter cf = new CompassFilter (1.0F, 0.1F);
+        for (int h = 0; h < 360; h += 15) {
+            double half = Math.toRadians (h) / 2.0;
+            float[] q = { 0.0F, 0.0F, (float) - Math.sin (half), (float) Math.cos (half) };
+            if (q[3] < 0.0F) {
+                // the sensor reports the equivalent quaternion with w >= 0
+                q[2] = - q[2];
+                q[3] = - q[3];
+            }
+            cf.onRotationVector (q);
+            assertEquals ("heading " + h, 0.0F, angleDiff (cf.getHeading (), h), 0.01F);
+
+            // three component form, w derived
+            cf.onRotationVector (new float[] { 0.0F, 0.0F, q[2] });
+            assertEquals ("heading " + h, 0.0F, angleDiff (cf.getHeading (), h), 0.01F);
+        }
+    }
+
+    /**
+     * Heading is only reported again once it has moved by the threshold.
+     */
+    @Test
+    public void threshold ()
+    {
+        CompassFilter cf = new CompassFilter (1.0F, 5.0F);
+        float[] acc = { 0.0F, 0.0F, 9.81F };
+        assertFalse (cf.onAccelerometer (acc));
+        assertTrue (cf.onMagnetometer (mag (100.0)));
+        assertFalse (cf.onMagnetometer (mag (104.0)));
+        assertEquals (100.0F, cf.getHeading (), 0.01F);
+        assertTrue (cf.onMagnetometer (mag (106.0)));
+        assertEquals (106.0F, cf.getHeading (), 0.01F);
+        cf.reset ();
+        assertTrue (Float.isNaN (cf.getHeading ()));
+    }
+
+    /**
+     * Magnetometer reading for the watch flat at the given heading.
+     */
+    private static float[] mag (double hdg)
+    {
+        double r = Math.toRadians (hdg);
+        return new float[] { (float) (-20.0 * Math.sin (r)), (float) (20.0 * Math.cos (r)), -45.0F };
+    }
+}
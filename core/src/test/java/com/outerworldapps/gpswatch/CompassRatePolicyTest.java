@@ -0,0 +1,119 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompassRatePolicyTest {
+
+    @Test
+    public void startsFast ()
+    {
+        CompassRatePolicy p = new CompassRatePolicy ();
+        assertEquals (CompassRatePolicy.STATE_FAST, p.getState ());
+        assertEquals ("fast", p.getStateName ());
+        assertTrue (p.isActive ());
+        assertEquals (50000, p.getSamplingUs ());
+        assertEquals (100000, p.getMaxLatencyUs ());
+    }
+
+    /**
+     * Heading must be unchanged for the whole stable time to slow down,
+     * and any change speeds up again straight away.
+     */
+    @Test
+    public void slowsWhenStable ()
+    {
+        CompassRatePolicy p = new CompassRatePolicy ();
+        assertFalse (p.onSample (false, 0));
+        assertFalse (p.onSample (false, 4999));
+        assertTrue (p.onSample (false, 5000));
+        assertEquals (CompassRatePolicy.STATE_SLOW, p.getState ());
+        assertEquals (200000, p.getSamplingUs ());
+        assertEquals (1000000, p.getMaxLatencyUs ());
+
+        assertFalse (p.onSample (false, 9000));
+        assertTrue (p.onSample (true, 9200));
+        assertEquals (CompassRatePolicy.STATE_FAST, p.getState ());
+    }
+
+    /**
+     * A heading change restarts the stable timer.
+     */
+    @Test
+    public void stableTimerRestarts ()
+    {
+        CompassRatePolicy p = new CompassRatePolicy ();
+        p.onSample (false, 0);
+        p.onSample (true, 3000);
+        assertFalse (p.onSample (false, 5000));
+        assertFalse (p.onSample (false, 7999));
+        assertTrue (p.onSample (false, 8000));
+    }
+
+    /**
+     * Invisible or ambient turns the sensors off, and they come back fast
+     * with the stable timer restarted.
+     */
+    @Test
+    public void offWhenHidden ()
+    {
+        CompassRatePolicy p = new CompassRatePolicy ();
+        p.onSample (false, 0);
+        p.onSample (false, 5000);
+        assertEquals (CompassRatePolicy.STATE_SLOW, p.getState ());
+
+        assertTrue (p.setAmbient (true));
+        assertEquals (CompassRatePolicy.STATE_OFF, p.getState ());
+        assertFalse (p.isActive ());
+        assertFalse (p.setVisible (false));
+        assertFalse (p.setAmbient (false));
+        assertEquals (CompassRatePolicy.STATE_OFF, p.getState ());
+
+        assertTrue (p.setVisible (true));
+        assertEquals (CompassRatePolicy.STATE_FAST, p.getState ());
+        assertFalse (p.onSample (false, 60000));
+        assertFalse (p.onSample (false, 64999));
+        assertTrue (p.onSample (false, 65000));
+        assertEquals (CompassRatePolicy.STATE_SLOW, p.getState ());
+    }
+
+    /**
+     * Changing state between states with the same settings doesn't need re-registering.
+     */
+    @Test
+    public void sameRatesNoChange ()
+    {
+        CompassRatePolicy p = new CompassRatePolicy ();
+        p.setRates (CompassRatePolicy.STATE_SLOW, 50000, 100000);
+        p.setStableTime (1000);
+        assertFalse (p.onSample (false, 0));
+        assertFalse (p.onSample (false, 1000));
+        assertEquals (CompassRatePolicy.STATE_SLOW, p.getState ());
+        assertFalse (p.onSample (true, 1100));
+        assertEquals (CompassRatePolicy.STATE_FAST, p.getState ());
+        assertTrue (p.setVisible (false));
+    }
+}
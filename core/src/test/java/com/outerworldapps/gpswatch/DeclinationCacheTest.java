@@ -0,0 +1,134 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check the cache against the model it caches, using the WMM-2020
+ * coefficients up to degree 3 (wmm2020-deg3.cof).
+ */
+public class DeclinationCacheTest {
+    private final static double CELL   = 0.25;      // same settings as the app
+    private final static double ALTCELL = 1000.0;
+    private final static long MAXAGE   = 86400000L;
+    private final static long T2020_6  = 1590969600000L;   // 2020-06-01
+
+    private WmmModel model;
+
+    @Before
+    public void setUp ()
+            throws IOException
+    {
+        try (Reader rdr = new InputStreamReader (getClass ().getResourceAsStream ("/wmm2020-deg3.cof"),
+                StandardCharsets.US_ASCII)) {
+            model = new WmmModel (rdr);
+        }
+    }
+
+    /**
+     * Model sanity: the low-degree field gives roughly the right declination
+     * (full model: Boston about -14, Seattle about +15, London about 0).
+     */
+    @Test
+    public void modelSanity ()
+    {
+        assertEquals (2020.0, model.getEpoch (), 0.0);
+        assertTrue (model.getDeclination (42.36, -71.06, 0.0, T2020_6) < -8.0F);
+        assertTrue (model.getDeclination (47.61, -122.33, 0.0, T2020_6) > 8.0F);
+        assertEquals (0.0F, model.getDeclination (51.5, -0.13, 0.0, T2020_6), 5.0F);
+    }
+
+    /**
+     * At random points and times, the cached value must be within the model's
+     * change over half a cell diagonal, and within half a degree (well under
+     * what a watch compass can show) away from the magnetic poles (latitude within 50 degrees).
+     */
+    @Test
+    public void errorBound ()
+    {
+        DeclinationCache cache = new DeclinationCache (model, CELL, ALTCELL, MAXAGE);
+        Random r = new Random (4);
+        double halfDiag = CELL * Math.sqrt (2.0) / 2.0;
+        float worst = 0.0F;
+        double worstLat = 0.0;
+        double worstLon = 0.0;
+        for (int i = 0; i < 20000; i ++) {
+            double lat = r.nextDouble () * 120.0 - 60.0;
+            double lon = r.nextDouble () * 360.0 - 180.0;
+            double alt = r.nextDouble () * 3000.0;
+            long time  = T2020_6 + (long) (r.nextDouble () * 365 * MAXAGE);
+            float cached = cache.getDeclination (lat, lon, alt, time);
+            float exact  = model.getDeclination (lat, lon, alt, time);
+
+            // local gradient, degrees declination per degree of lat/lon
+            double d = 0.01;
+            double glat = (model.getDeclination (lat + d, lon, alt, time) - model.getDeclination (lat - d, lon, alt, time)) / (2 * d);
+            double glon = (model.getDeclination (lat, lon + d, alt, time) - model.getDeclination (lat, lon - d, alt, time)) / (2 * d);
+            double bound = Math.hypot (glat, glon) * halfDiag * 1.5 + 0.01;
+            float err = Math.abs (cached - exact);
+            assertTrue ("error " + err + " > " + bound + " at " + lat + "," + lon, err <= bound);
+            if ((Math.abs (lat) <= 50.0) && (err > worst)) {
+                worst    = err;
+                worstLat = lat;
+                worstLon = lon;
+            }
+        }
+        assertTrue ("worst error " + worst + " at " + worstLat + "," + worstLon, worst < 0.5F);
+    }
+
+    /**
+     * Walking around within a cell doesn't recompute, crossing a cell or
+     * exceeding the age does.
+     */
+    @Test
+    public void recomputeThresholds ()
+    {
+        DeclinationCache cache = new DeclinationCache (model, CELL, ALTCELL, MAXAGE);
+        long t = T2020_6;
+        for (int i = 0; i < 3600; i ++) {
+            cache.getDeclination (42.51 + i * 1.0E-5, -71.01 - i * 1.0E-5, 100.0, t + i * 1000L);
+        }
+        assertEquals (1, cache.getComputeCount ());
+
+        cache.getDeclination (42.51, -70.99, 100.0, t);      // next cell east
+        assertEquals (2, cache.getComputeCount ());
+        cache.getDeclination (42.51, -70.99, 1100.0, t);     // next altitude cell
+        assertEquals (3, cache.getComputeCount ());
+        cache.getDeclination (42.51, -70.99, 1100.0, t + MAXAGE);
+        assertEquals (3, cache.getComputeCount ());
+        cache.getDeclination (42.51, -70.99, 1100.0, t + MAXAGE + 1);
+        assertEquals (4, cache.getComputeCount ());
+        cache.invalidate ();
+        cache.getDeclination (42.51, -70.99, 1100.0, t + MAXAGE + 1);
+        assertEquals (5, cache.getComputeCount ());
+    }
+}
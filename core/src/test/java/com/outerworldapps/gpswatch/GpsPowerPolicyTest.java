@@ -0,0 +1,122 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GpsPowerPolicyTest {
+
+    @Test
+    public void startsMoving ()
+    {
+        GpsPowerPolicy p = new GpsPowerPolicy ();
+        assertEquals (GpsPowerPolicy.STATE_MOVING, p.getState ());
+        assertEquals ("moving", p.getStateName ());
+        assertEquals (1000, p.getIntervalMs ());
+        assertEquals (0, p.getBatchLatencyMs ());
+    }
+
+    /**
+     * Must be slow for the whole stop time to become stationary,
+     * and a fast fix makes it moving again straight away.
+     */
+    @Test
+    public void stationaryHysteresis ()
+    {
+        GpsPowerPolicy p = new GpsPowerPolicy ();
+        assertFalse (p.onSpeed (0.2F, 0));
+        assertFalse (p.onSpeed (0.2F, 59999));
+        assertTrue (p.onSpeed (0.2F, 60000));
+        assertEquals (GpsPowerPolicy.STATE_STATIONARY, p.getState ());
+        assertEquals (5000, p.getIntervalMs ());
+        assertEquals (5.0F, p.getMinDistance (), 0.0F);
+
+        // between stop and move speeds: stays stationary
+        assertFalse (p.onSpeed (1.0F, 61000));
+        assertEquals (GpsPowerPolicy.STATE_STATIONARY, p.getState ());
+
+        assertTrue (p.onSpeed (1.5F, 62000));
+        assertEquals (GpsPowerPolicy.STATE_MOVING, p.getState ());
+    }
+
+    /**
+     * A speed between the thresholds restarts the stop timer.
+     */
+    @Test
+    public void stopTimerRestarts ()
+    {
+        GpsPowerPolicy p = new GpsPowerPolicy ();
+        p.onSpeed (0.2F, 0);
+        p.onSpeed (1.0F, 30000);
+        assertFalse (p.onSpeed (0.2F, 60000));
+        assertFalse (p.onSpeed (0.2F, 119999));
+        assertTrue (p.onSpeed (0.2F, 120000));
+    }
+
+    /**
+     * Screen off beats ambient beats stationary beats moving.
+     */
+    @Test
+    public void priorities ()
+    {
+        GpsPowerPolicy p = new GpsPowerPolicy ();
+        assertTrue (p.setAmbient (true));
+        assertEquals (GpsPowerPolicy.STATE_AMBIENT, p.getState ());
+        assertEquals (20000, p.getIntervalMs ());
+        assertEquals (60000, p.getBatchLatencyMs ());
+
+        assertTrue (p.setScreenOn (false));
+        assertEquals (GpsPowerPolicy.STATE_SCREENOFF, p.getState ());
+        assertEquals (60000, p.getIntervalMs ());
+
+        // speeds don't matter while screen is off
+        p.onSpeed (0.0F, 0);
+        assertFalse (p.onSpeed (0.0F, 100000));
+        assertEquals (GpsPowerPolicy.STATE_SCREENOFF, p.getState ());
+
+        assertTrue (p.setScreenOn (true));
+        assertEquals (GpsPowerPolicy.STATE_AMBIENT, p.getState ());
+        assertTrue (p.setAmbient (false));
+        assertEquals (GpsPowerPolicy.STATE_STATIONARY, p.getState ());
+        assertFalse (p.setAmbient (false));
+    }
+
+    /**
+     * Changing state only reports a change if the settings differ.
+     */
+    @Test
+    public void sameRatesNoChange ()
+    {
+        GpsPowerPolicy p = new GpsPowerPolicy ();
+        p.setRates (GpsPowerPolicy.STATE_AMBIENT, 1000, 0.0F, 0);
+        assertFalse (p.setAmbient (true));
+        assertEquals (GpsPowerPolicy.STATE_AMBIENT, p.getState ());
+
+        p.setStationary (0.1F, 0.2F, 1000);
+        p.setAmbient (false);
+        p.onSpeed (0.0F, 0);
+        assertTrue (p.onSpeed (0.0F, 1000));
+    }
+}
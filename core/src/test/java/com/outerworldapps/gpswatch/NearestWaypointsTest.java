@@ -0,0 +1,190 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compare the incremental search against ranking every waypoint.
+ */
+public class NearestWaypointsTest {
+    private final static double M_PER_DEG = 6371000.0 * Math.PI / 180.0;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder ();
+
+    private WaypointDb db;
+
+    @After
+    public void close ()
+            throws IOException
+    {
+        if (db != null) db.close ();
+    }
+
+    /**
+     * Jumping to random positions, inside and outside the waypoint area, rebuilds each time.
+     */
+    @Test
+    public void randomPositions ()
+            throws IOException
+    {
+        Random r = new Random (1);
+        open (5000, r, 40.0, 45.0, -75.0, -68.0);
+        NearestWaypoints nw = new NearestWaypoints (db, 4, 2000.0);
+        for (int i = 0; i < 1000; i ++) {
+            double lat = 38.0 + r.nextDouble () * 9.0;
+            double lon = -77.0 + r.nextDouble () * 11.0;
+            nw.update (lat, lon);
+            check (nw, lat, lon, "position " + i);
+        }
+    }
+
+    /**
+     * Moving 30 m per fix with a wandering heading, mostly re-ranking the candidates
+     * but always giving the same result as a full search.
+     */
+    @Test
+    public void moving ()
+            throws IOException
+    {
+        Random r = new Random (2);
+        open (20000, r, 40.0, 45.0, -75.0, -68.0);
+        NearestWaypoints nw = new NearestWaypoints (db, 3, 2000.0);
+        double lat = 42.0;
+        double lon = -71.0;
+        double hdg = 0.0;
+        int nfixes = 20000;
+        for (int i = 0; i < nfixes; i ++) {
+            hdg += r.nextGaussian () * 10.0;
+            lat += 30.0 * Math.cos (Math.toRadians (hdg)) / M_PER_DEG;
+            lon += 30.0 * Math.sin (Math.toRadians (hdg)) / (M_PER_DEG * Math.cos (Math.toRadians (lat)));
+            nw.update (lat, lon);
+            check (nw, lat, lon, "fix " + i);
+        }
+        int rebuilds = nw.getRebuildCount ();
+        assertTrue (rebuilds + " rebuilds", (rebuilds > 0) && (rebuilds < nfixes / 20));
+    }
+
+    /**
+     * Waypoints either side of 180 degrees longitude are neighbours.
+     */
+    @Test
+    public void antimeridian ()
+            throws IOException
+    {
+        Random r = new Random (3);
+        int n = 400;
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        String[] names = new String[n];
+        for (int i = 0; i < n; i ++) {
+            lats[i]  = -20.0 + r.nextDouble () * 4.0;
+            lons[i]  = ((i & 1) == 0) ? 178.0 + r.nextDouble () * 2.0 : -180.0 + r.nextDouble () * 2.0;
+            names[i] = "W" + i;
+        }
+        build (n, lats, lons, names);
+        NearestWaypoints nw = new NearestWaypoints (db, 5, 1000.0);
+        for (int i = 0; i < 500; i ++) {
+            double lat = -19.0 + r.nextDouble () * 2.0;
+            double lon = 179.9 + r.nextDouble () * 0.2;
+            if (lon > 180.0) lon -= 360.0;
+            nw.update (lat, lon);
+            check (nw, lat, lon, "position " + i);
+        }
+    }
+
+    /**
+     * Fewer waypoints than asked for gives them all, however far away.
+     */
+    @Test
+    public void fewWaypoints ()
+            throws IOException
+    {
+        build (2, new double[] { 10.0, 10.5 }, new double[] { 20.0, 20.5 }, new String[] { "A", "B" });
+        NearestWaypoints nw = new NearestWaypoints (db, 3, 2000.0);
+        nw.update (-30.0, -100.0);
+        assertEquals (2, nw.count);
+        check (nw, -30.0, -100.0, "far away");
+    }
+
+    /**
+     * The result must be the n nearest by the same flat-earth distance the search ranks by.
+     * Compared by distance so exact ties can come back in either order.
+     */
+    private void check (NearestWaypoints nw, double lat, double lon, String msg)
+    {
+        int nwpts = db.size ();
+        double[] all = new double[nwpts];
+        for (int w = 0; w < nwpts; w ++) all[w] = flatDist (lat, lon, db.getLat (w), db.getLon (w));
+        double[] sorted = all.clone ();
+        Arrays.sort (sorted);
+
+        int n = Math.min (nw.index.length, nwpts);
+        assertEquals (msg, n, nw.count);
+        for (int i = 0; i < n; i ++) {
+            assertEquals (msg + " rank " + i, sorted[i], all[nw.index[i]], 0.01);
+        }
+    }
+
+    private void open (int n, Random r, double latLo, double latHi, double lonLo, double lonHi)
+            throws IOException
+    {
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        String[] names = new String[n];
+        for (int i = 0; i < n; i ++) {
+            lats[i]  = latLo + r.nextDouble () * (latHi - latLo);
+            lons[i]  = lonLo + r.nextDouble () * (lonHi - lonLo);
+            names[i] = "W" + i;
+        }
+        build (n, lats, lons, names);
+    }
+
+    private void build (int n, double[] lats, double[] lons, String[] names)
+            throws IOException
+    {
+        File file = tmp.newFile ();
+        WaypointDb.build (file, n, lats, lons, names, 0.0);
+        db = new WaypointDb (file);
+    }
+
+    private static double flatDist (double lat1, double lon1, double lat2, double lon2)
+    {
+        double dlon = lon2 - lon1;
+        if (dlon > 180.0) dlon -= 360.0;
+        if (dlon < -180.0) dlon += 360.0;
+        double dx = dlon * Math.cos (Math.toRadians ((lat1 + lat2) / 2.0));
+        double dy = lat2 - lat1;
+        return Math.sqrt (dx * dx + dy * dy) * M_PER_DEG;
+    }
+}
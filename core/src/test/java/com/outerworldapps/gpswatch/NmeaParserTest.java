@@ -0,0 +1,224 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feed a receiver log through a pipe, the way BluetoothGps reads its socket,
+ * in chunks that split sentences at arbitrary points.
+ */
+public class NmeaParserTest implements NmeaParser.Listener {
+    private final static double LAT = 48.0 + 7.038 / 60.0;
+    private final static double LON = 11.0 + 31.0 / 60.0;
+
+    private ArrayList<double[]> fixes = new ArrayList<> ();        // time of day, alt, alt MSL
+    private ArrayList<SatSnapshot> snapshots = new ArrayList<> ();
+
+    @Override  // NmeaParser.Listener
+    public void onNmeaFix (NmeaParser p)
+    {
+        assertEquals (LAT, p.fixLat, 1.0E-9);
+        assertEquals (LON, p.fixLon, 1.0E-9);
+        fixes.add (new double[] { p.fixTime % 86400000, p.fixAlt, p.fixAltMsl });
+    }
+
+    @Override  // NmeaParser.Listener
+    public void onNmeaSatellites (SatSnapshot sats)
+    {
+        SatSnapshot copy = new SatSnapshot (64);
+        copy.copyFrom (sats);
+        snapshots.add (copy);
+    }
+
+    @Test
+    public void epochs ()
+            throws Exception
+    {
+        NmeaParser parser = new NmeaParser (this);
+        readThroughPipe (parser, "/nmea-epochs.log");
+
+        // epoch 3's RMC is corrupt
+        assertEquals (1, parser.badChecksums);
+        assertEquals (4, fixes.size ());
+        assertEquals (45319000, fixes.get (0)[0], 0.0);
+        assertEquals (45323000, fixes.get (3)[0], 0.0);
+
+        // RMC comes before GGA, each fix waits for its own epoch's GGA altitude
+        double[] msl = { 545.4, 545.9, 546.9, 547.4 };
+        for (int i = 0; i < 4; i ++) {
+            assertEquals ("fix " + i, msl[i] + 46.9, fixes.get (i)[1], 0.01);
+            assertEquals ("fix " + i, msl[i], fixes.get (i)[2], 0.01);
+        }
+    }
+
+    /**
+     * GGA before RMC: each fix is reported at its RMC with that epoch's altitude.
+     * An epoch missing its GGA is reported without altitude rather than with the previous one.
+     */
+    @Test
+    public void ggaFirst ()
+    {
+        NmeaParser parser = new NmeaParser (this);
+        feed (parser, "GNGGA,123519.00,4807.03800,N,01131.00000,E,1,08,0.9,545.4,M,46.9,M,,");
+        feed (parser, "GNRMC,123519.00,A,4807.03800,N,01131.00000,E,0.5,54.7,230320,,,A");
+        assertEquals (1, fixes.size ());
+        assertEquals (545.4, fixes.get (0)[2], 0.01);
+
+        // epoch without GGA is only known to be complete when the next one starts
+        feed (parser, "GNRMC,123520.00,A,4807.03800,N,01131.00000,E,0.5,54.7,230320,,,A");
+        assertEquals (1, fixes.size ());
+        feed (parser, "GNGGA,123521.00,4807.03800,N,01131.00000,E,1,08,0.9,546.4,M,46.9,M,,");
+        assertEquals (2, fixes.size ());
+        assertEquals (45320000, fixes.get (1)[0], 0.0);
+        assertTrue (Double.isNaN (fixes.get (1)[2]));
+
+        feed (parser, "GNRMC,123521.00,A,4807.03800,N,01131.00000,E,0.5,54.7,230320,,,A");
+        assertEquals (3, fixes.size ());
+        assertEquals (546.4, fixes.get (2)[2], 0.01);
+    }
+
+    /**
+     * RMC before GGA: the fix is held for its GGA, and if the epoch has none,
+     * reported without altitude when the next epoch's GGA arrives.
+     */
+    @Test
+    public void rmcFirst ()
+    {
+        NmeaParser parser = new NmeaParser (this);
+        feed (parser, "GNRMC,123519.00,A,4807.03800,N,01131.00000,E,0.5,54.7,230320,,,A");
+        feed (parser, "GNGGA,123519.00,4807.03800,N,01131.00000,E,1,08,0.9,545.4,M,46.9,M,,");
+        assertEquals (1, fixes.size ());
+        assertEquals (545.4, fixes.get (0)[2], 0.01);
+
+        feed (parser, "GNRMC,123520.00,A,4807.03800,N,01131.00000,E,0.5,54.7,230320,,,A");
+        assertEquals (1, fixes.size ());
+        feed (parser, "GNGGA,123521.00,4807.03800,N,01131.00000,E,1,08,0.9,546.4,M,46.9,M,,");
+        assertEquals (2, fixes.size ());
+        assertEquals (45320000, fixes.get (1)[0], 0.0);
+        assertTrue (Double.isNaN (fixes.get (1)[2]));
+    }
+
+    /**
+     * A receiver that sends no GGA gets its first fix one epoch late, the rest at once.
+     */
+    @Test
+    public void noGga ()
+    {
+        NmeaParser parser = new NmeaParser (this);
+        feed (parser, "GPRMC,123519.00,A,4807.03800,N,01131.00000,E,0.5,54.7,230320,,,A");
+        assertEquals (0, fixes.size ());
+        feed (parser, "GPRMC,123520.00,A,4807.03800,N,01131.00000,E,0.5,54.7,230320,,,A");
+        assertEquals (2, fixes.size ());
+        feed (parser, "GPRMC,123521.00,A,4807.03800,N,01131.00000,E,0.5,54.7,230320,,,A");
+        assertEquals (3, fixes.size ());
+        assertEquals (45321000, fixes.get (2)[0], 0.0);
+        assertTrue (Double.isNaN (fixes.get (2)[1]));
+    }
+
+    /**
+     * Each epoch is published when the next one starts.  Epoch 2 lost its last GPGSV and
+     * epoch 4 its first GLGSV, they are published short rather than mixed with other epochs.
+     */
+    @Test
+    public void droppedGsv ()
+            throws Exception
+    {
+        readThroughPipe (new NmeaParser (this), "/nmea-epochs.log");
+
+        assertEquals (4, snapshots.size ());
+        assertEquals (16, snapshots.get (0).count);
+        assertEquals (14, snapshots.get (1).count);
+        assertEquals (16, snapshots.get (2).count);
+        assertEquals (10, snapshots.get (3).count);
+
+        for (int e = 0; e < 4; e ++) {
+            SatSnapshot sats = snapshots.get (e);
+            int gps = 0;
+            int glo = 0;
+            for (int i = 0; i < sats.count; i ++) {
+                int constel = sats.constellation[i];
+                int svid    = sats.svid[i];
+                if (constel == SatSnapshot.CONSTELLATION_GPS) gps ++;
+                if (constel == SatSnapshot.CONSTELLATION_GLONASS) glo ++;
+                if ((constel == SatSnapshot.CONSTELLATION_GPS) && (svid == 5)) {
+                    assertEquals ("epoch " + (e + 1), 46 + e, sats.elevation[i], 0.0F);
+                    assertTrue (sats.used[i]);
+                }
+                if ((constel == SatSnapshot.CONSTELLATION_GPS) && (svid == 10)) assertFalse (sats.used[i]);
+                if ((constel == SatSnapshot.CONSTELLATION_GLONASS) && (svid == 1)) assertTrue (sats.used[i]);
+                if ((constel == SatSnapshot.CONSTELLATION_GLONASS) && (svid == 2)) assertFalse (sats.used[i]);
+            }
+            assertEquals ("epoch " + (e + 1), (e == 1) ? 8 : 10, gps);
+            assertEquals ("epoch " + (e + 1), (e == 3) ? 0 : 6, glo);
+        }
+    }
+
+    /**
+     * Feed one sentence, adding the $, checksum and line end.
+     */
+    private static void feed (NmeaParser parser, String body)
+    {
+        int sum = 0;
+        for (int i = 0; i < body.length (); i ++) sum ^= body.charAt (i);
+        String sentence = String.format ("$%s*%02X\r\n", body, sum);
+        for (int i = 0; i < sentence.length (); i ++) parser.feed ((byte) sentence.charAt (i));
+    }
+
+    /**
+     * Copy the resource into a pipe from another thread and feed what comes out to the parser.
+     */
+    private static void readThroughPipe (NmeaParser parser, final String resource)
+            throws Exception
+    {
+        final PipedOutputStream pos = new PipedOutputStream ();
+        PipedInputStream pis = new PipedInputStream (pos, 256);
+        final IOException[] writeError = new IOException[1];
+        Thread writer = new Thread () {
+            @Override
+            public void run ()
+            {
+                try (InputStream is = NmeaParserTest.class.getResourceAsStream (resource)) {
+                    byte[] buf = new byte[37];
+                    for (int n; (n = is.read (buf)) > 0;) pos.write (buf, 0, n);
+                    pos.close ();
+                } catch (IOException ioe) {
+                    writeError[0] = ioe;
+                }
+            }
+        };
+        writer.start ();
+        byte[] buf = new byte[64];
+        for (int n; (n = pis.read (buf)) > 0;) parser.feed (buf, 0, n);
+        writer.join ();
+        if (writeError[0] != null) throw writeError[0];
+    }
+}
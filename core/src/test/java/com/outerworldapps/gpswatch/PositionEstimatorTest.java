@@ -0,0 +1,209 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replay a drive, stop and walk with noisy 1Hz fixes and known true positions.
+ */
+public class PositionEstimatorTest {
+    private final static double M_PER_DEG = 6371000.0 * Math.PI / 180.0;
+    private final static long STOPBEG = 521000;     // stopped from here (after braking)
+    private final static long STOPEND = 565000;     // to here
+
+    private int nfixes;
+    private long[] times;
+    private double[] lats;
+    private double[] lons;
+    private float[] speeds;
+    private float[] bearings;
+    private float[] accuracies;
+    private double[] trueLats;
+    private double[] trueLons;
+
+    @Before
+    public void load ()
+            throws IOException
+    {
+        ArrayList<String[]> lines = new ArrayList<> ();
+        try (BufferedReader br = new BufferedReader (new InputStreamReader (
+                getClass ().getResourceAsStream ("/drive-stop-walk.csv"), StandardCharsets.US_ASCII))) {
+            for (String line; (line = br.readLine ()) != null;) {
+                if (! line.startsWith ("#")) lines.add (line.split (",", -1));
+            }
+        }
+        nfixes     = lines.size ();
+        times      = new long[nfixes];
+        lats       = new double[nfixes];
+        lons       = new double[nfixes];
+        speeds     = new float[nfixes];
+        bearings   = new float[nfixes];
+        accuracies = new float[nfixes];
+        trueLats   = new double[nfixes];
+        trueLons   = new double[nfixes];
+        for (int i = 0; i < nfixes; i ++) {
+            String[] f = lines.get (i);
+            times[i]      = Long.parseLong (f[0]);
+            lats[i]       = Double.parseDouble (f[1]);
+            lons[i]       = Double.parseDouble (f[2]);
+            speeds[i]     = Float.parseFloat (f[3]);
+            bearings[i]   = f[4].isEmpty () ? Float.NaN : Float.parseFloat (f[4]);
+            accuracies[i] = Float.parseFloat (f[5]);
+            trueLats[i]   = Double.parseDouble (f[6]);
+            trueLons[i]   = Double.parseDouble (f[7]);
+        }
+    }
+
+    /**
+     * With every fix the filtered position is closer to the truth than the raw fixes.
+     */
+    @Test
+    public void everyFix ()
+    {
+        PositionEstimator pe = new PositionEstimator (1.0, 0.5F, 60000);
+        double filtSq = 0.0;
+        double rawSq  = 0.0;
+        for (int i = 0; i < nfixes; i ++) {
+            update (pe, i);
+            assertTrue (pe.predict (times[i]));
+            filtSq += sq (error (pe.lat, pe.lon, i));
+            rawSq  += sq (error (lats[i], lons[i], i));
+        }
+        double filtRms = Math.sqrt (filtSq / nfixes);
+        double rawRms  = Math.sqrt (rawSq / nfixes);
+        assertTrue ("filtered rms " + filtRms + " raw rms " + rawRms, filtRms < rawRms);
+    }
+
+    /**
+     * Fixes every 20s as in ambient mode, predictions every second in between
+     * must be far better than holding the last fix.
+     */
+    @Test
+    public void sparseFixes ()
+    {
+        PositionEstimator pe = new PositionEstimator (1.0, 0.5F, 60000);
+        double predSq = 0.0;
+        double holdSq = 0.0;
+        double worstStraight = 0.0;
+        int n = 0;
+        int last = -1;
+        for (int i = 0; i < nfixes; i ++) {
+            if (i % 20 == 0) {
+                update (pe, i);
+                last = i;
+                continue;
+            }
+            assertTrue (pe.predict (times[i]));
+            double err = error (pe.lat, pe.lon, i);
+            predSq += sq (err);
+            holdSq += sq (error (lats[last], lons[last], i));
+            n ++;
+            // straight at steady speed on the first leg, after settling
+            if ((times[i] > 60000) && (times[i] < 300000)) worstStraight = Math.max (worstStraight, err);
+        }
+        double predRms = Math.sqrt (predSq / n);
+        double holdRms = Math.sqrt (holdSq / n);
+        assertTrue ("predicted rms " + predRms + " hold rms " + holdRms, predRms < holdRms / 4.0);
+        // 2 degrees bearing noise at 13m/s is 0.45m/s cross-track, 9m after 19s
+        assertTrue ("worst straight " + worstStraight, worstStraight < 25.0);
+    }
+
+    /**
+     * Stopped, the speed settles to nothing and the track follows the compass.
+     */
+    @Test
+    public void stoppedUsesCompass ()
+    {
+        PositionEstimator pe = new PositionEstimator (1.0, 0.5F, 60000);
+        pe.setHeading (200.0F);
+        for (int i = 0; i < nfixes; i ++) {
+            update (pe, i);
+            assertTrue (pe.predict (times[i] + 500));
+            if ((times[i] > STOPBEG + 10000) && (times[i] < STOPEND)) {
+                assertTrue ("speed " + pe.speed + " at " + times[i], pe.speed < 0.5F);
+                assertEquals (200.0F, pe.track, 0.0F);
+            }
+            if ((times[i] > 320000) && (times[i] < 480000)) {
+                assertTrue ("track " + pe.track + " at " + times[i], Math.abs (pe.track - 135.0F) < 5.0F);
+            }
+        }
+    }
+
+    /**
+     * Predictions stop at maxPredict past the last fix.
+     */
+    @Test
+    public void predictionLimit ()
+    {
+        PositionEstimator pe = new PositionEstimator (1.0, 0.5F, 60000);
+        for (int i = 0; i < 100; i ++) update (pe, i);
+        pe.predict (times[99] + 60000);
+        double lat60 = pe.lat;
+        double lon60 = pe.lon;
+        pe.predict (times[99] + 600000);
+        assertEquals (lat60, pe.lat, 0.0);
+        assertEquals (lon60, pe.lon, 0.0);
+    }
+
+    @Test
+    public void noAllocation ()
+    {
+        PositionEstimator pe = new PositionEstimator (1.0, 0.5F, 60000);
+        for (int i = 0; i < nfixes; i ++) update (pe, i);
+        pe.reset ();
+        long before = Allocations.allocated ();
+        for (int i = 0; i < nfixes; i ++) {
+            update (pe, i);
+            pe.predict (times[i] + 500);
+        }
+        long bytes = Allocations.allocated () - before;
+        assertTrue (bytes + " bytes allocated", bytes < 1000);
+    }
+
+    private void update (PositionEstimator pe, int i)
+    {
+        pe.update (times[i], lats[i], lons[i], accuracies[i], speeds[i], bearings[i]);
+    }
+
+    // metres from true position of fix i
+    private double error (double lat, double lon, int i)
+    {
+        double dn = (lat - trueLats[i]) * M_PER_DEG;
+        double de = (lon - trueLons[i]) * M_PER_DEG * Math.cos (Math.toRadians (trueLats[i]));
+        return Math.hypot (de, dn);
+    }
+
+    private static double sq (double x)
+    {
+        return x * x;
+    }
+}
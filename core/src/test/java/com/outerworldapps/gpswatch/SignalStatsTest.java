@@ -0,0 +1,154 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SignalStatsTest {
+
+    private final static int GPS     = SatSnapshot.CONSTELLATION_GPS;
+    private final static int GLONASS = SatSnapshot.CONSTELLATION_GLONASS;
+    private final static int GALILEO = SatSnapshot.CONSTELLATION_GALILEO;
+
+    /**
+     * Counts cover only the last nslices slices, older slices drop out as time moves on.
+     */
+    @Test
+    public void windowedCounts ()
+    {
+        SignalStats ss = new SignalStats (1000, 5);
+        SatSnapshot sats = new SatSnapshot (8);
+        sats.add (GPS,     5, 31.0F, 45.0F,  90.0F, true,  1575.42E6F);
+        sats.add (GLONASS, 7, 20.0F, 20.0F, 200.0F, false, 1602.0E6F);
+        sats.add (GALILEO, 9, 40.0F, 60.0F, 300.0F, true,  1176.45E6F);
+        sats.add (GPS,    12,  0.0F, 10.0F,  10.0F, false); // not tracked
+
+        // two updates per slice for 5 slices fills the window
+        for (long now = 0; now < 5000; now += 500) ss.update (sats, now);
+        assertEquals (10, ss.getUpdateCount ());
+        assertEquals (10, ss.getConstellationCount (GPS));
+        assertEquals (10, ss.getConstellationCount (GLONASS));
+        assertEquals (10, ss.getConstellationCount (GALILEO));
+        assertEquals (1.0F, ss.getUsedRatio (GPS), 0.0F);
+        assertEquals (0.0F, ss.getUsedRatio (GLONASS), 0.0F);
+        assertTrue (Float.isNaN (ss.getUsedRatio (SatSnapshot.CONSTELLATION_BEIDOU)));
+        assertEquals (10, ss.getConstellationBin (GPS, 10));
+        assertEquals (10, ss.getConstellationBin (GLONASS, 6));
+        assertEquals (20, ss.getBandCount (SignalStats.BAND_L1));
+        assertEquals (10, ss.getBandCount (SignalStats.BAND_L5));
+        assertEquals (10, ss.getBandBin (SignalStats.BAND_L5, 13));
+        assertEquals (33.0F, ss.getConstellationPercentile (GPS, 50.0), 0.0F);
+
+        // GPS satellite gets weaker, the first slice drops out
+        sats.cn0[0] = 16.0F;
+        ss.update (sats, 5000);
+        assertEquals (9, ss.getConstellationCount (GPS));
+        assertEquals (8, ss.getConstellationBin (GPS, 10));
+        assertEquals (1, ss.getConstellationBin (GPS, 5));
+        assertEquals (33.0F, ss.getConstellationPercentile (GPS, 50.0), 0.0F);
+        assertEquals (18.0F, ss.getConstellationPercentile (GPS, 10.0), 0.0F);
+
+        // skipping past the whole window leaves only the latest update
+        ss.update (sats, 60000);
+        assertEquals (1, ss.getConstellationCount (GPS));
+        assertEquals (1, ss.getConstellationBin (GPS, 5));
+        assertEquals (2, ss.getBandCount (SignalStats.BAND_L1));
+        assertEquals (12, ss.getUpdateCount ());
+
+        sats.clear ();
+        ss.update (sats, 66000);
+        assertEquals (0, ss.getConstellationCount (GPS));
+        assertTrue (Float.isNaN (ss.getConstellationPercentile (GPS, 50.0)));
+    }
+
+    /**
+     * Time to first fix goes into the histogram and survives the window.
+     */
+    @Test
+    public void ttffHistogram ()
+    {
+        SignalStats ss = new SignalStats (1000, 5);
+        assertEquals (-1, ss.getLastTtffMs ());
+        ss.recordTtff (1500);
+        ss.recordTtff (4000);
+        ss.recordTtff (8000);
+        ss.recordTtff (400000);
+        ss.update (new SatSnapshot (1), 600000);
+        assertEquals (400000, ss.getLastTtffMs ());
+        assertEquals (4, ss.ttffMs.getCount ());
+        assertEquals (1500, ss.ttffMs.getMin ());
+        assertEquals (400000, ss.ttffMs.getMax ());
+        assertEquals (5000, ss.ttffMs.getPercentile (50.0));
+        assertEquals (10000, ss.ttffMs.getPercentile (75.0));
+        assertEquals (400000, ss.ttffMs.getPercentile (100.0));
+
+        StringBuilder sb = new StringBuilder ();
+        ss.ttffMs.appendBuckets (sb);
+        assertEquals (" <=1000:0 <=2000:1 <=5000:1 <=10000:1 <=20000:0 <=30000:0" +
+                " <=60000:0 <=120000:0 <=300000:0 >300000:1", sb.toString ());
+
+        ss.reset ();
+        assertEquals (-1, ss.getLastTtffMs ());
+        assertEquals (0, ss.ttffMs.getCount ());
+    }
+
+    /**
+     * A copy is independent of the original and keeps windowing the same way.
+     */
+    @Test
+    public void copyFrom ()
+    {
+        SignalStats ss = new SignalStats (1000, 5);
+        SatSnapshot sats = new SatSnapshot (8);
+        sats.add (GPS, 5, 31.0F, 45.0F, 90.0F, true);
+        for (long now = 0; now < 5000; now += 1000) ss.update (sats, now);
+        ss.recordTtff (3000);
+
+        SignalStats copy = new SignalStats (1000, 5);
+        copy.copyFrom (ss);
+        ss.update (sats, 5000);
+        ss.recordTtff (7000);
+        assertEquals (5, copy.getConstellationCount (GPS));
+        assertEquals (5, copy.getUpdateCount ());
+        assertEquals (3000, copy.getLastTtffMs ());
+        assertEquals (1, copy.ttffMs.getCount ());
+
+        copy.update (sats, 5000);
+        assertEquals (ss.getConstellationCount (GPS), copy.getConstellationCount (GPS));
+        assertEquals (ss.getConstellationBin (GPS, 10), copy.getConstellationBin (GPS, 10));
+    }
+
+    @Test
+    public void bands ()
+    {
+        assertEquals (SignalStats.BAND_UNKNOWN, SignalStats.getBand (0.0F));
+        assertEquals (SignalStats.BAND_L1, SignalStats.getBand (1575.42E6F));
+        assertEquals (SignalStats.BAND_L1, SignalStats.getBand (1602.0E6F));
+        assertEquals (SignalStats.BAND_L2, SignalStats.getBand (1227.60E6F));
+        assertEquals (SignalStats.BAND_L5, SignalStats.getBand (1176.45E6F));
+        assertEquals (SignalStats.BAND_L5, SignalStats.getBand (1207.14E6F));
+        assertEquals (SignalStats.BAND_L6, SignalStats.getBand (1278.75E6F));
+        assertEquals (SignalStats.BAND_OTHER, SignalStats.getBand (2492.03E6F));
+    }
+}
@@ -0,0 +1,69 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SkyTrackHistoryTest {
+
+    /**
+     * Status updates at 1/sec only change the trails once a minute,
+     * and when a satellite is evicted.
+     */
+    @Test
+    public void reportsChanges ()
+    {
+        SkyTrackHistory sth = new SkyTrackHistory (64, 60, 60000, 900000);
+        SatSnapshot sats = new SatSnapshot (8);
+        sats.add (1, 5, 30.0F, 45.0F, 90.0F, true);
+        sats.add (3, 7, 25.0F, 20.0F, 200.0F, false);
+
+        int changes = 0;
+        for (long now = 0; now < 600000; now += 1000) {
+            if (sth.update (sats, now)) changes ++;
+        }
+        assertEquals (10, changes);
+        assertEquals (10, trailCount (sth, 5));
+
+        // satellite 7 drops out, nothing changes until it is evicted
+        sats.clear ();
+        sats.add (1, 5, 30.0F, 45.0F, 90.0F, true);
+        long now = 600000;
+        assertTrue (sth.update (sats, now));
+        for (now += 1000; now <= 1499000; now += 1000) {
+            assertEquals ("at " + now, now % 60000 == 0, sth.update (sats, now));
+        }
+        assertEquals (10, trailCount (sth, 7));
+        assertTrue (sth.update (sats, 1500500));
+        assertEquals (-1, trailCount (sth, 7));
+    }
+
+    private static int trailCount (SkyTrackHistory sth, int svid)
+    {
+        for (int slot = 0; slot < sth.getSlotCount (); slot ++) {
+            if (sth.isUsed (slot) && (sth.getSvid (slot) == svid)) return sth.getTrailCount (slot);
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,137 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TileLruTest {
+
+    /**
+     * Load keys 1..n into a fresh cache, one slot each in slot order.
+     */
+    private static TileLru filled (int n)
+    {
+        TileLru lru = new TileLru (n);
+        for (int k = 1; k <= n; k ++) {
+            int slot = lru.reserve (k);
+            assertEquals (k - 1, slot);
+            lru.ready (slot);
+        }
+        return lru;
+    }
+
+    /**
+     * Evicted slots come in least recently drawn order, so their images are reused in that order.
+     */
+    @Test
+    public void evictsLeastRecentlyUsed ()
+    {
+        TileLru lru = filled (4);
+
+        // frame draws 3 then 1, then a couple frames draw nothing
+        lru.newFrame ();
+        assertEquals (2, lru.get (3));
+        assertEquals (0, lru.get (1));
+        lru.newFrame ();
+        lru.newFrame ();
+
+        // 2 and 4 were only loaded, oldest first, then 3 and 1 in the order drawn
+        int[] expect = { 1, 3, 2, 0 };
+        for (int i = 0; i < expect.length; i ++) {
+            int slot = lru.reserve (10 + i);
+            assertEquals ("reserve " + i, expect[i], slot);
+            lru.ready (slot);
+        }
+        for (int k = 1; k <= 4; k ++) assertFalse (lru.contains (k));
+        for (int k = 10; k < 14; k ++) assertTrue (lru.contains (k));
+    }
+
+    /**
+     * Tiles drawn in this or the previous frame, and tiles still loading, are never evicted.
+     */
+    @Test
+    public void protectsRecentAndLoading ()
+    {
+        TileLru lru = filled (4);
+
+        lru.newFrame ();
+        lru.get (1);
+        lru.get (2);
+        lru.newFrame ();
+        lru.get (3);
+
+        // only 4 is old enough, then everything is drawn recently or loading
+        assertEquals (3, lru.reserve (5));
+        assertEquals (-1, lru.reserve (6));
+        assertEquals (-1, lru.get (5));
+        assertTrue (lru.contains (5));
+
+        // a frame later 1 and 2 are fair game, 3 is still protected
+        lru.newFrame ();
+        assertEquals (0, lru.reserve (6));
+        assertEquals (1, lru.reserve (7));
+        assertEquals (-1, lru.reserve (8));
+        assertTrue (lru.contains (3));
+    }
+
+    /**
+     * Freed slots are reused before evicting anything.
+     */
+    @Test
+    public void reusesAbandonedSlot ()
+    {
+        TileLru lru = filled (4);
+        lru.newFrame ();
+        lru.newFrame ();
+        lru.newFrame ();
+
+        int slot = lru.reserve (5);
+        assertEquals (0, slot);
+        lru.abandon (slot);
+        assertFalse (lru.contains (5));
+        assertEquals (0, lru.reserve (6));
+        assertEquals (1, lru.reserve (7));
+
+        lru.clear ();
+        assertFalse (lru.contains (6));
+        assertEquals (0, lru.reserve (8));
+        assertEquals (1, lru.reserve (9));
+    }
+
+    @Test
+    public void countsHitsAndMisses ()
+    {
+        TileLru lru = filled (2);
+        int slot = lru.reserve (3);
+        lru.newFrame ();
+        assertEquals (0, lru.get (1));
+        assertEquals (-1, lru.get (3));
+        assertEquals (-1, lru.get (4));
+        assertEquals (1, lru.get (2));
+        assertEquals (2, lru.getHits ());
+        assertEquals (2, lru.getMisses ());
+        assertEquals (-1, slot);
+    }
+}
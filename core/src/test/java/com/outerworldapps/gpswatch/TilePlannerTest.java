@@ -0,0 +1,157 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check planned tiles against every tile overlapping the view.
+ */
+public class TilePlannerTest {
+    private final static int TILESIZE = 256;
+
+    /**
+     * Longitude of a point in tile units.
+     */
+    private static double tileLon (double x, int zoom)
+    {
+        return x / (1 << zoom) * 360.0 - 180.0;
+    }
+
+    /**
+     * Latitude of a point in tile units.
+     */
+    private static double tileLat (double y, int zoom)
+    {
+        return Math.toDegrees (Math.atan (Math.sinh (Math.PI * (1.0 - 2.0 * y / (1 << zoom)))));
+    }
+
+    /**
+     * Plan a stationary view centred at the given point in tile units and check the visible
+     * tiles are exactly the ones overlapping the view, nearest the centre first.
+     * @return number of tiles planned
+     */
+    private static int checkView (double x, double y, int zoom, int width, int height)
+    {
+        TilePlanner tp = new TilePlanner (64);
+        tp.plan (tileLat (y, zoom), tileLon (x, zoom), zoom, TILESIZE, width, height, Float.NaN, 0.0F, 60.0F);
+        assertEquals (tp.count, tp.visibleCount);
+
+        int ntiles = 1 << zoom;
+        double cx = x * TILESIZE;
+        double cy = y * TILESIZE;
+        HashSet<Long> expect = new HashSet<> ();
+        for (int ty = (int) Math.floor ((cy - height / 2.0) / TILESIZE); ty <= (int) Math.floor ((cy + height / 2.0) / TILESIZE); ty ++) {
+            if ((ty < 0) || (ty >= ntiles)) continue;
+            for (int tx = (int) Math.floor ((cx - width / 2.0) / TILESIZE); tx <= (int) Math.floor ((cx + width / 2.0) / TILESIZE); tx ++) {
+                expect.add (TilePack.key (zoom, (tx + ntiles) % ntiles, ty));
+            }
+        }
+
+        HashSet<Long> got = new HashSet<> ();
+        int tcx = (int) Math.floor (x);
+        int tcy = (int) Math.floor (y);
+        int lastRing = 0;
+        for (int i = 0; i < tp.count; i ++) {
+            long key = tp.getWanted (i);
+            assertEquals (zoom, TilePack.keyZoom (key));
+            assertTrue ("duplicate " + i, got.add (key));
+            int dx = Math.abs (TilePack.keyX (key) - tcx);
+            int ring = Math.max (Math.min (dx, ntiles - dx), Math.abs (TilePack.keyY (key) - tcy));
+            assertTrue ("ring " + ring + " after " + lastRing, ring >= lastRing);
+            lastRing = ring;
+        }
+        assertEquals (expect, got);
+        return tp.count;
+    }
+
+    @Test
+    public void centredInTile ()
+    {
+        assertEquals (9, checkView (300.5, 400.5, 10, 400, 400));
+        assertEquals (1, checkView (300.5, 400.5, 10, 200, 200));
+        assertEquals (15, checkView (300.5, 400.5, 10, 1000, 400));
+    }
+
+    /**
+     * Panned up against tile edges and corners the view overlaps neighbours on one side only.
+     */
+    @Test
+    public void panEdges ()
+    {
+        assertEquals (2, checkView (300.01, 400.5, 10, 200, 200));
+        assertEquals (2, checkView (300.99, 400.5, 10, 200, 200));
+        assertEquals (2, checkView (300.5, 400.01, 10, 200, 200));
+        assertEquals (4, checkView (300.99, 400.99, 10, 200, 200));
+        assertEquals (4, checkView (300.01, 400.01, 10, 200, 200));
+        assertEquals (6, checkView (300.01, 400.5, 10, 200, 400));
+    }
+
+    /**
+     * Tiles wrap around the antimeridian and stop at the top and bottom of the map.
+     */
+    @Test
+    public void worldEdges ()
+    {
+        assertEquals (6, checkView (0.1, 100.5, 8, 400, 400));
+        assertEquals (6, checkView (255.9, 100.5, 8, 400, 400));
+        assertEquals (3, checkView (100.5, 0.2, 8, 400, 400));
+        assertEquals (3, checkView (100.5, 255.8, 8, 400, 400));
+        assertEquals (4, checkView (1.0, 1.0, 1, 400, 400));
+        assertEquals (1, checkView (0.5, 0.5, 0, 400, 400));
+    }
+
+    /**
+     * Look-ahead tiles come after the visible ones, in the direction of travel,
+     * and are cut off when the plan is full.
+     */
+    @Test
+    public void lookAhead ()
+    {
+        int zoom = 16;
+        double lat = tileLat (20000.5, zoom);
+        double lon = tileLon (30000.5, zoom);
+        TilePlanner tp = new TilePlanner (64);
+        tp.plan (lat, lon, zoom, TILESIZE, 400, 400, 90.0F, 20.0F, 60.0F);
+        assertEquals (9, tp.visibleCount);
+        assertTrue (tp.count > tp.visibleCount);
+        for (int i = tp.visibleCount; i < tp.count; i ++) {
+            long key = tp.getWanted (i);
+            assertTrue (TilePack.keyX (key) > 30001);
+            assertTrue (Math.abs (TilePack.keyY (key) - 20000) <= 1);
+        }
+
+        TilePlanner small = new TilePlanner (11);
+        small.plan (lat, lon, zoom, TILESIZE, 400, 400, 90.0F, 20.0F, 60.0F);
+        assertEquals (9, small.visibleCount);
+        assertEquals (11, small.count);
+        for (int i = 0; i < small.count; i ++) assertEquals (tp.getWanted (i), small.getWanted (i));
+
+        // stationary, nothing to look ahead for
+        tp.plan (lat, lon, zoom, TILESIZE, 400, 400, 90.0F, 0.0F, 60.0F);
+        assertEquals (9, tp.count);
+    }
+}
@@ -0,0 +1,210 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrackRecorderTest {
+    private final static long T0 = 1600000000000L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder ();
+
+    /**
+     * Fixes come back as written, within the storage resolution, with no drift along the chain.
+     */
+    @Test
+    public void roundTrip ()
+            throws IOException
+    {
+        File file = tmp.newFile ("track.bin");
+        try (TrackRecorder tr = new TrackRecorder (file, 600)) {
+            for (int i = 0; i < 500; i ++) append (tr, i);
+            assertEquals (500, tr.size ());
+            TrackRecorder.Fix fix = new TrackRecorder.Fix ();
+            for (int i = 0; i < 500; i ++) {
+                tr.get (i, fix);
+                check (i, fix);
+            }
+        }
+    }
+
+    /**
+     * The oldest block is dropped when full, at least capacity records are kept.
+     */
+    @Test
+    public void wraparound ()
+            throws IOException
+    {
+        File file = tmp.newFile ("track.bin");
+        try (TrackRecorder tr = new TrackRecorder (file, 120)) {
+            for (int i = 0; i < 1000; i ++) append (tr, i);
+            int n = tr.size ();
+            assertTrue (n >= 120);
+            assertTrue (n <= 120 + TrackRecorder.BLOCKRECS);
+            TrackRecorder.Fix fix = new TrackRecorder.Fix ();
+            for (int i = 0; i < n; i ++) {
+                tr.get (i, fix);
+                check (1000 - n + i, fix);
+            }
+        }
+    }
+
+    /**
+     * Gaps too long for a delta, time going backwards and big jumps start new blocks
+     * instead of wiping anything.
+     */
+    @Test
+    public void gapsAndJumps ()
+            throws IOException
+    {
+        File file = tmp.newFile ("track.bin");
+        long[] times = { T0, T0 + 1000, T0 + 30L * 86400000, T0 + 30L * 86400000 + 1000, T0 + 5000, T0 + 6000 };
+        double[] lats = { 42.5, 42.5001, 42.5002, 52.0, 52.0001, -33.9 };
+        try (TrackRecorder tr = new TrackRecorder (file, 600)) {
+            for (int i = 0; i < times.length; i ++) {
+                tr.append (times[i], lats[i], -71.0, 10.0, 1.0F, 90.0F, 5.0F);
+            }
+            assertEquals (times.length, tr.size ());
+            TrackRecorder.Fix fix = new TrackRecorder.Fix ();
+            for (int i = 0; i < times.length; i ++) {
+                tr.get (i, fix);
+                assertEquals (times[i], fix.time);
+                assertEquals (lats[i], fix.lat, 1.0E-6);
+                assertEquals (-71.0, fix.lon, 1.0E-6);
+            }
+        }
+    }
+
+    /**
+     * Reopening without a close, as after the process is killed, finds every record
+     * and appending carries on from the last one.
+     */
+    @Test
+    public void reopenAfterKill ()
+            throws IOException
+    {
+        File file = tmp.newFile ("track.bin");
+        TrackRecorder killed = new TrackRecorder (file, 600);
+        for (int i = 0; i < 65; i ++) append (killed, i);
+
+        try (TrackRecorder tr = new TrackRecorder (file, 600)) {
+            assertEquals (65, tr.size ());
+            for (int i = 65; i < 100; i ++) append (tr, i);
+            TrackRecorder.Fix fix = new TrackRecorder.Fix ();
+            for (int i = 0; i < 100; i ++) {
+                tr.get (i, fix);
+                check (i, fix);
+            }
+        }
+        killed.close ();
+    }
+
+    /**
+     * A record whose final write never happened is dropped, the ones before it survive.
+     */
+    @Test
+    public void tornRecord ()
+            throws IOException
+    {
+        File file = tmp.newFile ("track.bin");
+        try (TrackRecorder tr = new TrackRecorder (file, 600)) {
+            for (int i = 0; i < 6; i ++) append (tr, i);
+        }
+
+        // time delta of record 5 in block 0 is written last, put it back to unwritten
+        try (RandomAccessFile raf = new RandomAccessFile (file, "rw")) {
+            raf.seek (64 + 24 + 5 * 16);
+            raf.writeInt (-1);
+        }
+
+        try (TrackRecorder tr = new TrackRecorder (file, 600)) {
+            assertEquals (5, tr.size ());
+            append (tr, 5);
+            TrackRecorder.Fix fix = new TrackRecorder.Fix ();
+            for (int i = 0; i < 6; i ++) {
+                tr.get (i, fix);
+                check (i, fix);
+            }
+        }
+    }
+
+    /**
+     * A different capacity reformats the file.
+     */
+    @Test
+    public void reformat ()
+            throws IOException
+    {
+        File file = tmp.newFile ("track.bin");
+        try (TrackRecorder tr = new TrackRecorder (file, 600)) {
+            for (int i = 0; i < 10; i ++) append (tr, i);
+        }
+        try (TrackRecorder tr = new TrackRecorder (file, 1200)) {
+            assertEquals (0, tr.size ());
+        }
+    }
+
+    // fix i of a made-up track: 1 fix/sec, wandering, some values missing
+    private static void append (TrackRecorder tr, int i)
+    {
+        tr.append (T0 + i * 1000L + (i % 7), lat (i), lon (i),
+                (i % 10 == 3) ? Double.NaN : 100.0 + i % 50,
+                (i % 10 == 4) ? Float.NaN : 0.25F * (i % 40),
+                (i % 10 == 5) ? Float.NaN : (i * 3.7F) % 360.0F,
+                (i % 10 == 6) ? Float.NaN : 3.0F + (i % 20) / 10.0F);
+    }
+
+    private static void check (int i, TrackRecorder.Fix fix)
+    {
+        String msg = "fix " + i;
+        assertEquals (msg, T0 + i * 1000L + (i % 7), fix.time);
+        assertEquals (msg, lat (i), fix.lat, 1.0E-6);
+        assertEquals (msg, lon (i), fix.lon, 1.0E-6);
+        if (i % 10 == 3) assertTrue (msg, Float.isNaN (fix.alt));
+        else assertEquals (msg, 100.0 + i % 50, fix.alt, 0.5);
+        if (i % 10 == 4) assertTrue (msg, Float.isNaN (fix.speed));
+        else assertEquals (msg, 0.25F * (i % 40), fix.speed, 0.005F);
+        if (i % 10 == 5) assertTrue (msg, Float.isNaN (fix.bearing));
+        else assertEquals (msg, (i * 3.7F) % 360.0F, fix.bearing, 0.005F);
+        if (i % 10 == 6) assertTrue (msg, Float.isNaN (fix.accuracy));
+        else assertEquals (msg, 3.0F + (i % 20) / 10.0F, fix.accuracy, 0.05F);
+    }
+
+    private static double lat (int i)
+    {
+        return 42.5 + 0.001 * Math.sin (i / 50.0) + i * 3.3E-7;
+    }
+
+    private static double lon (int i)
+    {
+        return -71.25 + 0.002 * Math.cos (i / 70.0);
+    }
+}
@@ -0,0 +1,211 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrackSimplifierTest {
+    private final static double M_PER_DEG = 6371000.0 * Math.PI / 180.0;
+    private final static double SLACK = 0.01;   // metres, flat-earth rounding between passes
+    private final static int NFIXES = 12 * 3600;
+
+    /**
+     * Short walk that doesn't fill the arrays: every fix is within the tolerance
+     * of the simplified track.
+     */
+    @Test
+    public void errorBound ()
+    {
+        double[] lats = new double[3600];
+        double[] lons = new double[3600];
+        walk (lats, lons, 1);
+        TrackSimplifier ts = new TrackSimplifier (2000, 5.0, 64);
+        for (int i = 0; i < lats.length; i ++) ts.add (lats[i], lons[i]);
+
+        assertEquals (0, ts.getCompressions ());
+        assertEquals (5.0, ts.getTolerance (), 0.0);
+        assertTrue (ts.getCount () + " kept", ts.getCount () < lats.length / 4);
+        double err = maxError (ts, lats, lons);
+        assertTrue ("max error " + err, err <= 5.0 + SLACK);
+    }
+
+    /**
+     * 12 hours at 1 Hz into a small array: the arrays never overflow, the tolerance grows
+     * and every fix is within twice the final tolerance of the simplified track.
+     */
+    @Test
+    public void compressedErrorBound ()
+    {
+        double[] lats = new double[NFIXES];
+        double[] lons = new double[NFIXES];
+        walk (lats, lons, 2);
+        TrackSimplifier ts = new TrackSimplifier (500, 5.0, 64);
+        for (int i = 0; i < NFIXES; i ++) {
+            ts.add (lats[i], lons[i]);
+            assertTrue (ts.getCount () <= 500);
+        }
+
+        int n = ts.getCompressions ();
+        assertTrue (n + " compressions", n > 0);
+        assertEquals (5.0 * (1 << n), ts.getTolerance (), 1.0E-9);
+        assertEquals (lats[0], ts.getLat (0), 0.0);
+        assertEquals (lats[NFIXES-1], ts.getLastLat (), 0.0);
+        double err = maxError (ts, lats, lons);
+        assertTrue ("max error " + err + " tolerance " + ts.getTolerance (),
+                err <= 2.0 * ts.getTolerance () + SLACK);
+    }
+
+    /**
+     * Replay the noisy fixes of a drive, stop and walk with the breadcrumb settings:
+     * every fix is within the tolerance, and with 3m of noise against the 5m tolerance
+     * about a third of the fixes are kept.
+     */
+    @Test
+    public void driveStopWalk ()
+            throws IOException
+    {
+        ArrayList<String[]> lines = new ArrayList<> ();
+        try (BufferedReader br = new BufferedReader (new InputStreamReader (
+                getClass ().getResourceAsStream ("/drive-stop-walk.csv"), StandardCharsets.US_ASCII))) {
+            for (String line; (line = br.readLine ()) != null;) {
+                if (! line.startsWith ("#")) lines.add (line.split (",", -1));
+            }
+        }
+        int nfixes = lines.size ();
+        double[] lats = new double[nfixes];
+        double[] lons = new double[nfixes];
+        for (int i = 0; i < nfixes; i ++) {
+            lats[i] = Double.parseDouble (lines.get (i)[1]);
+            lons[i] = Double.parseDouble (lines.get (i)[2]);
+        }
+
+        TrackSimplifier ts = new TrackSimplifier (MapState.BREADCRUMBS, 5.0, 64);
+        for (int i = 0; i < nfixes; i ++) ts.add (lats[i], lons[i]);
+
+        assertEquals (0, ts.getCompressions ());
+        assertEquals (lats[0], ts.getLat (0), 0.0);
+        assertEquals (lats[nfixes-1], ts.getLastLat (), 0.0);
+        assertTrue (ts.getCount () + " kept", ts.getCount () < nfixes / 2);
+        double err = maxError (ts, lats, lons);
+        assertTrue ("max error " + err, err <= 5.0 + SLACK);
+    }
+
+    /**
+     * A straight line only keeps a point each time the window fills.
+     */
+    @Test
+    public void straightLine ()
+    {
+        TrackSimplifier ts = new TrackSimplifier (500, 5.0, 64);
+        for (int i = 0; i < 1000; i ++) ts.add (42.5 + i * 1.5 / M_PER_DEG, -71.0);
+        assertTrue (ts.getCount () + " kept", ts.getCount () <= 1000 / 64 + 2);
+        assertEquals (0, ts.getCompressions ());
+    }
+
+    /**
+     * A day's fixes, including the recompressions, go through quickly and without allocating.
+     */
+    @Test
+    public void throughput ()
+    {
+        double[] lats = new double[NFIXES];
+        double[] lons = new double[NFIXES];
+        walk (lats, lons, 3);
+
+        // warm up the JIT
+        TrackSimplifier ts = new TrackSimplifier (500, 5.0, 64);
+        for (int i = 0; i < NFIXES; i ++) ts.add (lats[i], lons[i]);
+
+        ts.reset ();
+        long before = Allocations.allocated ();
+        long started = System.nanoTime ();
+        for (int i = 0; i < NFIXES; i ++) ts.add (lats[i], lons[i]);
+        long ms = (System.nanoTime () - started) / 1000000;
+        long bytes = Allocations.allocated () - before;
+
+        assertTrue (ts.getCompressions () > 0);
+        assertTrue (NFIXES + " fixes took " + ms + " ms", ms < 1000);
+        assertTrue (bytes + " bytes allocated", bytes < 1000);
+    }
+
+    /**
+     * Wandering 1 Hz walk at 1.5 m/s with some GPS noise, same as the benchmark.
+     */
+    private static void walk (double[] lats, double[] lons, long seed)
+    {
+        Random r = new Random (seed);
+        double lat = 42.5;
+        double lon = -71.0;
+        double hdg = 0.0;
+        for (int i = 0; i < lats.length; i ++) {
+            hdg += r.nextGaussian () * 5.0;
+            lat += 1.5 * Math.cos (Math.toRadians (hdg)) / 111195.0 + r.nextGaussian () * 1.0E-5;
+            lon += 1.5 * Math.sin (Math.toRadians (hdg)) / (111195.0 * 0.737) + r.nextGaussian () * 1.3E-5;
+            lats[i] = lat;
+            lons[i] = lon;
+        }
+    }
+
+    /**
+     * Brute force: largest distance of any fix from the simplified track,
+     * which is the kept points followed by the latest fix, metres.
+     */
+    private static double maxError (TrackSimplifier ts, double[] lats, double[] lons)
+    {
+        int n = ts.getCount ();
+        double[] tlats = new double[n+1];
+        double[] tlons = new double[n+1];
+        for (int i = 0; i < n; i ++) {
+            tlats[i] = ts.getLat (i);
+            tlons[i] = ts.getLon (i);
+        }
+        tlats[n] = ts.getLastLat ();
+        tlons[n] = ts.getLastLon ();
+
+        double worst = 0.0;
+        for (int i = 0; i < lats.length; i ++) {
+            double best = Double.MAX_VALUE;
+            for (int j = 0; j < n; j ++) {
+                double mPerDegLon = M_PER_DEG * Math.cos (Math.toRadians (tlats[j]));
+                double px = (tlons[j+1] - tlons[j]) * mPerDegLon;
+                double py = (tlats[j+1] - tlats[j]) * M_PER_DEG;
+                double qx = (lons[i] - tlons[j]) * mPerDegLon;
+                double qy = (lats[i] - tlats[j]) * M_PER_DEG;
+                double len2 = px * px + py * py;
+                double t = (len2 > 0.0) ? (qx * px + qy * py) / len2 : 0.0;
+                t = Math.max (0.0, Math.min (1.0, t));
+                best = Math.min (best, Math.hypot (qx - t * px, qy - t * py));
+            }
+            worst = Math.max (worst, best);
+        }
+        return worst;
+    }
+}
@@ -0,0 +1,160 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TripComputerTest {
+    private final static double M_PER_DEG = 6371000.0 * Math.PI / 180.0;
+    private final static double LAT0 = 42.5;
+    private final static long T0 = 1600000000000L;
+
+    /**
+     * Walking north at 1.4 m/s for an hour, fixes at each of the GPS power policy's intervals
+     * (moving, stationary, ambient, screen off) all give about the same distance and moving time.
+     */
+    @Test
+    public void fixIntervals ()
+    {
+        for (int interval : new int[] { 1000, 5000, 20000, 60000 }) {
+            TripComputer trip = new TripComputer (0.5, 5.0, 120000);
+            for (long t = 0; t <= 3600000; t += interval) {
+                trip.update (T0 + t, LAT0 + 1.4 * t / 1000.0 / M_PER_DEG, -71.0, Double.NaN, 1.4F);
+            }
+            String msg = "interval " + interval;
+            assertEquals (msg, 1.4 * 3600, trip.getDistance (), 1.0);
+            assertEquals (msg, 3600000, trip.getMovingTime ());
+            assertEquals (msg, 1.4, trip.getAvgSpeed (), 0.01);
+            assertEquals (msg, 3600000, trip.getTimeToLastFix ());
+        }
+    }
+
+    /**
+     * Losing the signal for 5 minutes: counted if moving at the far side of the gap,
+     * not counted if not, whatever the fix speed at the end says.
+     */
+    @Test
+    public void longGaps ()
+    {
+        TripComputer trip = new TripComputer (0.5, 5.0, 120000);
+        trip.update (T0, LAT0, -71.0, Double.NaN, 10.0F);
+        trip.update (T0 + 300000, LAT0 + 3000.0 / M_PER_DEG, -71.0, Double.NaN, 0.0F);
+        assertEquals (3000.0, trip.getDistance (), 1.0);
+        assertEquals (300000, trip.getMovingTime ());
+        assertEquals (10.0, trip.getMaxSpeed (), 0.01);
+
+        // parked for 5 minutes, a few metres of wander
+        trip.update (T0 + 600000, LAT0 + 3004.0 / M_PER_DEG, -71.0, Double.NaN, 12.0F);
+        assertEquals (3000.0, trip.getDistance (), 1.0);
+        assertEquals (300000, trip.getMovingTime ());
+    }
+
+    /**
+     * Stopped with 1Hz fixes wandering a few metres doesn't add distance or moving time.
+     */
+    @Test
+    public void stops ()
+    {
+        Random r = new Random (12345);
+        TripComputer trip = new TripComputer (0.5, 5.0, 120000);
+        long t = 0;
+        double north = 0.0;
+        // walk 10 minutes, stop 10 minutes, walk 10 minutes
+        for (int i = 0; i < 1800; i ++) {
+            boolean stopped = (i >= 600) && (i < 1200);
+            if (! stopped) north += 1.4;
+            float speed = stopped ? (float) Math.abs (r.nextGaussian () * 0.15) : (float) (1.4 + r.nextGaussian () * 0.1);
+            trip.update (T0 + t, LAT0 + (north + r.nextGaussian () * 2.0) / M_PER_DEG,
+                    -71.0 + r.nextGaussian () * 2.0 / M_PER_DEG, Double.NaN, speed);
+            t += 1000;
+        }
+        assertEquals (1199000, trip.getMovingTime (), 2000);
+        // noise adds some to the walking distance but nothing while stopped
+        double walked = 1.4 * 1199;
+        assertTrue ("distance " + trip.getDistance (), trip.getDistance () > walked);
+        assertTrue ("distance " + trip.getDistance (), trip.getDistance () < walked * 2.5);
+        assertEquals (1.4, trip.getSpeedMean (), 0.02);
+        assertEquals (0.1, trip.getSpeedStdDev (), 0.02);
+        assertEquals (1799000, trip.getTimeToLastFix ());
+    }
+
+    /**
+     * Climbing 100m and down 40m with 1m altitude noise, the hysteresis band
+     * keeps noise out of the totals and vertical speed follows the climb rate.
+     */
+    @Test
+    public void climbing ()
+    {
+        Random r = new Random (54321);
+        TripComputer trip = new TripComputer (0.5, 5.0, 120000);
+        long t = 0;
+        double alt = 100.0;
+        for (int i = 0; i < 1000; i ++) {
+            trip.update (T0 + t, LAT0 + i * 1.4 / M_PER_DEG, -71.0, alt + r.nextGaussian (), 1.4F);
+            if (i == 490) assertEquals (0.2, trip.getVertSpeed (), 0.05);
+            alt += (i < 500) ? 0.2 : -0.08;
+            t += 1000;
+        }
+        // up to a band may be left uncounted at each end, plus a few sigma of noise
+        assertEquals (100.0, trip.getAscent (), 9.0);
+        assertEquals (40.0, trip.getDescent (), 9.0);
+        assertEquals (-0.08, trip.getVertSpeed (), 0.05);
+
+        // flat with noise: no more ascent or descent
+        double ascent  = trip.getAscent ();
+        double descent = trip.getDescent ();
+        for (int i = 1000; i < 2000; i ++) {
+            trip.update (T0 + t, LAT0 + i * 1.4 / M_PER_DEG, -71.0, alt + r.nextGaussian (), 1.4F);
+            t += 1000;
+        }
+        assertTrue (trip.getAscent () - ascent <= 5.0);
+        assertTrue (trip.getDescent () - descent <= 5.0);
+    }
+
+    @Test
+    public void copyAndReset ()
+    {
+        TripComputer trip = new TripComputer (0.5, 5.0, 120000);
+        trip.update (T0, LAT0, -71.0, 100.0, 1.4F);
+        trip.update (T0 + 60000, LAT0 + 84.0 / M_PER_DEG, -71.0, 110.0, 1.4F);
+        TripComputer copy = new TripComputer (0.0, 0.0, 0);
+        copy.copyFrom (trip);
+        assertEquals (trip.getDistance (), copy.getDistance (), 0.0);
+        assertEquals (trip.getAscent (), copy.getAscent (), 0.0);
+        assertTrue (copy.getAscent () > 5.0);
+
+        // copy carries on the same as the original, settings included
+        trip.update (T0 + 61000, LAT0 + 85.4 / M_PER_DEG, -71.0, 111.0, 1.4F);
+        copy.update (T0 + 61000, LAT0 + 85.4 / M_PER_DEG, -71.0, 111.0, 1.4F);
+        assertEquals (trip.getDistance (), copy.getDistance (), 0.0);
+        assertEquals (trip.getMovingTime (), copy.getMovingTime ());
+        assertEquals (trip.getVertSpeed (), copy.getVertSpeed (), 0.0);
+        trip.reset ();
+        assertTrue (! trip.isStarted ());
+        assertEquals (0.0, trip.getDistance (), 0.0);
+        assertEquals (85.4, copy.getDistance (), 0.1);
+    }
+}
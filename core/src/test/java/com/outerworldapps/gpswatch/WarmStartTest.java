@@ -0,0 +1,99 @@
+//    Copyright (C) 2020, Mike Rieker, Beverly, MA USA
+//    www.outerworldapps.com
+//
+//    This program is free software; you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation; version 2 of the License.
+//
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    EXPECT it to FAIL when someone's HeALTh or PROpeRTy is at RISk.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with this program; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//    http://www.gnu.org/licenses/gpl-2.0.html
+
+package com.outerworldapps.gpswatch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WarmStartTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder ();
+
+    @Test
+    public void roundTrip ()
+            throws IOException
+    {
+        File file = new File (tmp.getRoot (), "warmstart.bin");
+        WarmStart ws = new WarmStart ();
+        ws.time        = 1600000000123L;
+        ws.lat         = 42.123456789;
+        ws.lon         = -71.987654321;
+        ws.alt         = 12.5F;
+        ws.speed       = Float.NaN;
+        ws.bearing     = 270.0F;
+        ws.accuracy    = 4.0F;
+        ws.declination = -14.25F;
+        ws.sats.add (SatSnapshot.CONSTELLATION_GPS, 5, 30.0F, 45.0F, 90.0F, true, 1575.42E6F);
+        ws.sats.add (SatSnapshot.CONSTELLATION_GPS, 5, 25.0F, 45.0F, 90.0F, false, 1176.45E6F);
+        ws.sats.add (SatSnapshot.CONSTELLATION_GLONASS, 7, 20.0F, 10.0F, 300.0F, false);
+        ws.save (file);
+
+        WarmStart rs = new WarmStart ();
+        assertTrue (rs.load (file));
+        assertEquals (ws.time, rs.time);
+        assertEquals (ws.lat, rs.lat, 0.0);
+        assertEquals (ws.lon, rs.lon, 0.0);
+        assertEquals (12.5F, rs.alt, 0.0F);
+        assertTrue (Float.isNaN (rs.speed));
+        assertEquals (270.0F, rs.bearing, 0.0F);
+        assertEquals (-14.25F, rs.declination, 0.0F);
+        assertEquals (3, rs.sats.count);
+        assertEquals (1575.42E6F, rs.sats.carrierHz[0], 0.0F);
+        assertEquals (1176.45E6F, rs.sats.carrierHz[1], 0.0F);
+        assertEquals (0.0F, rs.sats.carrierHz[2], 0.0F);
+        assertTrue (rs.sats.used[0]);
+        assertFalse (rs.sats.used[1]);
+        assertEquals (SatSnapshot.CONSTELLATION_GLONASS, rs.sats.constellation[2]);
+        assertEquals (7, rs.sats.svid[2]);
+        assertEquals (300.0F, rs.sats.azimuth[2], 0.0F);
+    }
+
+    /**
+     * Missing, truncated or old version files are ignored.
+     */
+    @Test
+    public void invalid ()
+            throws IOException
+    {
+        WarmStart ws = new WarmStart ();
+        assertFalse (ws.load (new File (tmp.getRoot (), "missing.bin")));
+
+        File file = tmp.newFile ("old.bin");
+        byte[] v1 = new byte[56];
+        v1[0] = 0x53;  v1[1] = 0x57;  v1[2] = 0x57;  v1[3] = 0x47;   // 'GWWS' little endian
+        v1[4] = 1;
+        try (FileOutputStream fos = new FileOutputStream (file)) {
+            fos.write (v1);
+        }
+        assertFalse (ws.load (file));
+        assertEquals (0, ws.time);
+    }
+}